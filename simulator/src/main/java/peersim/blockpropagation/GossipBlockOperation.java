@@ -3,6 +3,7 @@ package peersim.blockpropagation;
 import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Map;
+import peersim.gossipsub.Message;
 import peersim.kademlia.operations.FindOperation;
 
 public class GossipBlockOperation extends FindOperation {
@@ -36,6 +37,12 @@ public class GossipBlockOperation extends FindOperation {
     samples.put(s.getId(), true);
   }
 
+  /** Names the message types as gossipsub messages, which are the messages of the operation. */
+  @Override
+  protected String typeToString(int type) {
+    return Message.typeToString(type);
+  }
+
   public Map<String, Object> toMap() {
     // System.out.println("Mapping");
     Map<String, Object> result = new HashMap<String, Object>();
@@ -43,12 +50,13 @@ public class GossipBlockOperation extends FindOperation {
     result.put("id", this.operationId);
     result.put("src", this.srcNode);
     result.put("type", "BlockGossipOperation");
-    // result.put("messages", getMessagesString());
+    putMessages(result);
     result.put("start", this.timestamp);
     result.put("completion_time", this.stopTime);
     result.put("old_block", old);
+    // hops and messages per sample, the totals are in the histogram and message counts
     result.put("hops", this.nrHops / samples.size());
-    result.put("num_messages", getMessages().size() / samples.size());
+    result.put("num_messages", getMessageCount() / samples.size());
     result.put("block_id", this.currentBlock.getId());
     return result;
   }
@@ -83,36 +83,44 @@ public class GossipSubBlock extends GossipSubProtocol {
 
     for (GossipBlockOperation sop : samplingOp.values()) {
       if (sop.getBlock().getId() == s.getBlock().getId()) {
-        sop.addMessage(m.id);
+        sop.addMessage(m.id, m.getType(), m.getSize());
         if (!sop.isCompleted()) {
           sop.addHops(m.getHops());
           sop.elaborateResponse(s);
           logger.warning(
-              "Received message block "
-                  + s.getId()
-                  + " "
-                  + s.getBlock().getId()
-                  + " "
-                  + topic
-                  + " "
-                  + sop.getHops()
-                  + " "
-                  + sop.getStopTime()
-                  + " "
-                  + sop.isCompleted());
+              () ->
+                  "Received message block "
+                      + s.getId()
+                      + " "
+                      + s.getBlock().getId()
+                      + " "
+                      + topic
+                      + " "
+                      + sop.getHops()
+                      + " "
+                      + sop.getStopTime()
+                      + " "
+                      + sop.isCompleted());
           if (sop.isCompleted()) {
             sop.setStopTime(CommonState.getTime() - sop.getTimestamp());
             logger.warning(
-                "Completed operation "
-                    + s.getBlock().getId()
-                    + " "
-                    + sop.getStopTime()
-                    + " "
-                    + sop.getTimestamp());
+                () ->
+                    "Completed operation "
+                        + s.getBlock().getId()
+                        + " "
+                        + sop.getStopTime()
+                        + " "
+                        + sop.getTimestamp());
           }
         } else {
           logger.warning(
-              "Received extra copy " + s.getId() + " " + s.getBlock().getId() + " " + m.getHops());
+              () ->
+                  "Received extra copy "
+                      + s.getId()
+                      + " "
+                      + s.getBlock().getId()
+                      + " "
+                      + m.getHops());
         }
       }
     }
@@ -9,6 +9,7 @@ import peersim.core.Node;
 import peersim.edsim.EDSimulator;
 import peersim.gossipsub.GossipSubProtocol;
 import peersim.gossipsub.Message;
+import peersim.gossipsub.PeerTable;
 
 /**
  * This control generates samples every 5 min that are stored in a single node (builder) and starts
@@ -68,18 +69,23 @@ public class Sequencer implements Control {
       second = true;
       // Block b = new Block(ID_GENERATOR, GossipCommonConfig.BLOCK_SIZE);
 
+      // every node but the first knows all the subscribers of the topic, through a directory
+      // shared by their tables instead of a copy in each one
+      String topic = "blockChannel";
+      PeerTable subscribers = new PeerTable();
+      for (int l = 1; l < Network.size(); l++) {
+        Node n2 = Network.get(l);
+        GossipSubProtocol prot2 = (GossipSubProtocol) n2.getProtocol(protocol);
+        prot2.getTable().setShared(subscribers);
+      }
+
       for (int i = 0; i < Network.size(); i++) {
         Node n = Network.get(i);
         GossipSubProtocol prot = (GossipSubProtocol) n.getProtocol(protocol);
         BigInteger id = prot.getGossipNode().getId();
         // if (i == 0) {
         // System.out.println("Sequencer " + id);
-        String topic = "blockChannel";
-        for (int l = 1; l < Network.size(); l++) {
-          Node n2 = Network.get(l);
-          GossipSubProtocol prot2 = (GossipSubProtocol) n2.getProtocol(protocol);
-          prot2.getTable().addPeer(topic, id);
-        }
+        subscribers.addPeer(topic, id);
         EDSimulator.add(
             CommonState.r.nextLong(200), Message.makeInitJoinMessage(topic), n, protocol);
         // }
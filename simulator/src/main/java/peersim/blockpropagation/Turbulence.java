@@ -202,6 +202,7 @@ public class Turbulence implements Control {
     // Set node ID
     GossipNode node = new GossipNode(urg.generate());
     newKad.setNode(node);
+    Network.registerId(node.getId(), newNode);
     newKad.setProtocolID(kademliaid);
     // Sort the network
     sortNet();
@@ -26,6 +26,11 @@ import java.util.zip.*;
  * Provides static methods to obtain the package-qualified class name of a class, given just the
  * non-qualified name, and to obtain the non-qualified name, given the package-qualified class name.
  *
+ * <p>The names of the peersim classes are read from an index, {@value #INDEX}, generated in the
+ * class directory when the project is built (see {@link #main}). The whole classpath, including all
+ * the jars, is only scanned when a name is not in the index, or if there is no index. Then a name
+ * is looked up among all the classes, as before the index.
+ *
  * <p>Inspired from some code written by David Postill (david@postill.org.uk) (found in
  * http://groups.google.com).
  *
@@ -38,8 +43,17 @@ class ClassFinder {
   // Fields and initialization
   // --------------------------------------------------------------------------
 
-  /** Local map containing the associations */
-  private static Map<String, String> map = new TreeMap<String, String>();
+  /** Name of the index resource, relative to this class */
+  static final String INDEX = "classes.idx";
+
+  /** Package whose classes are in the index */
+  private static final String INDEXED_PACKAGE = "peersim";
+
+  /** Local map containing the associations, null until the first lookup */
+  private static Map<String, String> map = null;
+
+  /** Whether the map contains the classes of the whole classpath, rather than the index */
+  private static boolean scanned = false;
 
   /**
    * The number of directories that have been touched by the search. This does not include
@@ -47,10 +61,12 @@ class ClassFinder {
    */
   private static int visitedDirs = 0;
 
-  private static final int maxDirs;
+  private static final int maxDirs = 10000;
 
-  static {
-    maxDirs = 10000;
+  /** Fills the map with all the classes reachable from the classpath. */
+  private static void scan() {
+    map = new TreeMap<String, String>();
+    scanned = true;
 
     try {
       findClasses(map);
@@ -98,8 +114,17 @@ class ClassFinder {
    * @param name the non-qualified name of the class to be searched
    * @return the qualified name, if exists.
    */
-  public static String getQualifiedName(String name) {
-    return map.get(name);
+  public static synchronized String getQualifiedName(String name) {
+    if (map == null) {
+      map = loadIndex();
+      if (map == null) scan();
+    }
+    String qualified = map.get(name);
+    if (qualified == null && !scanned) {
+      scan();
+      qualified = map.get(name);
+    }
+    return qualified;
   }
 
   // --------------------------------------------------------------------------
@@ -209,6 +234,55 @@ class ClassFinder {
 
   // --------------------------------------------------------------------------
 
+  /**
+   * Reads the index of the peersim classes.
+   *
+   * @return the associations of the index, or null if there is no index
+   */
+  private static Map<String, String> loadIndex() {
+    InputStream in = ClassFinder.class.getResourceAsStream(INDEX);
+    if (in == null) return null;
+    Map<String, String> index = new TreeMap<String, String>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int space = line.indexOf(' ');
+        if (space > 0) index.put(line.substring(0, space), line.substring(space + 1));
+      }
+    } catch (IOException e) {
+      System.err.println("Configuration: unable to read the class index, " + e);
+      return null;
+    }
+    return index;
+  }
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Writes the index of the peersim classes found in a class directory, in the directory of this
+   * class.
+   *
+   * @param classDir the directory of the compiled classes
+   * @throws IOException
+   */
+  private static void writeIndex(File classDir) throws IOException {
+    Map<String, String> index = new TreeMap<String, String>();
+    File root = new File(classDir, INDEXED_PACKAGE);
+    if (root.isDirectory()) {
+      String pathElement = classDir.getPath() + File.separator;
+      findClassInPathDir(index, pathElement, root);
+    }
+
+    File dir = new File(classDir, ClassFinder.class.getPackage().getName().replace('.', '/'));
+    dir.mkdirs();
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(new File(dir, INDEX)), "UTF-8")) {
+      for (Map.Entry<String, String> e : index.entrySet())
+        out.write(e.getKey() + " " + e.getValue() + "\n");
+    }
+  }
+
+  // --------------------------------------------------------------------------
+
   /** Translates a class file name in a class name using the specified file separator. */
   private static String classname(String classFile, String filesep) {
     return classFile.replace(filesep, ".").substring(0, classFile.length() - ".class".length());
@@ -217,11 +291,17 @@ class ClassFinder {
   // --------------------------------------------------------------------------
 
   /**
-   * Testing.
+   * With a class directory as argument, writes the index of the peersim classes in it; this is done
+   * by the build after compiling. Without arguments, prints the associations, for testing.
    *
    * @param argv
    */
-  public static void main(String[] argv) {
+  public static void main(String[] argv) throws IOException {
+    if (argv.length == 1) {
+      writeIndex(new File(argv[0]));
+      return;
+    }
+    scan();
     Iterator i = map.keySet().iterator();
     while (i.hasNext()) {
       String key = (String) i.next();
@@ -67,6 +67,15 @@ public class ConfigContainer {
    */
   private boolean check = false;
 
+  /**
+   * The numeric values already evaluated, by property name. They are used as long as the text of
+   * the properties they were computed from is unchanged.
+   */
+  private final Map<String, Resolved> resolved = new HashMap<String, Resolved>();
+
+  /** The expressions already parsed, by text, as several properties often have the same one */
+  private final Map<String, Expression> parsed = new HashMap<String, Expression>();
+
   // =================== initialization ================================
   // ===================================================================
 
@@ -290,30 +299,88 @@ public class ConfigContainer {
    * @param depth the depth reached so far
    * @return the evaluation of the expression associated to property
    */
-  private Number getVal(String initial, String property, int depth) {
+  private synchronized Number getVal(String initial, String property, int depth) {
     if (depth > maxdepth) {
       throw new IllegalParameterException(
           initial, "Probable recursive definition - exceeded maximum depth " + maxdepth);
     }
 
+    Resolved r = resolved.get(property);
+    if (r != null && r.isCurrent()) return r.value;
+
     String s = config.getProperty(property);
     if (s == null || s.equals("")) {
       throw new MissingParameterException(property, " when evaluating property " + initial);
       //						+ "\nPossibly incorrect property: " + getSimilarProperty(property));
     }
 
-    GroupJep jep = new GroupJep(new Operators());
-    jep.setAllowUndeclared(true);
+    Expression e = parsed.get(s);
+    if (e == null) {
+      e = new Expression(s);
+      parsed.put(s, e);
+    }
+
+    // the value depends on this property and on the ones its symbols depend on
+    List<String> names = new ArrayList<String>();
+    names.add(property);
+    Object[] symbolValues = new Object[e.symbols.length];
+    for (int i = 0; i < e.symbols.length; i++) {
+      symbolValues[i] = getVal(initial, e.symbols[i], depth + 1);
+      names.addAll(Arrays.asList(resolved.get(e.symbols[i]).names));
+    }
+    Number ret = e.evaluate(symbolValues);
+    if (ret != null) resolved.put(property, new Resolved(ret, names.toArray(new String[0])));
+    return ret;
+  }
+
+  // -------------------------------------------------------------------
+
+  /** A parsed expression, evaluated again with new values of its symbols. */
+  private class Expression {
+
+    final GroupJep jep;
+
+    final String[] symbols;
+
+    Expression(String s) {
+      jep = new GroupJep(new Operators());
+      jep.setAllowUndeclared(true);
+      jep.parseExpression(s);
+      symbols = getSymbols(jep);
+    }
+
+    Number evaluate(Object[] values) {
+      for (int i = 0; i < symbols.length; i++) jep.addVariable(symbols[i], values[i]);
+      Object ret = jep.getValueAsObject();
+      if (jep.hasError()) System.err.println(jep.getErrorInfo());
+      return (Number) ret;
+    }
+  }
+
+  // -------------------------------------------------------------------
+
+  /** The value of a property with the text of the properties it was computed from. */
+  private class Resolved {
+
+    final Number value;
+
+    final String[] names;
+
+    final String[] texts;
+
+    Resolved(Number value, String[] names) {
+      this.value = value;
+      this.names = names;
+      texts = new String[names.length];
+      for (int i = 0; i < names.length; i++) texts[i] = config.getProperty(names[i]);
+    }
 
-    jep.parseExpression(s);
-    String[] symbols = getSymbols(jep);
-    for (int i = 0; i < symbols.length; i++) {
-      Object d = getVal(initial, symbols[i], depth + 1);
-      jep.addVariable(symbols[i], d);
+    /** Checks that the properties the value was computed from have not been changed since. */
+    boolean isCurrent() {
+      for (int i = 0; i < names.length; i++)
+        if (!texts[i].equals(config.getProperty(names[i]))) return false;
+      return true;
     }
-    Object ret = jep.getValueAsObject();
-    if (jep.hasError()) System.err.println(jep.getErrorInfo());
-    return (Number) ret;
   }
 
   // -------------------------------------------------------------------
@@ -77,6 +77,14 @@ public class CommonState {
   /** The current node. */
   private static Node node;
 
+  /**
+   * Time, pid and node of each thread, used instead of the fields above while the event driven
+   * engine executes partitions of the network in parallel. It is null otherwise.
+   *
+   * @see #setThreadLocal
+   */
+  private static ThreadLocal<State> local = null;
+
   /**
    * This source of randomness should be used by all components. This field is public because it
    * doesn't matter if it changes during an experiment (although it shouldn't) until no other
@@ -126,6 +134,7 @@ public class CommonState {
    * integer).
    */
   public static long getTime() {
+    if (local != null) return local.get().time;
     return time;
   }
 
@@ -139,14 +148,15 @@ public class CommonState {
    * the same as cycle which can be safely cast into integer, so no precision is lost.
    */
   public static int getIntTime() {
-    return (int) (time >> toshift);
+    return (int) (getTime() >> toshift);
   }
 
   // -----------------------------------------------------------------
 
   /** Sets the current time. */
   public static void setTime(long t) {
-    time = t;
+    if (local != null) local.get().time = t;
+    else time = t;
   }
 
   // -----------------------------------------------------------------
@@ -198,6 +208,7 @@ public class CommonState {
    * protocol on node {@link #getNode}.
    */
   public static int getPid() {
+    if (local != null) return local.get().pid;
     return pid;
   }
 
@@ -205,7 +216,8 @@ public class CommonState {
 
   /** Sets the current protocol identifier. */
   public static void setPid(int p) {
-    pid = p;
+    if (local != null) local.get().pid = p;
+    else pid = p;
   }
 
   // -----------------------------------------------------------------
@@ -214,6 +226,7 @@ public class CommonState {
    * Returns the current node. When a protocol is executing, it is the node hosting the protocol.
    */
   public static Node getNode() {
+    if (local != null) return local.get().node;
     return node;
   }
 
@@ -221,7 +234,49 @@ public class CommonState {
 
   /** Sets the current node */
   public static void setNode(Node n) {
-    node = n;
+    if (local != null) local.get().node = n;
+    else node = n;
+  }
+
+  // -----------------------------------------------------------------
+
+  /**
+   * Switches time, pid and node between a single global value and a separate value for each thread.
+   * It is used by the event driven engine when partitions of the network are executed in parallel.
+   * When enabled, every thread starts from the current global values; when disabled, the global
+   * values are taken from the calling thread. It must not be called while other threads are
+   * executing.
+   *
+   * @param enabled true to keep a separate state for each thread
+   */
+  public static void setThreadLocal(boolean enabled) {
+    if (enabled && local == null) {
+      final long t = time;
+      final int p = pid;
+      final Node n = node;
+      local = ThreadLocal.withInitial(() -> new State(t, p, n));
+    } else if (!enabled && local != null) {
+      State s = local.get();
+      local = null;
+      time = s.time;
+      pid = s.pid;
+      node = s.node;
+    }
+  }
+
+  // -----------------------------------------------------------------
+
+  /** Time, pid and node of a thread. */
+  private static final class State {
+    long time;
+    int pid;
+    Node node;
+
+    State(long time, int pid, Node node) {
+      this.time = time;
+      this.pid = pid;
+      this.node = node;
+    }
   }
 
   // -----------------------------------------------------------------
@@ -0,0 +1,272 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.core;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+
+/**
+ * Logging of the protocols, configured once for the whole simulator. The loggers are standard
+ * {@link Logger}s, one for each node, that share a single handler writing to the standard error
+ * lines of the form <code>[time][logger name] message</code>. The time is the simulated time at
+ * which the message is logged.
+ *
+ * <p>Messages should be built only if they are logged, passing a supplier to the logger, as in
+ * <code>logger.info(() -&gt; "Received " + m)</code>, or checking {@link Logger#isLoggable} first.
+ * The output is buffered and written to the standard error when the buffer is full, when {@link
+ * #flush} is called and when the JVM exits. With {@value #PAR_ASYNC}, the lines are queued and
+ * written by a separate thread, so that the simulation only waits for the output if the queue is
+ * full.
+ */
+public final class Logging {
+
+  // ======================= parameters ===============================
+  // ==================================================================
+
+  /**
+   * Configuration parameter defining the level of the messages logged, as accepted by {@link
+   * Level#parse} (e.g. OFF, SEVERE, WARNING, INFO, ALL). Defaults to WARNING.
+   *
+   * @config
+   */
+  public static final String PAR_LEVEL = "log.level";
+
+  /**
+   * Configuration parameter listing the names of the loggers (the node IDs) whose messages are
+   * logged, separated by commas or spaces. If not specified, all the nodes are logged.
+   *
+   * @config
+   */
+  public static final String PAR_NODES = "log.nodes";
+
+  /**
+   * Configuration parameter that, if present, makes a separate thread write the output.
+   *
+   * @config
+   */
+  public static final String PAR_ASYNC = "log.async";
+
+  /**
+   * Configuration parameter defining the number of lines that can be queued for the writing thread
+   * when {@value #PAR_ASYNC} is set. Defaults to 65536.
+   *
+   * @config
+   */
+  public static final String PAR_QUEUE = "log.queue";
+
+  // ======================= fields ===================================
+  // ==================================================================
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /** The handler of all the loggers, null until the configuration is read */
+  private static SharedHandler handler;
+
+  private static Level level;
+
+  /** The loggers enabled, null for all */
+  private static Set<String> nodes;
+
+  /** Does nothing. To avoid construction. */
+  private Logging() {}
+
+  // ======================= methods ==================================
+  // ==================================================================
+
+  /**
+   * Returns the logger with the given name, configured with the shared handler and the level of the
+   * configuration. The handlers it already had are removed. Assumes that the configuration is
+   * already loaded.
+   *
+   * @param name the name of the logger, usually the ID of the node
+   */
+  public static synchronized Logger getLogger(String name) {
+    if (handler == null) configure();
+    Logger logger = Logger.getLogger(name);
+    logger.setUseParentHandlers(false);
+    for (Handler h : logger.getHandlers()) logger.removeHandler(h);
+    logger.addHandler(handler);
+    logger.setLevel(nodes == null || nodes.contains(name) ? level : Level.OFF);
+    return logger;
+  }
+
+  // ------------------------------------------------------------------
+
+  /** Writes the lines logged so far to the standard error. */
+  public static void flush() {
+    SharedHandler h;
+    synchronized (Logging.class) {
+      h = handler;
+    }
+    if (h != null) h.flush();
+  }
+
+  // ------------------------------------------------------------------
+
+  private static void configure() {
+    String name = Configuration.getString(PAR_LEVEL, "WARNING");
+    try {
+      level = Level.parse(name.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalParameterException(PAR_LEVEL, "Unknown level " + name);
+    }
+    if (Configuration.contains(PAR_NODES)) {
+      nodes = new HashSet<String>();
+      for (String n : Configuration.getString(PAR_NODES).split("[,\\s]+"))
+        if (!n.isEmpty()) nodes.add(n);
+    }
+    Writer out = new BufferedWriter(new OutputStreamWriter(System.err), BUFFER_SIZE);
+    if (Configuration.contains(PAR_ASYNC)) {
+      int queue = Configuration.getInt(PAR_QUEUE, 1 << 16);
+      if (queue <= 0) throw new IllegalParameterException(PAR_QUEUE, "Must be positive");
+      handler = new AsyncHandler(out, queue);
+    } else {
+      handler = new SharedHandler(out);
+    }
+    Runtime.getRuntime().addShutdownHook(new Thread(Logging::flush));
+  }
+
+  // ======================= handlers =================================
+  // ==================================================================
+
+  /** Formats the records in the calling thread, when the simulated time is the current one. */
+  private static class SharedHandler extends Handler {
+
+    final Writer out;
+
+    SharedHandler(Writer out) {
+      this.out = out;
+    }
+
+    static String format(LogRecord lr) {
+      return "["
+          + CommonState.getTime()
+          + "]["
+          + lr.getLoggerName()
+          + "] "
+          + lr.getMessage()
+          + " "
+          + System.lineSeparator();
+    }
+
+    @Override
+    public void publish(LogRecord lr) {
+      if (isLoggable(lr)) write(format(lr));
+    }
+
+    synchronized void write(String line) {
+      try {
+        out.write(line);
+      } catch (IOException e) {
+        reportError(null, e, ErrorManager.WRITE_FAILURE);
+      }
+    }
+
+    @Override
+    public synchronized void flush() {
+      try {
+        out.flush();
+      } catch (IOException e) {
+        reportError(null, e, ErrorManager.FLUSH_FAILURE);
+      }
+    }
+
+    @Override
+    public void close() {
+      flush();
+    }
+  }
+
+  // ------------------------------------------------------------------
+
+  /** Queues the formatted lines for a thread that writes them. */
+  private static class AsyncHandler extends SharedHandler {
+
+    /** Lines to write, and latches to count down when the lines before them are written */
+    private final BlockingQueue<Object> queue;
+
+    AsyncHandler(Writer out, int capacity) {
+      super(out);
+      queue = new ArrayBlockingQueue<Object>(capacity);
+      Thread writer = new Thread(this::run, "Logging writer");
+      writer.setDaemon(true);
+      writer.start();
+    }
+
+    @Override
+    public void publish(LogRecord lr) {
+      if (isLoggable(lr)) enqueue(format(lr));
+    }
+
+    /** Waits until the lines queued so far are written. */
+    @Override
+    public void flush() {
+      CountDownLatch done = new CountDownLatch(1);
+      enqueue(done);
+      try {
+        done.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void enqueue(Object o) {
+      try {
+        queue.put(o);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void run() {
+      List<Object> batch = new ArrayList<Object>();
+      try {
+        while (true) {
+          batch.add(queue.take());
+          queue.drainTo(batch);
+          for (Object o : batch) {
+            if (o instanceof String) write((String) o);
+            else {
+              super.flush();
+              ((CountDownLatch) o).countDown();
+            }
+          }
+          batch.clear();
+          if (queue.isEmpty()) super.flush();
+        }
+      } catch (InterruptedException e) {
+        // daemon thread, stops with the JVM
+      }
+    }
+  }
+}
@@ -18,8 +18,13 @@
 
 package peersim.core;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import peersim.config.Configuration;
 import peersim.kademlia.KademliaProtocol;
 
@@ -89,6 +94,18 @@ public class Network {
    */
   public static Node prototype = null;
 
+  /**
+   * Index from overlay identifiers (Kademlia or GossipSub node IDs) to the node that owns them. It
+   * is filled by the components that assign identifiers through {@link #registerId} and is kept in
+   * sync with the node array by {@link #remove()}, so that lookups by identifier do not depend on
+   * the order of the array.
+   */
+  private static final HashMap<BigInteger, Node> idIndex = new HashMap<BigInteger, Node>();
+
+  /** The identifiers registered by each node, used to drop them from the index on removal. */
+  private static final IdentityHashMap<Node, List<BigInteger>> nodeIds =
+      new IdentityHashMap<Node, List<BigInteger>>();
+
   // ====================== initialization ===========================
   // =================================================================
 
@@ -103,6 +120,8 @@ public class Network {
       prototype = null;
       node = null;
     }
+    idIndex.clear();
+    nodeIds.clear();
 
     len = Configuration.getInt(PAR_SIZE);
     int maxlen = Configuration.getInt(PAR_MAXSIZE, len);
@@ -210,6 +229,7 @@ public class Network {
     Node n = node[len - 1]; // if len was zero this throws and exception
     node[len - 1] = null;
     len--;
+    unregisterIds(n);
     n.setFailState(Fallible.DEAD);
     return n;
   }
@@ -267,6 +287,52 @@ public class Network {
 
   // ------------------------------------------------------------------
 
+  /**
+   * Associates the given overlay identifier with a node of the network, so that it can be found in
+   * constant time with {@link #getById}. A node can register more than one identifier (for example
+   * one per overlay protocol). Registering an identifier again replaces the previous association.
+   * Identifiers are dropped automatically when their node is removed from the network.
+   */
+  public static void registerId(BigInteger id, Node n) {
+
+    Node old = idIndex.put(id, n);
+    if (old == n) return;
+    if (old != null) {
+      List<BigInteger> oldIds = nodeIds.get(old);
+      if (oldIds != null) oldIds.remove(id);
+    }
+    List<BigInteger> ids = nodeIds.get(n);
+    if (ids == null) {
+      ids = new ArrayList<BigInteger>(1);
+      nodeIds.put(n, ids);
+    }
+    ids.add(id);
+  }
+
+  // ------------------------------------------------------------------
+
+  /**
+   * Returns the node that registered the given identifier through {@link #registerId}, or null if
+   * no node of the network registered it. Nodes that failed but have not been removed from the
+   * network are still returned, consistently with {@link #get}.
+   */
+  public static Node getById(BigInteger id) {
+
+    return idIndex.get(id);
+  }
+
+  // ------------------------------------------------------------------
+
+  /** Drops all the identifiers registered by the given node from the index. */
+  private static void unregisterIds(Node n) {
+
+    List<BigInteger> ids = nodeIds.remove(n);
+    if (ids == null) return;
+    for (BigInteger id : ids) idIndex.remove(id);
+  }
+
+  // ------------------------------------------------------------------
+
   public static void test() {
 
     System.err.println("number of nodes = " + len);
@@ -75,4 +75,9 @@ class ControlEvent {
     if (next >= 0) EDSimulator.addControlEvent(next, order, this);
     return ret;
   }
+
+  /** Returns the order index of the control, used as priority in the event queue. */
+  int getOrder() {
+    return order;
+  }
 }
@@ -61,6 +61,10 @@ import peersim.core.*;
  * of the transport layer so that in the simulation message delay and message omissions can be
  * modeled in a modular way. This functionality is implemented in package {@link peersim.transport}.
  *
+ * <p>If {@value #PAR_THREADS} is larger than one, the events between two control events are
+ * executed in parallel by {@link ParallelEngine}, using the minimum transport latency as lookahead.
+ * All the protocols of the nodes must then implement {@link NodeLocalProtocol}.
+ *
  * @see Configuration
  */
 public class EDSimulator {
@@ -91,12 +95,34 @@ public class EDSimulator {
 
   /**
    * This parameter specifies the event queue to be used. It must be an implementation of interface
-   * {@link PriorityQ}. If it is not defined, the internal implementation is used.
+   * {@link PriorityQ}. If it is not defined, the internal implementation is used. {@link
+   * LadderQueue} is a faster alternative for large simulations. It executes the events in the same
+   * order as the internal implementation only when they have distinct times and priorities; events
+   * with the same time and priority may be executed in a different order.
    *
    * @config
    */
   private static final String PAR_PQ = "simulation.eventqueue";
 
+  /**
+   * The number of threads executing the events. If larger than 1, the nodes are partitioned and
+   * executed in parallel by {@link ParallelEngine}, which requires all the protocols of the nodes
+   * to implement {@link NodeLocalProtocol}. Defaults to 1.
+   *
+   * @config
+   */
+  private static final String PAR_THREADS = "simulation.threads";
+
+  /**
+   * The lookahead of the parallel execution: a lower bound of the delay of the events a node
+   * schedules for another node. Defaults to the smallest {@link
+   * peersim.transport.Transport#getMinLatency} among the transports of the nodes. Only used if
+   * {@value #PAR_THREADS} is larger than 1.
+   *
+   * @config
+   */
+  static final String PAR_LOOKAHEAD = "simulation.lookahead";
+
   /**
    * This is the prefix for initializers. These have to be of type {@link Control}. They are run at
    * the beginning of each experiment, in the order specified by the configuration.
@@ -138,6 +164,9 @@ public class EDSimulator {
 
   private static long nextlog = 0;
 
+  /** Parallel execution engine, null if events are executed sequentially */
+  private static ParallelEngine engine = null;
+
   // =============== initialization ======================================
   // =====================================================================
 
@@ -201,6 +230,57 @@ public class EDSimulator {
 
   // ---------------------------------------------------------------------
 
+  /**
+   * Creates the parallel engine if more than one thread is configured.
+   *
+   * @return the engine, or null if events are executed sequentially
+   * @throws IllegalParameterException if a protocol is not a {@link NodeLocalProtocol} or the
+   *     lookahead is not positive
+   */
+  private static ParallelEngine createEngine() {
+    int threads = Configuration.getInt(PAR_THREADS, 1);
+    if (threads <= 1) return null;
+
+    for (int i = 0; i < Network.prototype.protocolSize(); i++) {
+      Protocol p = Network.prototype.getProtocol(i);
+      if (!(p instanceof NodeLocalProtocol))
+        throw new IllegalParameterException(
+            PAR_THREADS,
+            "Protocol "
+                + Configuration.lookupPid(i)
+                + " ("
+                + p.getClass().getName()
+                + ") is not a NodeLocalProtocol and cannot be run on "
+                + threads
+                + " threads");
+    }
+
+    long lookahead;
+    if (Configuration.contains(PAR_LOOKAHEAD)) lookahead = Configuration.getLong(PAR_LOOKAHEAD);
+    else {
+      lookahead = Long.MAX_VALUE;
+      for (int i = 0; i < Network.prototype.protocolSize(); i++) {
+        Protocol p = Network.prototype.getProtocol(i);
+        if (p instanceof peersim.transport.Transport)
+          lookahead = Math.min(lookahead, ((peersim.transport.Transport) p).getMinLatency());
+      }
+    }
+    if (lookahead <= 0 || lookahead == Long.MAX_VALUE)
+      throw new IllegalParameterException(
+          PAR_LOOKAHEAD,
+          "A positive lookahead is needed to run " + threads + " threads, found " + lookahead);
+
+    PriorityQ[] queues = new PriorityQ[threads];
+    for (int i = 0; i < threads; i++) {
+      if (Configuration.contains(PAR_PQ)) queues[i] = (PriorityQ) Configuration.getInstance(PAR_PQ);
+      else queues[i] = new Heap();
+    }
+    System.err.println("EDSimulator: running " + threads + " threads with lookahead " + lookahead);
+    return new ParallelEngine(threads, lookahead, queues);
+  }
+
+  // ---------------------------------------------------------------------
+
   /**
    * This method is used to check whether the current configuration can be used for event driven
    * simulations. It checks for the existence of config parameter {@value #PAR_ENDTIME}.
@@ -243,7 +323,6 @@ public class EDSimulator {
     }
     // System.out.println("Current time: " + time);
     CommonState.setTime(time);
-    int pid = ev.pid;
     if (ev.node == null) {
       // might be control event; handled through a special method
       ControlEvent ctrl = null;
@@ -254,7 +333,24 @@ public class EDSimulator {
       }
 
       return ctrl.execute();
-    } else if (ev.node != Network.prototype && ev.node.isUp()) {
+    } else if (engine != null) {
+      engine.executeWindow(ev, heap, endtime);
+    } else {
+      deliver(ev);
+    }
+
+    return false;
+  }
+
+  // ---------------------------------------------------------------------
+
+  /**
+   * Delivers an event to the destination protocol, if the destination node is up. The current time
+   * must already be set.
+   */
+  static void deliver(PriorityQ.Event ev) {
+    int pid = ev.pid;
+    if (ev.node != Network.prototype && ev.node.isUp()) {
       CommonState.setPid(pid);
       CommonState.setNode(ev.node);
       if (ev.event instanceof NextCycleEvent) {
@@ -289,8 +385,6 @@ public class EDSimulator {
         prot.processEvent(ev.node, pid, ev.event);
       }
     }
-
-    return false;
   }
 
   // ---------------------------------------------------------------------
@@ -325,9 +419,15 @@ public class EDSimulator {
 
     // Perform the actual simulation; executeNext() will tell when to
     // stop.
+    engine = createEngine();
     boolean exit = false;
-    while (!exit) {
-      exit = executeNext();
+    try {
+      while (!exit) {
+        exit = executeNext();
+      }
+    } finally {
+      if (engine != null) engine.shutdown();
+      engine = null;
     }
 
     // analysis after the simulation
@@ -366,6 +466,18 @@ public class EDSimulator {
 
   // ---------------------------------------------------------------------
 
+  /**
+   * Returns the number of events in the queue. During the initialization it counts the events
+   * scheduled by the initializers, as the controls are scheduled after them.
+   *
+   * @return the number of events waiting to be executed, 0 if no experiment was started
+   */
+  public static int pendingEvents() {
+    return heap == null ? 0 : heap.size();
+  }
+
+  // ---------------------------------------------------------------------
+
   /**
    * Adds a new event to be scheduled, specifying the number of time units of delay, and the node
    * and the protocol identifier to which the event will be delivered.
@@ -389,7 +501,10 @@ public class EDSimulator {
           "This version does not support more than " + Byte.MAX_VALUE + " protocols");
 
     long time = CommonState.getTime();
-    if (endtime - time > delay) // check like this to deal with overflow
-    heap.add(time + delay, event, node, (byte) pid);
+    if (endtime - time > delay) { // check like this to deal with overflow
+      ParallelEngine.LogicalProcess lp = engine == null ? null : ParallelEngine.current();
+      if (lp != null) lp.add(time + delay, event, node, (byte) pid);
+      else heap.add(time + delay, event, node, (byte) pid);
+    }
   }
 }
@@ -0,0 +1,605 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.edsim;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.CommonState;
+import peersim.core.Node;
+
+/**
+ * Event queue with amortized constant time insertion and removal, based on the ladder queue of
+ * Tang, Goh and Thng (2005). It can be used instead of {@link Heap} by setting <code>
+ * simulation.eventqueue peersim.edsim.LadderQueue</code>.
+ *
+ * <p>Events are ordered by the same key as in {@link Heap}: the time shifted left by {@value
+ * #PAR_PBITS} bits, with the priority in the low bits. Events scheduled without a priority get a
+ * random one from {@link CommonState#r}, exactly like in {@link Heap}, so runs stay deterministic
+ * for a given seed. As in {@link Heap}, the order of events with the same time and priority is
+ * unspecified.
+ *
+ * <p>The queue is split in three parts:
+ *
+ * <ul>
+ *   <li><em>top</em>: an unsorted list of the events beyond the range covered by the rungs;
+ *   <li><em>rungs</em>: arrays of unsorted buckets of equal width. A bucket holding too many events
+ *       when it is reached is spread over a new, finer rung instead of being sorted;
+ *   <li><em>bottom</em>: a small sorted array with the events of the bucket being consumed.
+ * </ul>
+ *
+ * New events are appended to the right bucket or to top in constant time. When bottom is empty the
+ * next non-empty bucket is sorted into it; when all rungs are exhausted the first one is rebuilt
+ * from top, with a bucket width chosen to hold about one event per bucket. Event data are kept in
+ * parallel arrays of a slot pool, as in {@link Heap}, to avoid allocating an object per event.
+ */
+public class LadderQueue implements PriorityQ {
+
+  // --------------------------------------------------------------------------
+  // Constants
+  // --------------------------------------------------------------------------
+
+  /**
+   * This parameter specifies how many bits are used to order events that occur at the same time.
+   * Defaults to 8. A value smaller than 8 causes an IllegalParameterException. It has the same
+   * meaning as in {@link Heap}.
+   *
+   * @config
+   */
+  private static final String PAR_PBITS = "pbits";
+
+  private static final String PAR_PBITS_LEGACY = "simulation.timebits";
+
+  /**
+   * Specifies the initial capacity of the queue. Defaults to 65536.
+   *
+   * @config
+   */
+  private static final String PAR_SIZE = "size";
+
+  /** Marks the end of a list of slots. */
+  private static final int NIL = -1;
+
+  /** Maximum number of rungs. */
+  private static final int MAX_RUNGS = 8;
+
+  /** Buckets with more events than this are spread over a new rung rather than sorted. */
+  private static final int SPAWN_THRESHOLD = 50;
+
+  /** Below this size a bottom segment is sorted by insertion. */
+  private static final int INSERTION_SORT_THRESHOLD = 32;
+
+  // --------------------------------------------------------------------------
+  // Fields
+  // --------------------------------------------------------------------------
+
+  /** Key (time and priority) of each slot */
+  private long[] keys;
+
+  /** Event component of each slot */
+  private Object[] events;
+
+  /** Node component of each slot */
+  private Node[] nodes;
+
+  /** Pid component of each slot */
+  private byte[] pids;
+
+  /** Next slot in the same list (bucket, top or free list) */
+  private int[] next;
+
+  /** First free slot */
+  private int free;
+
+  /** Number of events in the queue */
+  private int size;
+
+  /** First slot of the top list */
+  private int top = NIL;
+
+  /** Number of events in top */
+  private int topCount;
+
+  /** Minimum and maximum key in top */
+  private long topMin;
+
+  private long topMax;
+
+  /** Events with a key from this value on go to top */
+  private long topStart;
+
+  /** Number of rungs in use */
+  private int nRungs;
+
+  /** Key of the start of each rung */
+  private final long[] rungStart = new long[MAX_RUNGS];
+
+  /** Bucket width of each rung */
+  private final long[] rungWidth = new long[MAX_RUNGS];
+
+  /** Number of buckets of each rung */
+  private final int[] rungBuckets = new int[MAX_RUNGS];
+
+  /** Next bucket to consume in each rung */
+  private final int[] rungCurrent = new int[MAX_RUNGS];
+
+  /** First slot, last slot and number of events of each bucket, per rung */
+  private final int[][] bucketHead = new int[MAX_RUNGS][];
+
+  private final int[][] bucketTail = new int[MAX_RUNGS][];
+
+  private final int[][] bucketCount = new int[MAX_RUNGS][];
+
+  /** Slots of bottom, sorted by decreasing key so that the first event is the last one */
+  private int[] bottom;
+
+  /** Keys of the bottom slots */
+  private long[] bottomKeys;
+
+  /** Number of events in bottom */
+  private int bottomCount;
+
+  /** Singleton event object used to return (event, time, node, pid) tuples */
+  private final Event ev = new Event();
+
+  /** The number of bits reserved to order event with the same timestamp */
+  private final int pbits;
+
+  /** The mask to test whether the time value fits into the range we can represent */
+  private final long overflowMask;
+
+  // --------------------------------------------------------------------------
+  // Contructor
+  // --------------------------------------------------------------------------
+
+  /** Initializes a new queue using defaults. */
+  public LadderQueue() {
+    this(""); // "" is not a valid prefix for a component
+  }
+
+  // --------------------------------------------------------------------------
+
+  /** Initializes a new queue using the configuration. */
+  public LadderQueue(String prefix) {
+
+    int capacity = Configuration.getInt(prefix + "." + PAR_SIZE, 65536);
+
+    // same parameters as Heap, including the legacy name
+    if (!Configuration.contains(PAR_PBITS_LEGACY))
+      pbits = Configuration.getInt(prefix + "." + PAR_PBITS, 8);
+    else {
+      pbits = Configuration.getInt(PAR_PBITS_LEGACY);
+      if (Configuration.contains(prefix + "." + PAR_PBITS))
+        throw new IllegalParameterException(
+            PAR_PBITS_LEGACY,
+            "Your configuration file contains both "
+                + prefix
+                + "."
+                + PAR_PBITS
+                + " and "
+                + PAR_PBITS_LEGACY
+                + "; please remove "
+                + PAR_PBITS_LEGACY);
+    }
+
+    if (pbits < 8 || pbits >= 31) {
+      throw new IllegalParameterException(
+          prefix + "." + PAR_PBITS, "This parameter should be >= 8 or < 31");
+    }
+    overflowMask = ~maxTime();
+
+    if (capacity < 1) capacity = 1;
+    keys = new long[capacity];
+    events = new Object[capacity];
+    nodes = new Node[capacity];
+    pids = new byte[capacity];
+    next = new int[capacity];
+    for (int i = 0; i < capacity - 1; i++) next[i] = i + 1;
+    next[capacity - 1] = NIL;
+    free = 0;
+
+    for (int i = 0; i < MAX_RUNGS; i++) {
+      bucketHead[i] = new int[0];
+      bucketTail[i] = new int[0];
+      bucketCount[i] = new int[0];
+    }
+    bottom = new int[16];
+    bottomKeys = new long[16];
+
+    // no rung yet: everything goes to top until the first removal
+    nRungs = 0;
+    topStart = 0;
+  }
+
+  // --------------------------------------------------------------------------
+  // Methods
+  // --------------------------------------------------------------------------
+
+  /** Returns the current number of events in the system. */
+  public int size() {
+    return size;
+  }
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Add a new event, to be scheduled at the specified time.
+   *
+   * @param time the time at which this event should be scheduled
+   * @param event the object describing the event
+   * @param node the node at which the event has to be delivered
+   * @param pid the protocol that handles the event
+   */
+  public void add(long time, Object event, Node node, byte pid) {
+    add(time, event, node, pid, CommonState.r.nextInt(1 << pbits));
+  }
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Add a new event, to be scheduled at the specified time.
+   *
+   * @param time the time at which this event should be scheduled
+   * @param event the object describing the event
+   * @param node the node at which the event has to be delivered
+   * @param pid the protocol that handles the event
+   */
+  public void add(long time, Object event, Node node, byte pid, long priority) {
+    if ((time & overflowMask) != 0)
+      throw new IllegalArgumentException("Time overflow: time=" + time);
+
+    long key = (time << pbits) | priority;
+
+    if (free == NIL) doubleCapacity();
+    int slot = free;
+    free = next[slot];
+    keys[slot] = key;
+    events[slot] = event;
+    nodes[slot] = node;
+    pids[slot] = pid;
+    size++;
+
+    if (key >= topStart) {
+      next[slot] = top;
+      top = slot;
+      if (topCount == 0 || key < topMin) topMin = key;
+      if (topCount == 0 || key > topMax) topMax = key;
+      topCount++;
+      return;
+    }
+    // the unconsumed part of each rung starts after the one of the next rung
+    for (int r = 0; r < nRungs; r++) {
+      if (key >= bucketStart(r, rungCurrent[r])) {
+        appendBucket(r, bucketOf(r, key), slot);
+        return;
+      }
+    }
+    insertBottom(slot, key);
+  }
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Removes the first event in the queue and returns it. Note that, to avoid garbage collection, a
+   * singleton instance of the Event class is used. This means that data contained in the returned
+   * event are overwritten when a new invocation of this method is performed.
+   *
+   * @return first event or null if size is zero
+   */
+  public Event removeFirst() {
+
+    if (size == 0) return null;
+
+    if (bottomCount == 0) fillBottom();
+
+    int slot = bottom[--bottomCount];
+    ev.time = keys[slot] >> pbits;
+    ev.event = events[slot];
+    ev.node = nodes[slot];
+    ev.pid = pids[slot];
+
+    events[slot] = null;
+    nodes[slot] = null;
+    next[slot] = free;
+    free = slot;
+    size--;
+    return ev;
+  }
+
+  // --------------------------------------------------------------------------
+
+  public long maxTime() {
+    return Long.MAX_VALUE >> pbits;
+  }
+
+  // --------------------------------------------------------------------------
+
+  public long maxPriority() {
+    return (1L << pbits) - 1;
+  }
+
+  // --------------------------------------------------------------------------
+
+  /** Prints the number of events in each part of the queue. */
+  public String toString() {
+    return "[Size: "
+        + size
+        + " Bottom: "
+        + bottomCount
+        + " Rungs: "
+        + nRungs
+        + " Top: "
+        + topCount
+        + "]";
+  }
+
+  // --------------------------------------------------------------------------
+  // Private methods
+  // --------------------------------------------------------------------------
+
+  /** Returns the bucket of a rung that holds the given key. */
+  private int bucketOf(int r, long key) {
+    return (int) Math.min((key - rungStart[r]) / rungWidth[r], rungBuckets[r] - 1);
+  }
+
+  // --------------------------------------------------------------------------
+
+  /** Appends a slot to a bucket of a rung. */
+  private void appendBucket(int r, int b, int slot) {
+    next[slot] = NIL;
+    if (bucketHead[r][b] == NIL) bucketHead[r][b] = slot;
+    else next[bucketTail[r][b]] = slot;
+    bucketTail[r][b] = slot;
+    bucketCount[r][b]++;
+  }
+
+  // --------------------------------------------------------------------------
+
+  /** Inserts a slot in bottom, keeping it sorted by decreasing key. */
+  private void insertBottom(int slot, long key) {
+    if (bottomCount == bottom.length) growBottom(bottomCount + 1);
+    int low = 0;
+    int high = bottomCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (bottomKeys[mid] > key) low = mid + 1;
+      else high = mid - 1;
+    }
+    System.arraycopy(bottom, low, bottom, low + 1, bottomCount - low);
+    System.arraycopy(bottomKeys, low, bottomKeys, low + 1, bottomCount - low);
+    bottom[low] = slot;
+    bottomKeys[low] = key;
+    bottomCount++;
+  }
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Moves the next non-empty bucket into bottom and sorts it. Rungs are consumed from the finest
+   * one; exhausted rungs are dropped, large buckets are spread over a new rung and the first rung
+   * is rebuilt from top when all of them are exhausted. Must be called only if the queue is not
+   * empty.
+   */
+  private void fillBottom() {
+    while (true) {
+      if (nRungs == 0) {
+        rungFromTop();
+        continue;
+      }
+      int r = nRungs - 1;
+      int b = rungCurrent[r];
+      while (b < rungBuckets[r] && bucketHead[r][b] == NIL) b++;
+      if (b == rungBuckets[r]) {
+        // rung exhausted
+        rungCurrent[r] = b;
+        nRungs--;
+        continue;
+      }
+      rungCurrent[r] = b + 1;
+      int head = bucketHead[r][b];
+      int count = bucketCount[r][b];
+      bucketHead[r][b] = NIL;
+      bucketCount[r][b] = 0;
+
+      if (count > SPAWN_THRESHOLD && nRungs < MAX_RUNGS && spawnRung(r, b, head, count)) continue;
+
+      int n = 0;
+      if (bottom.length < count) growBottom(count);
+      for (int s = head; s != NIL; s = next[s]) {
+        bottom[n] = s;
+        bottomKeys[n] = keys[s];
+        n++;
+      }
+      bottomCount = n;
+      sortBottom(0, n - 1);
+      return;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+
+  /** Spreads the events of top over a new first rung. */
+  private void rungFromTop() {
+    long end = topMax == Long.MAX_VALUE ? Long.MAX_VALUE : topMax + 1;
+    newRung(0, topMin, end, topCount);
+    topStart = bucketStart(0, rungBuckets[0]);
+
+    int s = top;
+    top = NIL;
+    topCount = 0;
+    while (s != NIL) {
+      int nextSlot = next[s];
+      appendBucket(0, bucketOf(0, keys[s]), s);
+      s = nextSlot;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Spreads the events of bucket b of rung r over a new rung.
+   *
+   * @return false if all the events have the same key, so a new rung would not split them
+   */
+  private boolean spawnRung(int r, int b, int head, int count) {
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    for (int s = head; s != NIL; s = next[s]) {
+      if (keys[s] < min) min = keys[s];
+      if (keys[s] > max) max = keys[s];
+    }
+    if (min == max) return false;
+
+    // the new rung covers the rest of the bucket, so that no key of this range can reach rung r
+    int nr = nRungs;
+    newRung(nr, min, bucketStart(r, b + 1), count);
+
+    int s = head;
+    while (s != NIL) {
+      int nextSlot = next[s];
+      appendBucket(nr, bucketOf(nr, keys[s]), s);
+      s = nextSlot;
+    }
+    return true;
+  }
+
+  // --------------------------------------------------------------------------
+
+  /** Sets up rung r with at most n empty buckets covering [start, end). */
+  private void newRung(int r, long start, long end, int n) {
+    long span = Math.max(1, end - start);
+    long width = (span - 1) / n + 1;
+    n = (int) ((span - 1) / width + 1);
+    if (bucketHead[r].length < n) {
+      bucketHead[r] = new int[n];
+      bucketTail[r] = new int[n];
+      bucketCount[r] = new int[n];
+    }
+    for (int i = 0; i < n; i++) {
+      bucketHead[r][i] = NIL;
+      bucketCount[r][i] = 0;
+    }
+    rungStart[r] = start;
+    rungWidth[r] = width;
+    rungBuckets[r] = n;
+    rungCurrent[r] = 0;
+    nRungs = r + 1;
+  }
+
+  // --------------------------------------------------------------------------
+
+  /** Returns the first key of bucket b of rung r, saturating at Long.MAX_VALUE. */
+  private long bucketStart(int r, int b) {
+    if (b > 0 && rungWidth[r] > (Long.MAX_VALUE - rungStart[r]) / b) return Long.MAX_VALUE;
+    return rungStart[r] + b * rungWidth[r];
+  }
+
+  // --------------------------------------------------------------------------
+
+  /** Sorts bottom[low..high] by decreasing key. */
+  private void sortBottom(int low, int high) {
+    while (high - low >= INSERTION_SORT_THRESHOLD) {
+      // median of three pivot
+      int mid = (low + high) >>> 1;
+      if (bottomKeys[mid] > bottomKeys[low]) swapBottom(mid, low);
+      if (bottomKeys[high] > bottomKeys[low]) swapBottom(high, low);
+      if (bottomKeys[high] > bottomKeys[mid]) swapBottom(high, mid);
+      long pivot = bottomKeys[mid];
+      int i = low;
+      int j = high;
+      while (i <= j) {
+        while (bottomKeys[i] > pivot) i++;
+        while (bottomKeys[j] < pivot) j--;
+        if (i <= j) {
+          swapBottom(i, j);
+          i++;
+          j--;
+        }
+      }
+      // recurse on the smaller part
+      if (j - low < high - i) {
+        sortBottom(low, j);
+        low = i;
+      } else {
+        sortBottom(i, high);
+        high = j;
+      }
+    }
+    for (int i = low + 1; i <= high; i++) {
+      long k = bottomKeys[i];
+      int s = bottom[i];
+      int j = i - 1;
+      while (j >= low && bottomKeys[j] < k) {
+        bottomKeys[j + 1] = bottomKeys[j];
+        bottom[j + 1] = bottom[j];
+        j--;
+      }
+      bottomKeys[j + 1] = k;
+      bottom[j + 1] = s;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+
+  /** */
+  private void swapBottom(int i, int j) {
+    long tk = bottomKeys[i];
+    bottomKeys[i] = bottomKeys[j];
+    bottomKeys[j] = tk;
+    int ts = bottom[i];
+    bottom[i] = bottom[j];
+    bottom[j] = ts;
+  }
+
+  // --------------------------------------------------------------------------
+
+  /** */
+  private void growBottom(int min) {
+    int newsize = Math.max(min, bottom.length * 2);
+    int[] tb = new int[newsize];
+    System.arraycopy(bottom, 0, tb, 0, bottomCount);
+    bottom = tb;
+    long[] tk = new long[newsize];
+    System.arraycopy(bottomKeys, 0, tk, 0, bottomCount);
+    bottomKeys = tk;
+  }
+
+  // --------------------------------------------------------------------------
+
+  /** */
+  private void doubleCapacity() {
+    int oldsize = keys.length;
+    int newsize = oldsize * 2;
+    long[] tk = new long[newsize];
+    System.arraycopy(keys, 0, tk, 0, oldsize);
+    keys = tk;
+    Object[] te = new Object[newsize];
+    System.arraycopy(events, 0, te, 0, oldsize);
+    events = te;
+    Node[] tn = new Node[newsize];
+    System.arraycopy(nodes, 0, tn, 0, oldsize);
+    nodes = tn;
+    byte[] tp = new byte[newsize];
+    System.arraycopy(pids, 0, tp, 0, oldsize);
+    pids = tp;
+    int[] tx = new int[newsize];
+    System.arraycopy(next, 0, tx, 0, oldsize);
+    for (int i = oldsize; i < newsize - 1; i++) tx[i] = i + 1;
+    tx[newsize - 1] = NIL;
+    next = tx;
+    free = oldsize;
+  }
+} // END LadderQueue
@@ -0,0 +1,29 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.edsim;
+
+import peersim.core.Protocol;
+
+/**
+ * Marks the protocols that can be executed by {@link ParallelEngine}: when run on a node, they only
+ * modify the state of that node, and they draw random numbers only from {@link
+ * peersim.core.CommonState#r}. Shared state, such as static fields and protocol instances shared by
+ * all the nodes, is either only read during the simulation or thread-safe and independent of the
+ * order in which the nodes access it. The parallel engine is only started if all the protocols of
+ * the nodes implement this interface.
+ */
+public interface NodeLocalProtocol extends Protocol {}
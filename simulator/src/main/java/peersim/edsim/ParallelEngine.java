@@ -0,0 +1,295 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.edsim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import peersim.core.CommonState;
+import peersim.core.Node;
+import peersim.util.ExtendedRandom;
+
+/**
+ * Conservative parallel execution of the events of {@link EDSimulator}. The nodes are partitioned
+ * into logical processes by their ID, one for each thread. The lookahead is a lower bound of the
+ * delay of the events a node schedules for another node (usually the minimum latency of the
+ * transport): if the first event in the queue is at time <i>t</i>, no event before <i>t</i> +
+ * lookahead can be created for a node by another logical process. All the events of such a window
+ * are taken from the queue and executed by the logical processes in parallel, each in time order.
+ * Events scheduled by a logical process for its own nodes inside the window are executed in the
+ * same window, all the other ones are added to the queue when the window is over. Control events
+ * are never executed in parallel: they close the window.
+ *
+ * <p>During a window time, node and pid of {@link CommonState} are kept separately for each thread,
+ * and {@link CommonState#r} draws from a separate random stream for each logical process. These
+ * streams are seeded from the main one, and the events exchanged between logical processes are
+ * queued in a fixed order, so the results only depend on the seed and the number of threads.
+ * Protocols, however, must only modify the state of the node they are executing on: shared state
+ * (static fields, shared protocol instances) is accessed concurrently. {@link EDSimulator} only
+ * creates the engine if all the protocols declare it by implementing {@link NodeLocalProtocol}.
+ */
+class ParallelEngine {
+
+  // ---------------------------------------------------------------------
+  // Fields
+  // ---------------------------------------------------------------------
+
+  /** The logical process executed by the current thread, if any. */
+  private static final ThreadLocal<LogicalProcess> current = new ThreadLocal<LogicalProcess>();
+
+  /** The logical processes, indexed by node ID modulo their number. */
+  private final LogicalProcess[] processes;
+
+  /** Lower bound of the delay between an event and the events it creates for other nodes. */
+  private final long lookahead;
+
+  /** Threads executing the logical processes. */
+  private final ExecutorService executor;
+
+  /** The random generator replaced in {@link CommonState#r}. */
+  private final ExtendedRandom random;
+
+  // ---------------------------------------------------------------------
+  // Initialization
+  // ---------------------------------------------------------------------
+
+  /**
+   * Creates the logical processes and the threads, and switches {@link CommonState} to a separate
+   * state for each thread.
+   *
+   * @param threads the number of logical processes and threads
+   * @param lookahead the lookahead, must be positive
+   * @param queues the event queues of the logical processes, one for each thread
+   */
+  ParallelEngine(int threads, long lookahead, PriorityQ[] queues) {
+    this.lookahead = lookahead;
+    processes = new LogicalProcess[threads];
+    for (int i = 0; i < threads; i++)
+      processes[i] = new LogicalProcess(queues[i], new ExtendedRandom(CommonState.r.nextLong()));
+    executor =
+        Executors.newFixedThreadPool(
+            threads,
+            r -> {
+              Thread t = new Thread(r, "EDSimulator worker");
+              t.setDaemon(true);
+              return t;
+            });
+    random = CommonState.r;
+    CommonState.r = new PartitionedRandom(random);
+    CommonState.setThreadLocal(true);
+  }
+
+  // ---------------------------------------------------------------------
+
+  /** Stops the threads and restores the global state of {@link CommonState}. */
+  void shutdown() {
+    executor.shutdown();
+    CommonState.setThreadLocal(false);
+    CommonState.r = random;
+  }
+
+  // ---------------------------------------------------------------------
+  // Methods
+  // ---------------------------------------------------------------------
+
+  /**
+   * Returns the logical process executed by the calling thread.
+   *
+   * @return the logical process, or null if the thread is not executing a window
+   */
+  static LogicalProcess current() {
+    return current.get();
+  }
+
+  // ---------------------------------------------------------------------
+
+  /**
+   * Executes a window of events. The window starts with the given event and includes all the events
+   * of the queue before the lookahead expires, the end time, or the next control event.
+   *
+   * @param first the first event of the window, already removed from the queue
+   * @param queue the event queue of the simulation
+   * @param endtime the end time of the simulation
+   */
+  void executeWindow(PriorityQ.Event first, PriorityQ queue, long endtime) {
+    long end = Math.min(first.time + lookahead, endtime);
+    processOf(first.node).queue.add(first.time, first.event, first.node, first.pid);
+
+    // the event closing the window, to be put back in the queue
+    PriorityQ.Event next = null;
+    PriorityQ.Event ev;
+    while ((ev = queue.removeFirst()) != null) {
+      if (ev.node == null || ev.time >= end) {
+        next = copy(ev);
+        if (ev.node == null) end = Math.min(end, ev.time);
+        break;
+      }
+      processOf(ev.node).queue.add(ev.time, ev.event, ev.node, ev.pid);
+    }
+
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(processes.length);
+    for (LogicalProcess lp : processes) {
+      if (lp.queue.size() == 0) continue;
+      lp.end = end;
+      tasks.add(lp);
+    }
+    try {
+      for (Future<Object> f : executor.invokeAll(tasks)) f.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new RuntimeException(cause);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+
+    // the order of the queue insertions must not depend on the threads
+    for (LogicalProcess lp : processes) {
+      for (PriorityQ.Event e : lp.outgoing) queue.add(e.time, e.event, e.node, e.pid);
+      lp.outgoing.clear();
+    }
+    if (next != null) {
+      if (next.node == null)
+        queue.add(next.time, next.event, null, (byte) 0, ((ControlEvent) next.event).getOrder());
+      else queue.add(next.time, next.event, next.node, next.pid);
+    }
+  }
+
+  // ---------------------------------------------------------------------
+
+  private LogicalProcess processOf(Node node) {
+    return processes[(int) Long.remainderUnsigned(node.getID(), processes.length)];
+  }
+
+  private static PriorityQ.Event copy(PriorityQ.Event ev) {
+    PriorityQ.Event e = new PriorityQ.Event();
+    e.time = ev.time;
+    e.event = ev.event;
+    e.node = ev.node;
+    e.pid = ev.pid;
+    return e;
+  }
+
+  // ---------------------------------------------------------------------
+  // Inner classes
+  // ---------------------------------------------------------------------
+
+  /** A partition of the nodes, with its own event queue and random stream. */
+  class LogicalProcess implements Callable<Object> {
+
+    /** Events of the current window. */
+    private final PriorityQ queue;
+
+    /** Events to be added to the simulation queue at the end of the window. */
+    private final List<PriorityQ.Event> outgoing = new ArrayList<PriorityQ.Event>();
+
+    /** Random stream used by the protocols of this partition. */
+    private final ExtendedRandom random;
+
+    /** End of the current window. */
+    private long end;
+
+    LogicalProcess(PriorityQ queue, ExtendedRandom random) {
+      this.queue = queue;
+      this.random = random;
+    }
+
+    /**
+     * Schedules an event created by this logical process.
+     *
+     * @throws IllegalStateException if the event is for another logical process and falls within
+     *     the window
+     */
+    void add(long time, Object event, Node node, byte pid) {
+      if (time < end && node != null) {
+        if (processOf(node) == this) {
+          queue.add(time, event, node, pid);
+          return;
+        }
+        throw new IllegalStateException(
+            "Event "
+                + event
+                + " for node "
+                + node.getID()
+                + " at time "
+                + time
+                + " is earlier than the lookahead allows ("
+                + lookahead
+                + "); check "
+                + EDSimulator.PAR_LOOKAHEAD);
+      }
+      PriorityQ.Event e = new PriorityQ.Event();
+      e.time = time;
+      e.event = event;
+      e.node = node;
+      e.pid = pid;
+      outgoing.add(e);
+    }
+
+    /** Executes the events of the window. */
+    public Object call() {
+      current.set(this);
+      try {
+        PriorityQ.Event ev;
+        while ((ev = queue.removeFirst()) != null) {
+          CommonState.setTime(ev.time);
+          EDSimulator.deliver(ev);
+        }
+      } finally {
+        current.remove();
+      }
+      return null;
+    }
+  }
+
+  // ---------------------------------------------------------------------
+
+  /**
+   * Random generator that draws from the stream of the logical process executed by the calling
+   * thread, or from the main stream outside the windows.
+   */
+  private static class PartitionedRandom extends ExtendedRandom {
+
+    private final ExtendedRandom main;
+
+    PartitionedRandom(ExtendedRandom main) {
+      super(main.getLastSeed());
+      this.main = main;
+    }
+
+    private ExtendedRandom stream() {
+      LogicalProcess lp = current.get();
+      return lp == null ? main : lp.random;
+    }
+
+    /** Takes the bits from the stream, as {@link java.util.Random#next} would. */
+    @Override
+    protected int next(int bits) {
+      return stream().nextInt() >>> (32 - bits);
+    }
+
+    @Override
+    public double nextGaussian() {
+      return stream().nextGaussian();
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.edsim;
+
+import java.util.Random;
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Control;
+
+/**
+ * Initializer that compares event queue implementations with the classic hold model: the queue is
+ * filled with a number of events, then every operation removes the first event and schedules a new
+ * one at the time of the removed event plus a random delay. Three delay distributions are run,
+ * which resemble the traffic of the simulations: uniform delays, a fixed latency (as with equal
+ * <code>mindelay</code> and <code>maxdelay</code> in the transports) and exponential delays. For
+ * every queue the throughput in hold operations per second is printed, together with a checksum of
+ * the removed event times that must be equal across queues.
+ *
+ * <p>The queues to compare are instantiated from the configuration like the simulation event queue,
+ * so they can be given parameters, e.g.:
+ *
+ * <pre>
+ * init.bench peersim.edsim.QueueBenchmark
+ * init.bench.queues heap ladder
+ * init.bench.heap peersim.edsim.Heap
+ * init.bench.ladder peersim.edsim.LadderQueue
+ * </pre>
+ */
+public class QueueBenchmark implements Control {
+
+  /**
+   * Space separated names of the queues to compare. Each name is a parameter of this component
+   * holding the class of the queue. Defaults to both {@link Heap} and {@link LadderQueue}.
+   *
+   * @config
+   */
+  private static final String PAR_QUEUES = "queues";
+
+  /**
+   * Number of events kept in the queue. Defaults to 1000000.
+   *
+   * @config
+   */
+  private static final String PAR_EVENTS = "events";
+
+  /**
+   * Number of hold operations measured for each distribution. Defaults to 5000000.
+   *
+   * @config
+   */
+  private static final String PAR_OPERATIONS = "operations";
+
+  /**
+   * Mean delay of the scheduled events. Defaults to 100.
+   *
+   * @config
+   */
+  private static final String PAR_DELAY = "delay";
+
+  private static final String[] DISTRIBUTIONS = {"uniform", "fixed", "exponential"};
+
+  private final String prefix;
+
+  private final String[] queues;
+
+  private final int events;
+
+  private final int operations;
+
+  private final int delay;
+
+  /**
+   * Constructor that reads the configuration parameters.
+   *
+   * @param prefix the prefix string of the parameters read from the configuration file
+   */
+  public QueueBenchmark(String prefix) {
+    this.prefix = prefix;
+    if (Configuration.contains(prefix + "." + PAR_QUEUES))
+      queues = Configuration.getString(prefix + "." + PAR_QUEUES).trim().split("\\s+");
+    else queues = null;
+    events = Configuration.getInt(prefix + "." + PAR_EVENTS, 1000000);
+    operations = Configuration.getInt(prefix + "." + PAR_OPERATIONS, 5000000);
+    delay = Configuration.getInt(prefix + "." + PAR_DELAY, 100);
+  }
+
+  /**
+   * Runs the benchmark and prints the results.
+   *
+   * @return always false
+   */
+  public boolean execute() {
+    System.out.println(
+        "QueueBenchmark: "
+            + events
+            + " events, "
+            + operations
+            + " hold operations, delay "
+            + delay);
+    int n = queues == null ? 2 : queues.length;
+    for (String distribution : DISTRIBUTIONS) {
+      for (int q = 0; q < n; q++) {
+        PriorityQ queue;
+        String name;
+        if (queues == null) {
+          queue = q == 0 ? new Heap() : new LadderQueue();
+          name = queue.getClass().getSimpleName();
+        } else {
+          queue = (PriorityQ) Configuration.getInstance(prefix + "." + queues[q]);
+          name = queues[q];
+        }
+        run(queue, name, distribution);
+      }
+    }
+    return false;
+  }
+
+  /** Runs the hold model on a queue and prints the throughput. */
+  private void run(PriorityQ queue, String name, String distribution) {
+    // same delays and priorities for every queue
+    Random r = new Random(CommonState.r.getLastSeed());
+    long priorities = queue.maxPriority() + 1;
+    for (int i = 0; i < events; i++)
+      queue.add(delay(r, distribution), null, null, (byte) 0, nextPriority(r, priorities));
+
+    long checksum = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < operations; i++) {
+      long now = queue.removeFirst().time;
+      checksum = checksum * 31 + now;
+      queue.add(now + delay(r, distribution), null, null, (byte) 0, nextPriority(r, priorities));
+    }
+    long elapsed = System.nanoTime() - start;
+
+    System.out.println(
+        "QueueBenchmark: "
+            + distribution
+            + " "
+            + name
+            + " "
+            + (long) (operations / (Math.max(elapsed, 1) / 1e9))
+            + " ops/s, checksum "
+            + checksum);
+  }
+
+  private long delay(Random r, String distribution) {
+    switch (distribution) {
+      case "fixed":
+        return delay;
+      case "exponential":
+        return (long) (-Math.log(1 - r.nextDouble()) * delay);
+      default:
+        return r.nextInt(2 * delay + 1);
+    }
+  }
+
+  private static long nextPriority(Random r, long priorities) {
+    return (long) (r.nextDouble() * priorities);
+  }
+}
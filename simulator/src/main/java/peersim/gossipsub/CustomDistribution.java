@@ -56,6 +56,7 @@ public class CustomDistribution implements peersim.core.Control {
         ((GossipSubBlock) gossipProt).setValidator(true);
       }
       gossipProt.setNode(node);
+      Network.registerId(id, Network.get(i));
       gossipProt.setProtocolID(protocolID);
     }
 
@@ -0,0 +1,30 @@
+package peersim.gossipsub;
+
+import java.util.Arrays;
+
+/**
+ * The messages added to a cache between two heartbeats, as IDs and topics in parallel arrays, so
+ * that they can be evicted together.
+ */
+class Generation {
+
+  long[] ids = new long[16];
+
+  String[] topics = new String[16];
+
+  int size = 0;
+
+  void add(String topic, long id) {
+    if (size == ids.length) {
+      ids = Arrays.copyOf(ids, size * 2);
+      topics = Arrays.copyOf(topics, size * 2);
+    }
+    ids[size] = id;
+    topics[size++] = topic;
+  }
+
+  void clear() {
+    Arrays.fill(topics, 0, size, null);
+    size = 0;
+  }
+}
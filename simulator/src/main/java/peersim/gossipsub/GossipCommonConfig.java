@@ -21,6 +21,15 @@ public class GossipCommonConfig {
 
   public static int ttl = 36000;
 
+  /** Number of heartbeats the messages are kept in the message cache */
+  public static int MCACHE_LEN = 5;
+
+  /** Number of heartbeats whose messages are advertised with IHAVE */
+  public static int MCACHE_GOSSIP = 3;
+
+  /** Time the IDs of the messages seen are kept to drop duplicates, in ms */
+  public static long SEEN_TTL = 120000;
+
   public static int BANDWIDTH = 100000000;
   /**
    * Provides short information about current Kademlia configuration
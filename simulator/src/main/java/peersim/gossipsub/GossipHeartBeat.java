@@ -5,16 +5,34 @@ import peersim.core.Control;
 import peersim.core.Network;
 import peersim.core.Node;
 
+/**
+ * Runs the heartbeat of the gossipsub nodes. By default every node runs its heartbeat each time the
+ * control is executed, all at the same instant. With <code>jitter</code> the control only starts
+ * the heartbeats of the nodes that do not run them yet, such as the ones added since the last
+ * execution: every node then schedules its own heartbeat events with a random phase, so the GRAFT,
+ * PRUNE and IHAVE messages are spread over the heartbeat interval.
+ */
 public class GossipHeartBeat implements Control {
 
   private String prefix;
   private static final String PAR_PROT = "protocol";
+
+  /**
+   * If set, the nodes run their heartbeats at a random phase instead of all at the same time.
+   *
+   * @config
+   */
+  private static final String PAR_JITTER = "jitter";
+
   protected final int pid;
 
+  private final boolean jitter;
+
   // ______________________________________________________________________________________________
   public GossipHeartBeat(String prefix) {
     this.prefix = prefix;
     pid = Configuration.getPid(prefix + "." + PAR_PROT);
+    jitter = Configuration.contains(prefix + "." + PAR_JITTER);
   }
 
   // ______________________________________________________________________________________________
@@ -23,7 +41,8 @@ public class GossipHeartBeat implements Control {
       Node iNode = Network.get(i);
       if (iNode.getFailState() == Node.OK) {
         GossipSubProtocol iKad = (GossipSubProtocol) iNode.getProtocol(pid);
-        iKad.heartBeat();
+        if (jitter) iKad.startHeartBeat(iNode, pid);
+        else iKad.heartBeat();
       }
     }
 
@@ -2,21 +2,21 @@ package peersim.gossipsub;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.logging.ConsoleHandler;
-import java.util.logging.Level;
-import java.util.logging.LogRecord;
 import java.util.logging.Logger;
-import java.util.logging.SimpleFormatter;
 import peersim.blockpropagation.GossipObserver;
 import peersim.blockpropagation.Sample;
 import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
 import peersim.core.CommonState;
+import peersim.core.Logging;
 import peersim.core.Network;
 import peersim.core.Node;
 import peersim.edsim.EDProtocol;
+import peersim.edsim.EDSimulator;
 import peersim.kademlia.SimpleEvent;
 import peersim.transport.UnreliableTransport;
 
@@ -36,6 +36,9 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
   private static final String PAR_DEGREE = "d";
   private static final String PAR_DEGREE_HIGH = "d_high";
   private static final String PAR_DEGREE_LOW = "d_low";
+  private static final String PAR_MCACHE_LEN = "mcache_len";
+  private static final String PAR_MCACHE_GOSSIP = "mcache_gossip";
+  private static final String PAR_SEEN_TTL = "seen_ttl";
 
   /** Identifier for the tranport protocol (used in the sendMessage method) */
   private int tid;
@@ -62,10 +65,13 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
 
   protected MCache mCache;
 
-  protected HashMap<String, List<Long>> seen;
+  protected SeenCache seen;
 
   private long heartbeat;
 
+  /** Whether the node schedules its own heartbeat events */
+  private boolean heartbeatStarted = false;
+
   private int D_low, D_high, D;
   /**
    * Replicate this object by returning an identical copy. It is called by the initializer and do
@@ -97,14 +103,23 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
     D_low = Configuration.getInt(prefix + "." + PAR_DEGREE_LOW, GossipCommonConfig.D_low);
 
     if (D_low < 1) D_low = 1;
-    seen = new HashMap<>();
+    int mcacheLen =
+        Configuration.getInt(prefix + "." + PAR_MCACHE_LEN, GossipCommonConfig.MCACHE_LEN);
+    int mcacheGossip =
+        Configuration.getInt(prefix + "." + PAR_MCACHE_GOSSIP, GossipCommonConfig.MCACHE_GOSSIP);
+    if (mcacheLen < 1 || mcacheGossip < 0 || mcacheGossip > mcacheLen)
+      throw new IllegalParameterException(
+          prefix + "." + PAR_MCACHE_GOSSIP, "Must be between 0 and " + PAR_MCACHE_LEN);
+    long seenTtl = Configuration.getLong(prefix + "." + PAR_SEEN_TTL, GossipCommonConfig.SEEN_TTL);
+    // the IDs are kept for the heartbeats starting in the TTL, at least one
+    seen = new SeenCache((int) Math.max(1, (seenTtl + heartbeat - 1) / heartbeat));
     peers = new PeerTable();
 
     mesh = new HashMap<>();
 
     fanout = new HashMap<>();
 
-    mCache = new MCache();
+    mCache = new MCache(mcacheLen, mcacheGossip);
     // System.out.println("New GossipSubProtocol " + D + " " + D_high + " " + D_low);
   }
 
@@ -121,9 +136,10 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
   }
 
   /**
-   * Search through the network for a node with a specific node ID, using binary search based on the
-   * ordering of the network. If the binary search does not find a node with the given ID, a
-   * traditional search is performed for more reliability (in case the network is not ordered).
+   * Finds the node with a specific node ID. The ID index kept by {@link Network} is used first, so
+   * that the lookup takes constant time regardless of the ordering of the network. Nodes whose ID
+   * was not registered in the index are searched with {@link #searchNetwork} and registered on
+   * success.
    *
    * @param searchNodeId the ID of the node to search for
    * @return the node with the given ID, or null if not found
@@ -132,6 +148,24 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
     // If the given searchNodeId is null, return null
     if (searchNodeId == null) return null;
 
+    Node n = Network.getById(searchNodeId);
+    if (n != null) return n;
+
+    n = searchNetwork(searchNodeId);
+    if (n != null) Network.registerId(searchNodeId, n);
+    return n;
+  }
+
+  /**
+   * Search through the network for a node with a specific node ID, using binary search based on the
+   * ordering of the network. If the binary search does not find a node with the given ID, a
+   * traditional search is performed for more reliability (in case the network is not ordered).
+   *
+   * @param searchNodeId the ID of the node to search for
+   * @return the node with the given ID, or null if not found
+   */
+  protected Node searchNetwork(BigInteger searchNodeId) {
+
     // Set the initial search range to cover the entire network
     int inf = 0;
     int sup = Network.size() - 1;
@@ -227,20 +261,21 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
 
     if (m.getType() == Message.MSG_PUBLISH || m.getType() == Message.MSG_MESSAGE)
       logger.warning(
-          "Sending message "
-              + m.getType()
-              + " to "
-              + destId
-              + " "
-              + ((GossipSubProtocol) dest.getProtocol(myPid)).getGossipNode().getId()
-              + " from "
-              + this.getGossipNode().getId()
-              + " "
-              + ((GossipSubProtocol) src.getProtocol(myPid)).getGossipNode().getId()
-              + " "
-              + m.getType()
-              + " "
-              + m.getHops());
+          () ->
+              "Sending message "
+                  + m.getType()
+                  + " to "
+                  + destId
+                  + " "
+                  + ((GossipSubProtocol) dest.getProtocol(myPid)).getGossipNode().getId()
+                  + " from "
+                  + this.getGossipNode().getId()
+                  + " "
+                  + ((GossipSubProtocol) src.getProtocol(myPid)).getGossipNode().getId()
+                  + " "
+                  + m.getType()
+                  + " "
+                  + m.getHops());
     // Get the transport protocol
     m.increaseHops();
     transport = (UnreliableTransport) (Network.prototype).getProtocol(tid);
@@ -284,30 +319,8 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
   public void setNode(GossipNode node) {
     this.node = node;
 
-    // Initialize the logger with the node ID as its name
-    logger = Logger.getLogger(node.getId().toString());
-
-    // Disable the logger's parent handlers to avoid duplicate output
-    logger.setUseParentHandlers(false);
-
-    // Set the logger's level to WARNING
-    logger.setLevel(Level.WARNING);
-    // logger.setLevel(Level.ALL);
-
-    // Create a console handler for the logger
-    ConsoleHandler handler = new ConsoleHandler();
-    // Set the handler's formatter to a custom format that includes the time and logger name
-    handler.setFormatter(
-        new SimpleFormatter() {
-          private static final String format = "[%d][%s] %3$s %n";
-
-          @Override
-          public synchronized String format(LogRecord lr) {
-            return String.format(format, CommonState.getTime(), logger.getName(), lr.getMessage());
-          }
-        });
-    // Add the console handler to the logger
-    logger.addHandler(handler);
+    // Initialize the logger with the node ID as its name, configured by Logging
+    logger = Logging.getLogger(node.getId().toString());
   }
 
   /**
@@ -373,12 +386,30 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
         m = (Message) event;
         handlePrune(m, pid);
         break;
+      case HeartBeat.HEARTBEAT:
+        heartBeat();
+        EDSimulator.add(heartbeat, event, node, pid);
+        break;
     }
   }
 
+  /**
+   * Starts the heartbeat events of the node, the first one at a random time within a heartbeat
+   * interval so that the nodes do not run them all at the same instant. It does nothing if they are
+   * already started.
+   *
+   * @param node the node of this protocol
+   * @param pid the protocol ID
+   */
+  public void startHeartBeat(Node node, int pid) {
+    if (heartbeatStarted) return;
+    heartbeatStarted = true;
+    EDSimulator.add(CommonState.r.nextLong(heartbeat), new HeartBeat(), node, pid);
+  }
+
   public void heartBeat() {
     for (String topic : mesh.keySet()) {
-      logger.warning("heartbeat execute " + mesh.get(topic).size() + " " + topic);
+      logger.warning(() -> "heartbeat execute " + mesh.get(topic).size() + " " + topic);
       if (mesh.get(topic).size() < D_low) {
         List<BigInteger> nodes =
             peers.getNPeers(topic, D - mesh.get(topic).size(), mesh.get(topic));
@@ -394,7 +425,7 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
         for (int i = 0; i < toRemove; i++) {
           BigInteger node = nodes.iterator().next();
           nodes.remove(node);
-          logger.info("Pruning node " + node);
+          logger.info(() -> "Pruning node " + node);
           sendPruneMessage(node, topic);
         }
       }
@@ -417,47 +448,36 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
 
     for (String topic : allTopics) {
 
-      logger.info("Sending gossip topic " + topic);
-      List<Long> msgs = seen.get(topic);
-      if (msgs != null) {
-
-        List<BigInteger> ids = peers.getPeers(topic);
+      logger.info(() -> "Sending gossip topic " + topic);
+      List<Long> msgs = mCache.getGossipIds(topic);
+      if (!msgs.isEmpty()) {
 
-        if (ids == null) break;
-        int sent = 0;
-        boolean found = false;
+        // peers outside the mesh and the fanout of the topic
+        List<BigInteger> ids = peers.getNPeers(topic, D, mesh.get(topic), fanout.get(topic));
 
         logger.info(
-            "Sending gossip msgs " + msgs.size() + " " + ids.size() + " " + mesh.get(topic).size());
+            () ->
+                "Sending gossip msgs "
+                    + msgs.size()
+                    + " "
+                    + ids.size()
+                    + " "
+                    + mesh.get(topic).size());
 
         for (BigInteger id : ids) {
-          if (mesh.get(topic) != null) {
-            if (mesh.get(topic).contains(id)) {
-              found = true;
-            }
-          }
-          if (fanout.get(topic) != null) {
-            if (fanout.get(topic).contains(id)) {
-              found = true;
-            }
-          }
-          logger.warning("Sending gossip to " + id + " " + !found);
-
-          if (!found) {
-            logger.warning("Sending gossip to " + id);
-            sendIHaveMessage(topic, id, msgs);
-            sent++;
-          }
-          if (sent == D) break;
-          found = false;
+          logger.warning(() -> "Sending gossip to " + id);
+          sendIHaveMessage(topic, id, msgs);
         }
       }
     }
+    // start a new heartbeat window for the seen IDs and the cached messages
+    seen.shift();
+    mCache.shift();
   }
 
   private void handleJoin(Message m, int myPid) {
     String topic = (String) m.body;
-    logger.warning("Handlejoin received " + topic);
+    logger.warning(() -> "Handlejoin received " + topic);
 
     /*EDSimulator.add(
     0,
@@ -479,17 +499,12 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
         }
       }
     } else if (mesh.get(topic) == null) {
-      List<BigInteger> p = peers.getPeers(topic);
+      List<BigInteger> p = peers.getNPeers(topic, D, Collections.singleton(this.node.getId()));
       mesh.put(topic, new HashSet<BigInteger>());
 
-      if (p != null) {
-        // Collections.shuffle(p);
-        p.remove(this.node.getId());
-        for (BigInteger id : p) {
-          if (mesh.get(topic).size() >= D) break;
-          logger.warning("Adding " + id + " to mesh");
-          mesh.get(topic).add(id);
-        }
+      for (BigInteger id : p) {
+        logger.warning(() -> "Adding " + id + " to mesh");
+        mesh.get(topic).add(id);
       }
     }
     if (mesh.get(topic) != null) {
@@ -502,7 +517,7 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
 
   private void handleLeave(Message m, int myPid) {
     String topic = (String) m.body;
-    logger.warning("Handleleave received " + topic);
+    logger.warning(() -> "Handleleave received " + topic);
     if (mesh.get(topic) != null) {
       HashSet<BigInteger> p = mesh.get(topic);
       for (BigInteger id : p) {
@@ -514,7 +529,7 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
 
   private void handleGraft(Message m, int myPid) {
     String topic = (String) m.body;
-    logger.info("handleGraft received " + topic + " from:" + m.src.getId());
+    logger.info(() -> "handleGraft received " + topic + " from:" + m.src.getId());
     // if (mesh.get(topic) == null) mesh.put(topic, new ArrayList<BigInteger>());
     if (mesh.get(topic) != null) mesh.get(topic).add(m.src.getId());
     peers.addPeer(topic, m.src.getId());
@@ -524,7 +539,7 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
 
     String topic = (String) m.body;
 
-    logger.warning("handlePrune received " + topic + " " + m.src.getId());
+    logger.warning(() -> "handlePrune received " + topic + " " + m.src.getId());
 
     if (mesh.get(topic) != null) {
       mesh.get(topic).remove(m.src.getId());
@@ -538,22 +553,17 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
 
     List<Long> msgIds = (List<Long>) m.value;
     List<Long> iwants = new ArrayList<>();
-    List<Long> have = seen.get(topic);
 
-    logger.info("handleIHave received " + topic + " " + msgIds.size());
+    logger.info(() -> "handleIHave received " + topic + " " + msgIds.size());
 
-    if (have != null) {
-      for (long msg : msgIds) {
-        if (!have.contains(msg)) iwants.add(msg);
-      }
-    } else {
-      iwants.addAll(msgIds);
+    for (long msg : msgIds) {
+      if (!seen.contains(topic, msg)) iwants.add(msg);
     }
     if (iwants.size() > 0) sendIWantMessage(topic, m.src.getId(), iwants);
   }
 
   private void handleIWant(Message m, int myPid) {
-    logger.warning("handleIWant received " + m.body);
+    logger.warning(() -> "handleIWant received " + m.body);
     List<Long> ids = (List<Long>) m.value;
     for (long id : ids) {
       if (mCache.get(id) != null) {
@@ -564,7 +574,8 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
         msg.publisher = ((Sample) msg.value).getBlock().getPublisher();
         long cid = ((Sample) msg.value).getId();
 
-        logger.warning("sending message iwant " + cid + " " + msg.id + " to " + msg.dst.getId());
+        logger.warning(
+            () -> "sending message iwant " + cid + " " + msg.id + " to " + msg.dst.getId());
 
         sendMessage(msg, m.src.getId(), myPid);
       }
@@ -577,21 +588,20 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
     String topic = (String) m.body;
     Sample s = (Sample) m.value;
     logger.warning(
-        "Publish message "
-            + topic
-            + " "
-            + mesh.get(topic).size()
-            + " "
-            + s.getBlock().getId()
-            + " "
-            + gossipid);
-
-    if (seen.get(topic) == null) seen.put(topic, new ArrayList<Long>());
+        () ->
+            "Publish message "
+                + topic
+                + " "
+                + mesh.get(topic).size()
+                + " "
+                + s.getBlock().getId()
+                + " "
+                + gossipid);
 
     // BigInteger cid = getValueId(m.value);
     long cid = s.getId();
-    seen.get(topic).add(cid);
-    mCache.put(cid, s);
+    seen.add(topic, cid);
+    mCache.put(cid, topic, s);
 
     if (mesh.get(topic) != null) {
       HashSet<BigInteger> nodesToSend = mesh.get(topic);
@@ -610,7 +620,7 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
 
   protected void handleMessage(Message m, int myPid) {
 
-    logger.warning("handleMessage received from " + m.src.getId());
+    logger.warning(() -> "handleMessage received from " + m.src.getId());
     if (m.publisher.getId().compareTo(this.getGossipNode().getId()) == 0) return;
     if (m.src.getId().compareTo(this.getGossipNode().getId()) == 0) return;
 
@@ -619,24 +629,23 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
     Sample s = (Sample) m.value;
     long cid = s.getId();
 
-    if (seen.get(topic) == null) seen.put(topic, new ArrayList<Long>());
-    if (seen.get(topic).contains(cid)) return;
-    seen.get(topic).add(cid);
+    if (!seen.add(topic, cid)) return;
 
-    mCache.put(cid, s);
+    mCache.put(cid, topic, s);
     logger.warning(
-        "handleMessage received "
-            + topic
-            + " "
-            + cid
-            + " "
-            + m.id
-            + " "
-            + m.src.getId()
-            + " "
-            + m.nrHops
-            + " "
-            + m.publisher.getId());
+        () ->
+            "handleMessage received "
+                + topic
+                + " "
+                + cid
+                + " "
+                + m.id
+                + " "
+                + m.src.getId()
+                + " "
+                + m.nrHops
+                + " "
+                + m.publisher.getId());
 
     if (mesh.get(topic) != null) {
       HashSet<BigInteger> nodesToSend = mesh.get(topic);
@@ -648,7 +657,8 @@ public class GossipSubProtocol implements Cloneable, EDProtocol {
         mbis.dst = ((GossipSubProtocol) nodeIdtoNode(id).getProtocol(myPid)).getGossipNode();
         mbis.src = this.getGossipNode();
         logger.warning(
-            "handleMessage resending " + cid + " " + m.id + " to " + id + " " + m.dst.getId());
+            () ->
+                "handleMessage resending " + cid + " " + m.id + " to " + id + " " + m.dst.getId());
         sendMessage(mbis, id, myPid);
       }
     }
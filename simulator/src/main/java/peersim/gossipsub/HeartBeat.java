@@ -0,0 +1,17 @@
+package peersim.gossipsub;
+
+import peersim.kademlia.SimpleEvent;
+
+/**
+ * The event of the periodic heartbeat of a node, scheduled by the node itself when the heartbeats
+ * are jittered. The same event is scheduled again after every heartbeat.
+ */
+public class HeartBeat extends SimpleEvent {
+
+  /** Event Type: HEARTBEAT (run the mesh maintenance and the gossip of a node) */
+  public static final int HEARTBEAT = 100;
+
+  public HeartBeat() {
+    super(HEARTBEAT);
+  }
+}
@@ -1,76 +1,71 @@
 package peersim.gossipsub;
 
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.List;
 
 /**
- * Timeout functionnality for the memory store
+ * The message cache of gossipsub: the messages received in the last heartbeats, kept to answer
+ * IWANT requests, and their IDs, advertised with IHAVE. The cache is a sliding window of
+ * generations, one per heartbeat: {@link #shift}, called at every heartbeat, starts a new
+ * generation and evicts the messages of the oldest one. Messages are kept for <code>length</code>
+ * heartbeats, and the ones of the last <code>gossip</code> heartbeats are advertised.
  *
  * @author Deisss (LGPLv3)
  * @version 0.1
  */
-class TimeoutMemoryStore extends TimerTask {
-  private long id;
-  private MCache kv;
+public class MCache {
 
-  /**
-   * Constructor
-   *
-   * @param key The key to use & store
-   */
-  public TimeoutMemoryStore(long id, MCache kv) {
-    this.id = id;
-    this.kv = kv;
-  }
+  /** A message in the cache with the number of the last generation it was added in */
+  private static class Entry {
+    final Object value;
+    long generation;
 
-  @Override
-  public void run() {
-    kv.delete(this.id);
+    Entry(Object value, long generation) {
+      this.value = value;
+      this.generation = generation;
+    }
   }
-}
 
-/**
- * The memory store will keep data inside the class, for a specific amout of time
- *
- * @author Deisss (LGPLv3)
- * @version 0.1
- */
-public class MCache {
   // This will store any kind of object, related to a specific key value in string
-  private HashMap<Long, Object> mem;
+  private HashMap<Long, Entry> mem;
+
+  /** Messages added in each heartbeat, as a ring with the current generation at shifts % length */
+  private Generation[] generations;
+
+  /** Number of generations advertised */
+  private int gossip;
+
+  /** Number of generations started so far */
+  private long shifts = 0;
+
+  private long evictions = 0;
 
-  public MCache() {
-    mem = new HashMap<>();
-  }
   /**
-   * Add an object into the memory store
+   * Creates an empty cache.
    *
-   * @param id The key of the object to store
-   * @param obj The object to store
+   * @param length the number of heartbeats a message is kept
+   * @param gossip the number of heartbeats whose messages are advertised, at most length
    */
-  public void put(long id, Object obj) {
-    put(id, obj, 0);
+  public MCache(int length, int gossip) {
+    mem = new HashMap<>();
+    generations = new Generation[length];
+    for (int i = 0; i < length; i++) generations[i] = new Generation();
+    this.gossip = Math.min(gossip, length);
   }
+
   /**
-   * Add an object into the memory store
+   * Add a message into the current generation
    *
-   * @param obj The object to store
-   * @param timeout The delay in ms
+   * @param id The ID of the message
+   * @param topic The topic the message was received in
+   * @param obj The message
    */
-  public void put(long id, Object obj, long timeout) {
-    // If the system is not functionnal
-    if (mem == null) {
-      erase();
-    }
-
-    mem.put(id, obj);
-
-    // Create a delete operation after timeout
-    if (timeout > 0) {
-      new Timer().schedule(new TimeoutMemoryStore(id, this), timeout);
-    }
+  public void put(long id, String topic, Object obj) {
+    Entry e = mem.get(id);
+    if (e == null) mem.put(id, new Entry(obj, shifts));
+    else e.generation = shifts;
+    generations[(int) (shifts % generations.length)].add(topic, id);
   }
 
   /**
@@ -80,52 +75,56 @@ public class MCache {
    * @return The object retrieve, or null if nothing found
    */
   public Object get(long key) {
-    if (mem.containsKey(key)) {
-      return mem.get(key);
-    } else {
-      return null;
-    }
+    Entry e = mem.get(key);
+    return e == null ? null : e.value;
   }
 
   /**
-   * Get all objectrs
+   * Get the IDs of the messages of a topic to advertise, the ones added in the last gossip
+   * generations.
    *
-   * @return All objects in the store
+   * @param topic The topic
+   * @return The IDs, the most recent first
    */
-  public Collection<Object> getAll() {
-    return mem.values();
-  }
-
-  /**
-   * Get all objectrs
-   *
-   * @return All objects in the store
-   */
-  public Collection<Long> window() {
-    return mem.keySet();
+  public List<Long> getGossipIds(String topic) {
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < gossip && i <= shifts; i++) {
+      Generation g = generations[(int) ((shifts - i) % generations.length)];
+      for (int j = 0; j < g.size; j++) {
+        if (g.topics[j].equals(topic)) ids.add(g.ids[j]);
+      }
+    }
+    return ids;
   }
 
-  /**
-   * Delete an entry from the memory store
-   *
-   * @param key The key to delete
-   * @return The delete value result (true if the object has been found, false in other case)
-   */
-  public boolean delete(long key) {
-    if (mem.containsKey(key)) {
-      mem.remove(key);
-      return true;
+  /** Starts a new generation, evicting the messages added in the oldest one only. */
+  public void shift() {
+    shifts++;
+    Generation oldest = generations[(int) (shifts % generations.length)];
+    long evicted = shifts - generations.length;
+    for (int i = 0; i < oldest.size; i++) {
+      Entry e = mem.get(oldest.ids[i]);
+      if (e != null && e.generation == evicted) {
+        mem.remove(oldest.ids[i]);
+        evictions++;
+      }
     }
-    return false;
+    oldest.clear();
   }
 
   /** Empty the memory store */
   public void erase() {
-    mem = new HashMap<Long, Object>();
+    mem = new HashMap<>();
+    for (Generation g : generations) g.clear();
   }
 
   /** Get occupancy */
   public int occupancy() {
     return mem.size();
   }
+
+  /** Get the number of messages evicted so far */
+  public long getEvictions() {
+    return evictions;
+  }
 }
@@ -229,6 +229,11 @@ public class Message extends SimpleEvent {
   }
   // ______________________________________________________________________________________________
   public String typeToString() {
+    return typeToString(type);
+  }
+
+  // ______________________________________________________________________________________________
+  public static String typeToString(int type) {
     switch (type) {
       case MSG_EMPTY:
         return "MSG_EMPTY";
@@ -2,14 +2,19 @@ package peersim.gossipsub;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import peersim.core.CommonState;
+import peersim.util.IndexedSet;
 
 public class PeerTable {
 
-  private HashMap<String, HashSet<BigInteger>> peerMap; // , samplesIndexed;
+  private HashMap<String, IndexedSet<BigInteger>> peerMap; // , samplesIndexed;
+
+  /** Table whose peers are also peers of this one, shared with other nodes, or null */
+  private PeerTable shared;
 
   public PeerTable() {
 
@@ -17,37 +22,76 @@ public class PeerTable {
   }
 
   public void addPeer(String topic, BigInteger peer) {
-    if (peerMap.get(topic) != null) {
-      HashSet<BigInteger> nodes = peerMap.get(topic);
-      nodes.add(peer);
-    } else {
-      HashSet<BigInteger> nodes = new HashSet<>();
-      nodes.add(peer);
+    IndexedSet<BigInteger> nodes = peerMap.get(topic);
+    if (nodes == null) {
+      nodes = new IndexedSet<>();
       peerMap.put(topic, nodes);
     }
+    nodes.add(peer);
+  }
+
+  /**
+   * Makes the peers of another table also peers of this one, without copying them. The table is
+   * only read, so that it can be shared by all the nodes as a directory of the subscribers of the
+   * topics: it takes memory proportional to the nodes, instead of every node adding every other
+   * node to its own table. Peers can still be added to this table.
+   *
+   * @param shared the table, or null to stop using it
+   */
+  public void setShared(PeerTable shared) {
+    this.shared = shared;
   }
 
   public List<BigInteger> getPeers(String topic) {
-    List<BigInteger> peers;
-    if (peerMap.get(topic) != null) peers = new ArrayList<>(peerMap.get(topic));
-    else peers = new ArrayList<>();
-    Collections.shuffle(peers);
-    // return peerMap.get(topic);
-    return peers;
+    return getNPeers(topic, Integer.MAX_VALUE, null, null);
   }
 
-  public List<BigInteger> getNPeers(String topic, int n, HashSet<BigInteger> initialPeers) {
-    List<BigInteger> peers;
-    if (peerMap.get(topic) != null) peers = new ArrayList<>(peerMap.get(topic));
-    else peers = new ArrayList<>();
-    peers.removeAll(initialPeers);
-    Collections.shuffle(peers);
+  public List<BigInteger> getNPeers(String topic, int n, Set<BigInteger> initialPeers) {
+    return getNPeers(topic, n, initialPeers, null);
+  }
 
-    List<BigInteger> peersResult = new ArrayList<>();
-    for (BigInteger id : peers) {
-      if (peersResult.size() < n) peersResult.add(id);
+  /**
+   * Selects up to n peers of a topic at random, in time proportional to n and the excluded peers
+   * rather than to the peers of the topic.
+   *
+   * @param topic the topic
+   * @param n the number of peers
+   * @param excluded the peers not to select, or null
+   * @param alsoExcluded more peers not to select, or null
+   * @return the peers, in random order
+   */
+  public List<BigInteger> getNPeers(
+      String topic, int n, Set<BigInteger> excluded, Set<BigInteger> alsoExcluded) {
+    IndexedSet<BigInteger> nodes = peerMap.get(topic);
+    IndexedSet<BigInteger> sharedNodes = shared == null ? null : shared.peerMap.get(topic);
+    Predicate<BigInteger> isExcluded =
+        id ->
+            (excluded != null && excluded.contains(id))
+                || (alsoExcluded != null && alsoExcluded.contains(id));
+    if (sharedNodes == null) {
+      if (nodes == null) return new ArrayList<>();
+      return nodes.sample(n, CommonState.r, isExcluded);
     }
 
-    return peersResult;
+    // The shared peers are numbered first, then the ones of this table. The shared set cannot be
+    // reordered, so the Fisher-Yates shuffle only records the positions it swaps.
+    int sharedSize = sharedNodes.size();
+    int size = sharedSize + (nodes == null ? 0 : nodes.size());
+    HashMap<Integer, Integer> swapped = new HashMap<>();
+    List<BigInteger> result = new ArrayList<>();
+    for (int i = 0; i < size && result.size() < n; i++) {
+      int j = i + CommonState.r.nextInt(size - i);
+      int picked = swapped.getOrDefault(j, j);
+      swapped.put(j, swapped.getOrDefault(i, i));
+      BigInteger id;
+      if (picked < sharedSize) id = sharedNodes.get(picked);
+      else {
+        id = nodes.get(picked - sharedSize);
+        // counted once, as a shared peer
+        if (sharedNodes.contains(id)) continue;
+      }
+      if (!isExcluded.test(id)) result.add(id);
+    }
+    return result;
   }
 }
@@ -0,0 +1,81 @@
+package peersim.gossipsub;
+
+import java.util.HashMap;
+import peersim.util.LongHashSet;
+
+/**
+ * The IDs of the messages seen recently by a node, by topic, used to drop the duplicates. The IDs
+ * are kept for a number of heartbeats: {@link #shift}, called at every heartbeat, forgets the ones
+ * added that many heartbeats before. Checking an ID takes constant time and the memory is bounded
+ * by the messages received in that window.
+ */
+public class SeenCache {
+
+  /** IDs of the messages seen, by topic */
+  private HashMap<String, LongHashSet> seen;
+
+  /** Messages added in each heartbeat, as a ring with the current generation at current */
+  private Generation[] generations;
+
+  private int current = 0;
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param length the number of heartbeats an ID is kept
+   */
+  public SeenCache(int length) {
+    seen = new HashMap<>();
+    generations = new Generation[length];
+    for (int i = 0; i < length; i++) generations[i] = new Generation();
+  }
+
+  /**
+   * Adds the ID of a message.
+   *
+   * @param topic the topic of the message
+   * @param id the ID of the message
+   * @return true if the message had not been seen in the topic
+   */
+  public boolean add(String topic, long id) {
+    LongHashSet ids = seen.get(topic);
+    if (ids == null) {
+      ids = new LongHashSet();
+      seen.put(topic, ids);
+    }
+    if (!ids.add(id)) return false;
+    generations[current].add(topic, id);
+    return true;
+  }
+
+  /**
+   * Checks whether a message has been seen.
+   *
+   * @param topic the topic of the message
+   * @param id the ID of the message
+   * @return true if the message has been seen in the topic
+   */
+  public boolean contains(String topic, long id) {
+    LongHashSet ids = seen.get(topic);
+    return ids != null && ids.contains(id);
+  }
+
+  /** Starts a new generation, forgetting the IDs of the oldest one. */
+  public void shift() {
+    current = (current + 1) % generations.length;
+    Generation oldest = generations[current];
+    for (int i = 0; i < oldest.size; i++) {
+      LongHashSet ids = seen.get(oldest.topics[i]);
+      ids.remove(oldest.ids[i]);
+      if (ids.size() == 0) seen.remove(oldest.topics[i]);
+    }
+    oldest.clear();
+  }
+
+  /** Returns the number of IDs in the cache, in all the topics. */
+  public int size() {
+    int size = 0;
+    for (LongHashSet ids : seen.values()) size += ids.size();
+    return size;
+  }
+}
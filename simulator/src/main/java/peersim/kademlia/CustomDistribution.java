@@ -47,6 +47,7 @@ public class CustomDistribution implements peersim.core.Control {
 
       generalNode.setKademliaProtocol(kadProt);
       kadProt.setNode(node);
+      Network.registerId(id, generalNode);
       kadProt.setProtocolID(protocolID);
     }
 
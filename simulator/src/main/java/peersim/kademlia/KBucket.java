@@ -14,11 +14,11 @@ import peersim.core.CommonState;
 public class KBucket implements Cloneable {
 
   // k-bucket array
-  protected TreeMap<BigInteger, Long> neighbours = null;
+  protected TreeMap<UInt256, Long> neighbours = null;
 
   /** Empty constructor for initializing the k-bucket TreeMap. */
   public KBucket() {
-    neighbours = new TreeMap<BigInteger, Long>();
+    neighbours = new TreeMap<UInt256, Long>();
   }
 
   /**
@@ -28,6 +28,16 @@ public class KBucket implements Cloneable {
    * @return true if the neighbor is successfully added; false if the k-bucket is already full.
    */
   public boolean addNeighbour(BigInteger node) {
+    return addNeighbour(Util.toUInt256(node));
+  }
+
+  /**
+   * Add a neighbour to this k-bucket.
+   *
+   * @param node the neighbor to be added.
+   * @return true if the neighbor is successfully added; false if the k-bucket is already full.
+   */
+  public boolean addNeighbour(UInt256 node) {
     long time = CommonState.getTime();
     if (neighbours.size() < KademliaCommonConfig.K) { // k-bucket isn't full
       neighbours.put(node, time); // add neighbor to the tail of the list
@@ -42,6 +52,15 @@ public class KBucket implements Cloneable {
    * @param node the neighbour to be removed.
    */
   public void removeNeighbour(BigInteger node) {
+    removeNeighbour(Util.toUInt256(node));
+  }
+
+  /**
+   * Remove a neighbour from this k-bucket.
+   *
+   * @param node the neighbour to be removed.
+   */
+  public void removeNeighbour(UInt256 node) {
     neighbours.remove(node);
   }
 
@@ -61,8 +80,8 @@ public class KBucket implements Cloneable {
    */
   public Object clone() {
     KBucket dolly = new KBucket();
-    for (BigInteger node : neighbours.keySet()) {
-      dolly.neighbours.put(new BigInteger(node.toByteArray()), 0l);
+    for (UInt256 node : neighbours.keySet()) {
+      dolly.neighbours.put(node, 0l);
     }
     return dolly;
   }
@@ -75,7 +94,7 @@ public class KBucket implements Cloneable {
   public String toString() {
     String res = "{\n";
 
-    for (BigInteger node : neighbours.keySet()) {
+    for (UInt256 node : neighbours.keySet()) {
       res += node + "\n";
     }
 
@@ -5,6 +5,9 @@ import java.math.BigInteger;
 /** A Kademlia node, identified by its ID, IP address and port. */
 public class KademliaNode implements Comparable<KademliaNode> {
   private BigInteger id;
+
+  /** The ID as a fixed-width identifier, converted once for the routing tables */
+  private final UInt256 uid;
   /** attackerId is the ID used by Sybil nodes (when multiple nodes */
   private BigInteger attackerID;
 
@@ -25,6 +28,7 @@ public class KademliaNode implements Comparable<KademliaNode> {
    */
   public KademliaNode(BigInteger id, String addr, int port) {
     this.id = id;
+    this.uid = UInt256.valueOf(id);
     this.attackerID = null;
     this.addr = addr;
     this.port = port;
@@ -41,6 +45,7 @@ public class KademliaNode implements Comparable<KademliaNode> {
    */
   public KademliaNode(BigInteger id, BigInteger attackerId, String addr, int port) {
     this.id = id;
+    this.uid = UInt256.valueOf(id);
     this.attackerID = attackerId;
     this.addr = addr;
     this.port = port;
@@ -54,6 +59,7 @@ public class KademliaNode implements Comparable<KademliaNode> {
    */
   public KademliaNode(BigInteger id) {
     this.id = id;
+    this.uid = UInt256.valueOf(id);
     this.addr = "127.0.0.1";
     this.port = 666;
     this.attackerID = null;
@@ -67,6 +73,7 @@ public class KademliaNode implements Comparable<KademliaNode> {
    */
   public KademliaNode(KademliaNode n) {
     this.id = n.id;
+    this.uid = n.uid;
     this.addr = n.addr;
     this.port = n.port;
     this.is_evil = n.is_evil;
@@ -82,6 +89,15 @@ public class KademliaNode implements Comparable<KademliaNode> {
     return this.id;
   }
 
+  /**
+   * Returns the ID of the node as a fixed-width identifier.
+   *
+   * @return the ID of the node
+   */
+  public UInt256 getUid() {
+    return this.uid;
+  }
+
   /**
    * Returns the attacker ID of the node.
    *
@@ -1,18 +1,13 @@
 package peersim.kademlia;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
 import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
 import peersim.core.CommonState;
 import peersim.core.Control;
 import peersim.core.Network;
 import peersim.kademlia.operations.Operation;
 import peersim.util.IncrementalStats;
+import peersim.util.TraceWriter;
 
 /**
  * This class implements a simple observer of search time and hop average in finding a node in the
@@ -28,6 +23,12 @@ public class KademliaObserver implements Control {
 
   private static final String PAR_FOLDER = "logfolder";
 
+  /** Compress the log files with gzip */
+  private static final String PAR_COMPRESS = "compress";
+
+  /** Format of the log files, csv (default) or binary, see {@link TraceWriter} */
+  private static final String PAR_FORMAT = "format";
+
   /** keep statistics of the number of hops of every message delivered. */
   public static IncrementalStats hopStore = new IncrementalStats();
 
@@ -46,13 +47,12 @@ public class KademliaObserver implements Control {
   /** Successfull find operations */
   public static IncrementalStats find_ok = new IncrementalStats();
 
-  /** Messages exchanged in the Kademlia network */
-  private static HashMap<Long, Map<String, Object>> messages =
-      new HashMap<Long, Map<String, Object>>();
-
-  /** Log of operations in the Kademlia network */
-  private static HashMap<Long, Map<String, Object>> operations =
-      new HashMap<Long, Map<String, Object>>();
+  /**
+   * Log of the messages exchanged and of the operations, written as they are reported: messages to
+   * messages.csv, operations to operation.csv (.trace in the binary format). It is null if no
+   * observer is configured, and nothing is logged.
+   */
+  private static TraceWriter trace;
 
   /** Name of the folder where experiment logs are written */
   private static String logFolderName;
@@ -71,59 +71,29 @@ public class KademliaObserver implements Control {
     logFolderName = Configuration.getString(prefix + "." + PAR_FOLDER, "./logs");
 
     System.out.println("Logfolder: " + logFolderName);
-  }
-
-  private static void writeLogs(Map<Long, Map<String, Object>> map, String filename) {
-    try (FileWriter writer = new FileWriter(filename)) {
-      Set<String> keySet = new HashSet<String>();
-      for (Map<String, Object> m : map.values())
-        if (m.keySet().size() > keySet.size()) keySet = m.keySet();
-
-      // Set<String> keySet = map.entrySet().iterator().next().getValue().keySet();
-      String header = "";
-      for (Object key : keySet) {
-        header += key + ",";
-      }
 
-      // Write the comma seperated keys as the header of the file
-      header = header.substring(0, header.length() - 1);
-      header += "\n";
-      writer.write(header);
-      // Iterate through each find operation and write its data to the file
-      for (Map<String, Object> entry : map.values()) {
-        String line = "";
-        for (Object key : keySet) {
-          if (entry.get(key) != null) line += entry.get(key).toString() + ",";
-          else line += ",";
-        }
-
-        // Remove the last comma and add a newline character
-        line = line.substring(0, line.length() - 1);
-        line += "\n";
-        writer.write(line);
-      }
-      writer.close();
-    } catch (IOException e) {
-      e.printStackTrace();
+    String format = Configuration.getString(prefix + "." + PAR_FORMAT, "csv");
+    TraceWriter.Format traceFormat;
+    try {
+      traceFormat = TraceWriter.Format.valueOf(format.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalParameterException(
+          prefix + "." + PAR_FORMAT, "Unknown format " + format + ", use csv or binary");
     }
-    map.clear();
+
+    if (trace != null) trace.close();
+    trace =
+        new TraceWriter(
+            logFolderName, traceFormat, Configuration.contains(prefix + "." + PAR_COMPRESS));
   }
 
-  /** Writes log data to files. */
+  /**
+   * Writes the remaining log data to files and closes them. Messages and operations reported later
+   * are not logged, instead of replacing the files.
+   */
   public static void writeOut() {
-    // System.out.println("Writing out");
-
-    File directory = new File(logFolderName);
-    if (!directory.exists()) {
-      directory.mkdir();
-    }
-    // Write messages log to file if not empty
-    if (!messages.isEmpty()) {
-      writeLogs(messages, logFolderName + "/" + "messages.csv");
-    }
-    if (!operations.isEmpty()) {
-      writeLogs(operations, logFolderName + "/" + "operation.csv");
-    }
+    if (trace != null) trace.close();
+    trace = null;
   }
 
   /**
@@ -160,6 +130,8 @@ public class KademliaObserver implements Control {
       // Write out the logs to disk/permanent storage
       writeOut();
       // System.err.println(s);
+    } else if (trace != null) {
+      trace.flush();
     }
 
     return false;
@@ -174,11 +146,9 @@ public class KademliaObserver implements Control {
   public static void reportMsg(Message m, boolean sent) {
     // Messages without a source are control messages sent by the traffic control,
     // so we don't want to log them.
-    if (m.src == null) return;
+    if (m.src == null || trace == null) return;
 
-    // Add the message to the message log, but first check if it hasn't already been added
-    assert (!messages.keySet().contains(m.id));
-    messages.put(m.id, m.toMap(sent));
+    trace.write("messages", m.toMap(sent));
   }
 
   /**
@@ -189,8 +159,8 @@ public class KademliaObserver implements Control {
   public static void reportOperation(Operation op) {
     // messages without source are control messages sent by the traffic control
     // Calculate the operation stop time and then add the opearation to the operation log.
-    assert (!operations.keySet().contains(op.getId()));
     op.setStopTime(CommonState.getTime() - op.getTimestamp());
-    operations.put(op.getId(), op.toMap());
+    if (trace == null) return;
+    trace.write("operation", Operation.COLUMNS, op.toMap());
   }
 }
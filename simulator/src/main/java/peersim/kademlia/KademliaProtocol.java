@@ -9,21 +9,21 @@ package peersim.kademlia;
  */
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.TreeMap;
-import java.util.logging.ConsoleHandler;
-import java.util.logging.Level;
-import java.util.logging.LogRecord;
 import java.util.logging.Logger;
-import java.util.logging.SimpleFormatter;
 import peersim.config.Configuration;
 import peersim.core.CommonState;
+import peersim.core.Logging;
 import peersim.core.Network;
 import peersim.core.Node;
 import peersim.edsim.EDProtocol;
 import peersim.edsim.EDSimulator;
 import peersim.kademlia.operations.FindOperation;
 import peersim.kademlia.operations.GetOperation;
+import peersim.kademlia.operations.MultiGetOperation;
 import peersim.kademlia.operations.Operation;
 import peersim.kademlia.operations.PutOperation;
 import peersim.kademlia.operations.RegionBasedFindOperation;
@@ -150,9 +150,10 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
   }
 
   /**
-   * Search through the network for a node with a specific node ID, using binary search based on the
-   * ordering of the network. If the binary search does not find a node with the given ID, a
-   * traditional search is performed for more reliability (in case the network is not ordered).
+   * Finds the node with a specific node ID. The ID index kept by {@link Network} is used first, so
+   * that the lookup takes constant time regardless of the ordering of the network. Nodes whose ID
+   * was not registered in the index are searched with {@link #searchNetwork} and registered on
+   * success.
    *
    * @param searchNodeId the ID of the node to search for
    * @return the node with the given ID, or null if not found
@@ -161,6 +162,24 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
     // If the given searchNodeId is null, return null
     if (searchNodeId == null) return null;
 
+    Node n = Network.getById(searchNodeId);
+    if (n != null) return n;
+
+    n = searchNetwork(searchNodeId);
+    if (n != null) Network.registerId(searchNodeId, n);
+    return n;
+  }
+
+  /**
+   * Search through the network for a node with a specific node ID, using binary search based on the
+   * ordering of the network. If the binary search does not find a node with the given ID, a
+   * traditional search is performed for more reliability (in case the network is not ordered).
+   *
+   * @param searchNodeId the ID of the node to search for
+   * @return the node with the given ID, or null if not found
+   */
+  public Node searchNetwork(BigInteger searchNodeId) {
+
     // Set the initial search range to cover the entire network
     int inf = 0;
     int sup = Network.size() - 1;
@@ -229,8 +248,10 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
     if (fop != null) {
       // Update the find operation record with the closest set of neighbors received
       fop.elaborateResponse((BigInteger[]) m.body);
-      fop.addMessage(m.id);
-      logger.info("Handleresponse FindOperation " + fop.getId() + " " + fop.getAvailableRequests());
+      fop.addMessage(m);
+      fop.countHops(m.getHops());
+      logger.info(
+          () -> "Handleresponse FindOperation " + fop.getId() + " " + fop.getAvailableRequests());
       // Save received neighbour in the closest Set of fin operation
       BigInteger[] neighbours = (BigInteger[]) m.body;
       if (callback != null) callback.nodesFound(fop, neighbours);
@@ -240,7 +261,7 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
           && Arrays.asList(neighbours).contains(fop.getDestNode())
           && !(fop instanceof RegionBasedFindOperation)) {
 
-        logger.warning("Found node " + fop.getDestNode());
+        logger.warning(() -> "Found node " + fop.getDestNode());
 
         // Complete the operation and log the result.
         if (callback != null) {
@@ -256,10 +277,11 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
 
         ((GetOperation) fop).setValue(m.value);
         logger.warning(
-            "Getprocess finished found "
-                + ((GetOperation) fop).getValue()
-                + " hops "
-                + fop.getHops());
+            () ->
+                "Getprocess finished found "
+                    + ((GetOperation) fop).getValue()
+                    + " hops "
+                    + fop.getHops());
 
         // Complete the operation and log the result
 
@@ -268,10 +290,27 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
         }
         ((GetOperation) fop).setValue(m.value);
         logger.warning(
-            "Getprocess finished found "
-                + ((GetOperation) fop).getValue()
-                + " hops "
-                + fop.getHops());
+            () ->
+                "Getprocess finished found "
+                    + ((GetOperation) fop).getValue()
+                    + " hops "
+                    + fop.getHops());
+      }
+
+      // Check if it's a MultiGetOperation and the values of all the keys have been found
+      if (fop instanceof MultiGetOperation && m.value != null && !fop.isFinished()) {
+        MultiGetOperation mop = (MultiGetOperation) fop;
+        @SuppressWarnings("unchecked")
+        Map<BigInteger, Object> values = (Map<BigInteger, Object>) m.value;
+        mop.addValues(values);
+        if (mop.allFound()) {
+          fop.setFinished(true);
+          logger.warning(() -> "Multiple get finished found all hops " + fop.getHops());
+
+          if (callback != null) {
+            callback.operationComplete(fop);
+          }
+        }
       }
 
       // Send as many ROUTE requests as possible (according to the ALPHA parameter)
@@ -285,6 +324,10 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
 
           if (fop instanceof GetOperation) {
             request = new Message(Message.MSG_GET);
+          } else if (fop instanceof MultiGetOperation) {
+            // Ask only for the keys still missing
+            request = new Message(Message.MSG_GET_MULTI);
+            request.value = ((MultiGetOperation) fop).getMissingKeys();
           } else if (KademliaCommonConfig.FINDMODE == 0) {
             request = new Message(Message.MSG_FIND);
           } else {
@@ -295,16 +338,21 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
           request.src = this.getKademliaNode();
           request.dst = nodeIdtoNode(neighbour).getKademliaProtocol().getKademliaNode();
 
-          if (KademliaCommonConfig.FINDMODE == 0 || request.getType() == Message.MSG_GET) {
+          if (KademliaCommonConfig.FINDMODE == 0
+              || request.getType() == Message.MSG_GET
+              || request.getType() == Message.MSG_GET_MULTI) {
             request.body = fop.getDestNode();
           } else {
             request.body = Util.logDistance(neighbour, (BigInteger) fop.getBody());
           }
 
+          // The neighbour was returned by the response, one hop further than its request
+          request.setHops(m.getHops() + 1);
+
           // Increment hop count
           fop.increaseHops();
-          // Add message to operation Todo: verify
-          fop.addMessage(m.id);
+          // Add message to operation
+          fop.addMessage(request);
           // Send find request to neighbor
           sendMessage(request, neighbour, myPid);
 
@@ -325,23 +373,32 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
               // Increment hop count
               fop.increaseHops();
               // Add message to operation
-              fop.addMessage(m.id);
-              // Todo: verify
+              fop.addMessage(request);
               sendMessage(request, id, myPid);
             }
-            logger.warning("Sending PUT_VALUE to " + fop.getNeighboursList().size() + " nodes");
+            logger.warning(
+                () -> "Sending PUT_VALUE to " + fop.getNeighboursList().size() + " nodes");
           } else if (fop instanceof GetOperation) {
             // Remove the find operation record
             findOp.remove(fop.getId());
             logger.warning("Getprocess finished not found ");
             KademliaObserver.reportOperation(fop);
+          } else if (fop instanceof MultiGetOperation) {
+            findOp.remove(fop.getId());
+            logger.warning(
+                () ->
+                    "Multiple get finished found "
+                        + ((MultiGetOperation) fop).getValues().size()
+                        + " of "
+                        + ((MultiGetOperation) fop).getKeys().length);
+            KademliaObserver.reportOperation(fop);
           } else if (fop instanceof RegionBasedFindOperation) {
             findOp.remove(fop.getId());
             logger.info("Region-based lookup completed ");
             KademliaObserver.reportOperation(fop);
 
             for (BigInteger id : fop.getNeighboursList()) {
-              logger.info("Found node " + id);
+              logger.info(() -> "Found node " + id);
             }
           } else {
             findOp.remove(fop.getId());
@@ -353,7 +410,7 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
           }
 
           if (fop.getBody().equals("Automatically Generated Traffic")
-              && fop.getClosest().containsKey(fop.getDestNode())) {
+              && fop.getClosest().contains(fop.getDestNode())) {
             // Update statistics
             long timeInterval = (CommonState.getTime()) - (fop.getTimestamp());
             KademliaObserver.timeStore.add(timeInterval);
@@ -388,7 +445,7 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
    * @param m The message containing the put request.
    */
   private void handlePut(Message m) {
-    logger.warning("Handle put sample:" + m.body);
+    logger.warning(() -> "Handle put sample:" + m.body);
     kv.add((BigInteger) m.body, m.value);
     callback.putValueReceived(m.value);
   }
@@ -403,13 +460,16 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
   private void handleFind(Message m, int myPid) {
     // Retrieve the ALPHA closest node to the destination node
     logger.info(
-        "Received handleFind request from node "
-            + m.src.getId()
-            + " for operation "
-            + m.operationId);
+        () ->
+            "Received handleFind request from node "
+                + m.src.getId()
+                + " for operation "
+                + m.operationId);
     BigInteger[] neighbours = new BigInteger[KademliaCommonConfig.K];
     // Determine which neighbors to retrieve based on the type of message
-    if (m.getType() == Message.MSG_FIND || m.getType() == Message.MSG_GET) {
+    if (m.getType() == Message.MSG_FIND
+        || m.getType() == Message.MSG_GET
+        || m.getType() == Message.MSG_GET_MULTI) {
       // Retrieve the k nearest neighbors for the provided key
       neighbours = this.routingTable.getNeighbours((BigInteger) m.body, m.src.getId());
     } else if (m.getType() == Message.MSG_FIND_DIST) {
@@ -427,10 +487,19 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
     response.dst = m.dst;
     response.src = this.getKademliaNode();
     response.ackId = m.id; // set ACK number
+    response.setHops(m.getHops());
 
     // Retrieve the value associated with the provided key (if applicable)
     if (m.getType() == Message.MSG_GET) {
       response.value = kv.get((BigInteger) m.body);
+    } else if (m.getType() == Message.MSG_GET_MULTI) {
+      // Return the values of the requested keys this node stores, if any
+      Map<BigInteger, Object> values = new HashMap<BigInteger, Object>();
+      for (BigInteger key : (BigInteger[]) m.value) {
+        Object value = kv.get(key);
+        if (value != null) values.put(key, value);
+      }
+      if (!values.isEmpty()) response.value = values;
     }
 
     // Send the response message containing the neighbours (and optional value) back to the sender
@@ -447,7 +516,7 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
    * @return a reference to the created operation object
    */
   public Operation handleInit(Message m, int myPid) {
-    logger.info("handleInitFind " + (BigInteger) m.body);
+    logger.info(() -> "handleInitFind " + (BigInteger) m.body);
     KademliaObserver.find_op.add(1);
 
     // Create find operation and add to operations array
@@ -467,9 +536,14 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
         break;
       case Message.MSG_INIT_GET:
         fop = new GetOperation(this.node.getId(), (BigInteger) m.body, m.timestamp);
-        logger.warning("New Get operation " + fop.getId());
+        logger.warning(() -> "New Get operation " + fop.getId());
 
         break;
+      case Message.MSG_INIT_GET_MULTI:
+        fop =
+            new MultiGetOperation(
+                this.node.getId(), (BigInteger) m.body, (BigInteger[]) m.value, m.timestamp);
+        break;
       case Message.MSG_INIT_PUT:
         fop = new PutOperation(this.node.getId(), (BigInteger) m.body, m.timestamp);
         ((PutOperation) fop).setValue(m.value);
@@ -507,8 +581,10 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
                 .getKademliaProtocol()
                 .getKademliaNode(); // new KademliaNode(nextNode);
 
-        // Set the type of the message depending on the find mode
-        if (m.type == Message.MSG_INIT_GET) m.type = Message.MSG_GET;
+        // Set the type of the message depending on the find mode, once for all the messages
+        if (m.type == Message.MSG_INIT_GET || m.type == Message.MSG_GET) m.type = Message.MSG_GET;
+        else if (m.type == Message.MSG_INIT_GET_MULTI || m.type == Message.MSG_GET_MULTI)
+          m.type = Message.MSG_GET_MULTI;
         else if (KademliaCommonConfig.FINDMODE == 0) m.type = Message.MSG_FIND;
         else {
           m.type = Message.MSG_FIND_DIST;
@@ -516,9 +592,10 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
         }
 
         // Send the message to the next closest node and add it to the operation's message list
-        logger.info("sendMessage to " + nextNode);
+        logger.info(() -> "sendMessage to " + nextNode);
         Message mbis = m.copy();
-        fop.addMessage(mbis.id);
+        mbis.setHops(1);
+        fop.addMessage(mbis);
         sendMessage(mbis, nextNode, myPid);
         // Increment the hop count of the operation if it's a distance-based find
         if (m.getType() == Message.MSG_FIND_DIST) {
@@ -608,6 +685,7 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
       case Message.MSG_INIT_FIND_REGION_BASED:
       case Message.MSG_INIT_FIND:
       case Message.MSG_INIT_GET:
+      case Message.MSG_INIT_GET_MULTI:
       case Message.MSG_INIT_PUT:
         // Handle an initialization message by calling handleInit().
         m = (Message) event;
@@ -617,6 +695,7 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
       case Message.MSG_FIND:
       case Message.MSG_FIND_DIST:
       case Message.MSG_GET:
+      case Message.MSG_GET_MULTI:
         // Handle a find or get message by calling handleFind().
         m = (Message) event;
         handleFind(m, myPid);
@@ -719,32 +798,10 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
   public void setNode(KademliaNode node) {
     this.node = node;
     // Set the node ID in the routing table
-    this.routingTable.setNodeId(node.getId());
-
-    // Initialize the logger with the node ID as its name
-    logger = Logger.getLogger(node.getId().toString());
+    this.routingTable.setNodeId(node.getUid());
 
-    // Disable the logger's parent handlers to avoid duplicate output
-    logger.setUseParentHandlers(false);
-
-    // Set the logger's level to WARNING
-    logger.setLevel(Level.WARNING);
-    // logger.setLevel(Level.ALL);
-
-    // Create a console handler for the logger
-    ConsoleHandler handler = new ConsoleHandler();
-    // Set the handler's formatter to a custom format that includes the time and logger name
-    handler.setFormatter(
-        new SimpleFormatter() {
-          private static final String format = "[%d][%s] %3$s %n";
-
-          @Override
-          public synchronized String format(LogRecord lr) {
-            return String.format(format, CommonState.getTime(), logger.getName(), lr.getMessage());
-          }
-        });
-    // Add the console handler to the logger
-    logger.addHandler(handler);
+    // Initialize the logger with the node ID as its name, configured by Logging
+    logger = Logging.getLogger(node.getId().toString());
   }
 
   /**
@@ -3,39 +3,14 @@ package peersim.kademlia;
 import java.math.BigInteger;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.function.Consumer;
+import peersim.core.CommonState;
+import peersim.util.ExpiryWheel;
 
 /**
- * Timeout functionnality for the memory store
- *
- * @author Deisss (LGPLv3)
- * @version 0.1
- */
-class TimeoutMemoryStore extends TimerTask {
-  private BigInteger id;
-  private KeyValueStore kv;
-
-  /**
-   * Constructor
-   *
-   * @param key The key to use & store
-   */
-  public TimeoutMemoryStore(BigInteger id, KeyValueStore kv) {
-    this.id = id;
-    this.kv = kv;
-  }
-
-  @Override
-  public void run() {
-    if (this.id != null) {
-      kv.delete(this.id);
-    }
-  }
-}
-
-/**
- * The memory store will keep data inside the class, for a specific amout of time
+ * The memory store will keep data inside the class, for a specific amout of time. The entries
+ * expire in simulated time: they are evicted by an {@link ExpiryWheel} when the store is accessed.
+ * The wheel is only created when an entry is added with a timeout.
  *
  * @author Deisss (LGPLv3)
  * @version 0.1
@@ -44,6 +19,11 @@ public class KeyValueStore {
   // This will store any kind of object, related to a specific key value in string
   private HashMap<BigInteger, Object> mem;
 
+  // Expiration of the entries added with a timeout, null until the first one
+  private ExpiryWheel<BigInteger> expiry;
+
+  private final Consumer<BigInteger> evict = key -> mem.remove(key);
+
   public KeyValueStore() {
     mem = new HashMap<>();
   }
@@ -60,7 +40,7 @@ public class KeyValueStore {
    * Add an object into the memory store
    *
    * @param obj The object to store
-   * @param timeout The delay in ms
+   * @param timeout The delay in simulated time units, 0 to keep the object until deleted
    */
   public void add(BigInteger id, Object obj, long timeout) {
     // If the system is not functionnal
@@ -68,11 +48,15 @@ public class KeyValueStore {
       erase();
     }
 
+    expire();
     mem.put(id, obj);
 
-    // Create a delete operation after timeout
+    // Schedule the deletion after timeout
     if (timeout > 0) {
-      new Timer().schedule(new TimeoutMemoryStore(id, this), timeout);
+      if (expiry == null) expiry = new ExpiryWheel<BigInteger>();
+      expiry.schedule(id, CommonState.getTime() + timeout);
+    } else if (expiry != null) {
+      expiry.cancel(id);
     }
   }
 
@@ -83,6 +67,7 @@ public class KeyValueStore {
    * @return The object retrieve, or null if nothing found
    */
   public Object get(BigInteger key) {
+    expire();
     if (mem.containsKey(key)) {
       return mem.get(key);
     } else {
@@ -96,6 +81,7 @@ public class KeyValueStore {
    * @return All objects in the store
    */
   public Collection<Object> getAll() {
+    expire();
     return mem.values();
   }
 
@@ -106,6 +92,8 @@ public class KeyValueStore {
    * @return The delete value result (true if the object has been found, false in other case)
    */
   public boolean delete(BigInteger key) {
+    expire();
+    if (expiry != null) expiry.cancel(key);
     if (mem.containsKey(key)) {
       mem.remove(key);
       return true;
@@ -116,10 +104,22 @@ public class KeyValueStore {
   /** Empty the memory store */
   public void erase() {
     mem = new HashMap<BigInteger, Object>();
+    if (expiry != null) expiry.clear();
   }
 
   /** Get occupancy */
   public int occupancy() {
+    expire();
     return mem.size();
   }
+
+  /** Get the number of entries expired so far */
+  public long getEvictions() {
+    return expiry == null ? 0 : expiry.getEvictions();
+  }
+
+  /** Remove the entries expired until the current time */
+  private void expire() {
+    if (expiry != null) expiry.advance(evict);
+  }
 }
@@ -0,0 +1,120 @@
+package peersim.kademlia;
+
+import java.math.BigInteger;
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Network;
+import peersim.core.Node;
+
+/**
+ * Initializer that measures how fast the nodes of the network can be resolved from their Kademlia
+ * ID. Every simulated message resolves two IDs (source and destination) before being handed to the
+ * transport, so the throughput is reported in messages per second, both for the search over the
+ * node array ({@link KademliaProtocol#searchNetwork}) and for the ID index kept by {@link Network}
+ * ({@link KademliaProtocol#nodeIdtoNode}).
+ *
+ * <p>It has to be placed after the initializer that assigns the node IDs. When {@value
+ * #PAR_SHUFFLE} is set the network is shuffled first, reproducing the unordered node array left by
+ * churn.
+ */
+public class LookupBenchmark implements peersim.core.Control {
+
+  /**
+   * The Kademlia protocol to benchmark.
+   *
+   * @config
+   */
+  private static final String PAR_PROT = "protocol";
+
+  /**
+   * Number of messages to resolve for each method. Defaults to 100000.
+   *
+   * @config
+   */
+  private static final String PAR_MESSAGES = "messages";
+
+  /**
+   * If set, the network is shuffled before running the benchmark.
+   *
+   * @config
+   */
+  private static final String PAR_SHUFFLE = "shuffle";
+
+  private final int kademliaid;
+
+  private final int messages;
+
+  private final boolean shuffle;
+
+  /**
+   * Constructor that reads the configuration parameters.
+   *
+   * @param prefix the prefix string of the parameters read from the configuration file
+   */
+  public LookupBenchmark(String prefix) {
+    kademliaid = Configuration.getPid(prefix + "." + PAR_PROT);
+    messages = Configuration.getInt(prefix + "." + PAR_MESSAGES, 100000);
+    shuffle = Configuration.contains(prefix + "." + PAR_SHUFFLE);
+  }
+
+  /**
+   * Runs the benchmark and prints the results.
+   *
+   * @return always false
+   */
+  public boolean execute() {
+    if (shuffle) Network.shuffle();
+
+    int size = Network.size();
+    BigInteger[] src = new BigInteger[messages];
+    BigInteger[] dst = new BigInteger[messages];
+    for (int i = 0; i < messages; i++) {
+      src[i] = get(CommonState.r.nextInt(size)).getKademliaNode().getId();
+      dst[i] = get(CommonState.r.nextInt(size)).getKademliaNode().getId();
+    }
+    KademliaProtocol prot = get(0);
+
+    // warm up both paths before measuring
+    int warmup = Math.min(messages, 1000);
+    for (int i = 0; i < warmup; i++) {
+      prot.searchNetwork(dst[i]);
+      prot.nodeIdtoNode(dst[i]);
+    }
+
+    long start = System.nanoTime();
+    int found = 0;
+    for (int i = 0; i < messages; i++) {
+      if (prot.searchNetwork(src[i]) != null && prot.searchNetwork(dst[i]) != null) found++;
+    }
+    long scanTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    int foundIndexed = 0;
+    for (int i = 0; i < messages; i++) {
+      if (prot.nodeIdtoNode(src[i]) != null && prot.nodeIdtoNode(dst[i]) != null) foundIndexed++;
+    }
+    long indexTime = System.nanoTime() - start;
+
+    System.out.println(
+        "LookupBenchmark: "
+            + size
+            + " nodes, "
+            + messages
+            + " messages"
+            + (shuffle ? " (shuffled network)" : ""));
+    System.out.println(
+        "LookupBenchmark: network search " + rate(scanTime) + " msg/s, " + found + " resolved");
+    System.out.println(
+        "LookupBenchmark: ID index " + rate(indexTime) + " msg/s, " + foundIndexed + " resolved");
+    return false;
+  }
+
+  private KademliaProtocol get(int i) {
+    Node n = Network.get(i);
+    return (KademliaProtocol) n.getProtocol(kademliaid);
+  }
+
+  private long rate(long nanos) {
+    return (long) (messages / (Math.max(nanos, 1) / 1e9));
+  }
+}
@@ -1,5 +1,8 @@
 package peersim.kademlia;
 
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -80,6 +83,17 @@ public class Message extends SimpleEvent {
    */
   public static final int MSG_INIT_FIND_REGION_BASED = 16;
 
+  /**
+   * Message Type: INIT_GET_MULTI (command to a node to start getting the values of several keys)
+   */
+  public static final int MSG_INIT_GET_MULTI = 17;
+
+  /** Message Type: GET_MULTI (get the values of several keys and the closest nodes to a key) */
+  public static final int MSG_GET_MULTI = 18;
+
+  /** Estimated size in bytes of the fields of any message: type, ID, ACK number and operation ID */
+  public static final int HEADER_SIZE = 1 + 3 * 8;
+
   // ______________________________________________________________________________________________
   /** This Object contains the body of the message, no matter what it contains */
   public Object body = null;
@@ -103,7 +117,11 @@ public class Message extends SimpleEvent {
   /** Source node of the message: has to be filled at application level */
   public KademliaNode src;
 
-  /** Available to count the number of hops the message did. */
+  /**
+   * Available to count the number of hops the message did. In lookups, the depth of a request: 1
+   * for the first requests, one more than the response that returned the node for the following
+   * ones. Responses have the depth of their request.
+   */
   protected int nrHops = 0;
 
   // ______________________________________________________________________________________________
@@ -193,6 +211,18 @@ public class Message extends SimpleEvent {
     return new Message(MSG_INIT_GET, body);
   }
 
+  // ______________________________________________________________________________________________
+  /**
+   * Encapsulates the creation of a GET request for several keys
+   *
+   * @param body the key the lookup converges to
+   * @param keys the keys to get
+   * @return Message
+   */
+  public static final Message makeInitGetValues(Object body, BigInteger[] keys) {
+    return new Message(MSG_INIT_GET_MULTI, body, keys);
+  }
+
   // ______________________________________________________________________________________________
   /**
    * Encapsulates the creation of a PUT request
@@ -244,12 +274,60 @@ public class Message extends SimpleEvent {
     dolly.dst = this.dst;
     dolly.operationId = this.operationId;
     dolly.body = this.body; // deep cloning?
+    dolly.value = this.value;
+    dolly.nrHops = this.nrHops;
 
     return dolly;
   }
 
+  // ______________________________________________________________________________________________
+  public int getHops() {
+    return nrHops;
+  }
+
+  public void setHops(int nrHops) {
+    this.nrHops = nrHops;
+  }
+
+  // ______________________________________________________________________________________________
+  /**
+   * Estimates the size of the message on the wire, as {@link #HEADER_SIZE} plus the size of the
+   * body and of the value: BITS / 8 bytes for NodeIds and keys, 8 bytes for other numbers, the
+   * UTF-8 bytes of strings, the sum of the elements of arrays, collections and maps, and BITS / 8
+   * bytes for any other object, such as a sample.
+   *
+   * @return the estimated size in bytes
+   */
+  public int getSize() {
+    return HEADER_SIZE + sizeOf(body) + sizeOf(value);
+  }
+
+  private static int sizeOf(Object o) {
+    if (o == null) return 0;
+    if (o instanceof BigInteger) return KademliaCommonConfig.BITS / 8;
+    if (o instanceof Number) return 8;
+    if (o instanceof String) return ((String) o).getBytes(StandardCharsets.UTF_8).length;
+    int size = 0;
+    if (o instanceof Object[]) {
+      for (Object e : (Object[]) o) size += sizeOf(e);
+    } else if (o instanceof Collection) {
+      for (Object e : (Collection<?>) o) size += sizeOf(e);
+    } else if (o instanceof Map) {
+      for (Map.Entry<?, ?> e : ((Map<?, ?>) o).entrySet())
+        size += sizeOf(e.getKey()) + sizeOf(e.getValue());
+    } else {
+      size = KademliaCommonConfig.BITS / 8;
+    }
+    return size;
+  }
+
   // ______________________________________________________________________________________________
   public String typeToString() {
+    return typeToString(type);
+  }
+
+  // ______________________________________________________________________________________________
+  public static String typeToString(int type) {
     switch (type) {
       case MSG_EMPTY:
         return "MSG_EMPTY";
@@ -271,6 +349,10 @@ public class Message extends SimpleEvent {
         return "MSG_GET";
       case MSG_PUT:
         return "MSG_PUT";
+      case MSG_INIT_GET_MULTI:
+        return "MSG_INIT_GET_MULTI";
+      case MSG_GET_MULTI:
+        return "MSG_GET_MULTI";
       case MSG_INIT_GET_SAMPLE:
         return "MSG_INIT_GET_SAMPLE";
       case MSG_GET_SAMPLE:
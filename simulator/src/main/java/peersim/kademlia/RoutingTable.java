@@ -2,8 +2,8 @@ package peersim.kademlia;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.List;
-import java.util.TreeMap;
+import java.util.Collection;
+import java.util.Collections;
 
 /**
  * Provides an implementation for the routing table component of a Kademlia node.
@@ -16,8 +16,11 @@ public class RoutingTable implements Cloneable {
   /** Node ID of the node. */
   protected BigInteger nodeId = null;
 
-  /** K-buckets. */
-  protected TreeMap<Integer, KBucket> k_buckets = null;
+  /** Node ID of the node as a fixed-width identifier, used for distance computations. */
+  protected UInt256 nodeUid = null;
+
+  /** K-buckets, created when a node is first added to them, as most of them stay empty. */
+  protected KBucket[] k_buckets = null;
 
   /** Number of k-buckets. */
   protected int nBuckets;
@@ -32,6 +35,13 @@ public class RoutingTable implements Cloneable {
   protected int bucketMinDistance;
 
   protected int findMode;
+
+  /** Buffer of the closest nodes found by {@link #getNeighbours(BigInteger, BigInteger)}. */
+  private UInt256[] closest;
+
+  /** Number of nodes in the closest buffer. */
+  private int closestCount;
+
   /**
    * Instantiates a new routing table with the specified parameters.
    *
@@ -41,7 +51,7 @@ public class RoutingTable implements Cloneable {
    */
   public RoutingTable(int nBuckets, int k, int maxReplacements) {
     // Initialize k-buckets.
-    k_buckets = new TreeMap<Integer, KBucket>();
+    k_buckets = new KBucket[nBuckets];
 
     this.nBuckets = nBuckets;
 
@@ -52,24 +62,25 @@ public class RoutingTable implements Cloneable {
     bucketMinDistance = KademliaCommonConfig.BITS - nBuckets;
 
     this.findMode = KademliaCommonConfig.FINDMODE;
-
-    /** Fills the k-buckets map with empty buckets. */
-    for (int i = 0; i < nBuckets; i++) {
-      k_buckets.put(i, new KBucket());
-    }
   }
 
   // Add a neighbour to the correct k-bucket
   public boolean addNeighbour(BigInteger node) {
+    return addNeighbour(Util.toUInt256(node));
+  }
+
+  // Add a neighbour to the correct k-bucket
+  public boolean addNeighbour(UInt256 uid) {
     // Add the node to the k-bucket
-    return bucketAtDistance(Util.logDistance(nodeId, node)).addNeighbour(node);
+    return bucketAtDistance(UInt256.logDistance(nodeUid, uid)).addNeighbour(uid);
   }
 
   // Remove a neighbour from the correct k-bucket
   public void removeNeighbour(BigInteger node) {
 
+    UInt256 uid = Util.toUInt256(node);
     // Remove the node from the k-bucket
-    bucketAtDistance(Util.logDistance(nodeId, node)).removeNeighbour(node);
+    bucketAtDistance(UInt256.logDistance(nodeUid, uid)).removeNeighbour(uid);
   }
 
   /**
@@ -81,91 +92,99 @@ public class RoutingTable implements Cloneable {
    */
   // Return the neighbours with a specific common prefix len
   public BigInteger[] getNeighbours(final int dist) {
-    BigInteger[] result = new BigInteger[0];
-    ArrayList<BigInteger> resultList = new ArrayList<BigInteger>();
+    ArrayList<UInt256> resultList = new ArrayList<UInt256>();
     // Add neighbors at the given distance
-    resultList.addAll(bucketAtDistance(dist).neighbours.keySet());
+    resultList.addAll(neighboursAtDistance(dist));
 
     if (resultList.size() < k && (dist + 1) <= 256) {
       // Add neighbors at the next distance
 
-      resultList.addAll(bucketAtDistance(dist + 1).neighbours.keySet());
+      resultList.addAll(neighboursAtDistance(dist + 1));
       // Remove excess neighbors until the size is <= k
       while (resultList.size() > k) resultList.remove(resultList.size() - 1);
     }
     // Add neighbors at the previous distance
     if (resultList.size() < k & (dist - 1) >= 0) {
-      resultList.addAll(bucketAtDistance(dist - 1).neighbours.keySet());
+      resultList.addAll(neighboursAtDistance(dist - 1));
       while (resultList.size() > k) resultList.remove(resultList.size() - 1);
     }
-    return resultList.toArray(result);
+    return toBigIntegers(resultList);
   }
 
   /**
-   * Return the closest neighbour to a key from the correct k-bucket.
+   * Return the K closest neighbours to a key, sorted by XOR distance to the key.<br>
+   * The buckets are walked outward from the one the key falls in. The nodes of the key's bucket are
+   * the closest ones; the nodes of all the lower buckets share the same log distance to the key and
+   * come next; every higher bucket is then farther than the previous one, so the walk stops as soon
+   * as K nodes have been gathered. Candidates are kept sorted by true XOR distance in a reusable
+   * buffer, so only the result array is allocated.
    *
    * @param key The key to find the closest neighbour to.
    * @param src The source identifier to exclude from neighbour candidates.
    * @return An array of the closest neighbours.
    */
   public BigInteger[] getNeighbours(final BigInteger key, final BigInteger src) {
-    // Resulting neighbours
-    BigInteger[] result = new BigInteger[KademliaCommonConfig.K];
-
-    // Neighbour candidates
-    ArrayList<BigInteger> neighbour_candidates = new ArrayList<BigInteger>();
+    UInt256 keyUid = Util.toUInt256(key);
+    UInt256 srcUid = Util.toUInt256(src);
 
-    // Get the length of the longest common prefix
-    int prefix_len = Util.logDistance(nodeId, key);
+    if (closest == null || closest.length != KademliaCommonConfig.K)
+      closest = new UInt256[KademliaCommonConfig.K];
+    closestCount = 0;
 
-    if (prefix_len < 0) return new BigInteger[] {nodeId};
-    // Return the k-bucket if it is full
-    if (bucketAtDistance(prefix_len).neighbours.size() >= KademliaCommonConfig.K) {
-      return bucketAtDistance(prefix_len).neighbours.keySet().toArray(result);
-    }
+    int keyBucket = getBucketNum(UInt256.logDistance(nodeUid, keyUid));
 
-    // Else get k closest nodes from all k-buckets
-    prefix_len = 0;
-    while (prefix_len < KademliaCommonConfig.BITS) {
-      neighbour_candidates.addAll(bucketAtDistance(prefix_len).neighbours.keySet());
-      // Remove source id
-      neighbour_candidates.remove(src);
-      prefix_len++;
-    }
+    // nodes in the key's bucket are closer than any other
+    collectClosest(keyBucket, keyUid, srcUid);
 
-    // Create a map (distance, node)
-    TreeMap<Integer, List<BigInteger>> distance_map = new TreeMap<Integer, List<BigInteger>>();
+    // nodes in lower buckets are all at the same log distance from the key
+    if (closestCount < closest.length)
+      for (int i = keyBucket - 1; i >= 0; i--) collectClosest(i, keyUid, srcUid);
 
-    for (BigInteger node : neighbour_candidates) {
-      if (distance_map.get(Util.logDistance(node, key)) == null) {
-        List<BigInteger> l = new ArrayList<BigInteger>();
-        l.add(node);
-        distance_map.put(Util.logDistance(node, key), l);
+    // each higher bucket is farther than the previous ones
+    for (int i = keyBucket + 1; i < nBuckets && closestCount < closest.length; i++)
+      collectClosest(i, keyUid, srcUid);
 
-      } else {
-        distance_map.get(Util.logDistance(node, key)).add(node);
-      }
+    BigInteger[] result = new BigInteger[closestCount];
+    for (int i = 0; i < closestCount; i++) {
+      result[i] = closest[i].toBigInteger();
+      closest[i] = null;
     }
+    return result;
+  }
 
-    List<BigInteger> bestNeighbours = new ArrayList<BigInteger>();
-    for (List<BigInteger> list : distance_map.values()) {
-      for (BigInteger i : list) {
-        if (bestNeighbours.size() < KademliaCommonConfig.K) bestNeighbours.add(i);
-        else break;
+  /** Inserts the nodes of a bucket in the closest buffer, keeping it sorted by distance to key. */
+  private void collectClosest(int bucket, UInt256 key, UInt256 src) {
+    for (UInt256 node : neighbours(bucket)) {
+      if (node.equals(src)) continue;
+
+      // binary search of the insertion point
+      int low = 0;
+      int high = closestCount - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        if (UInt256.compareDistance(closest[mid], node, key) < 0) low = mid + 1;
+        else high = mid - 1;
       }
+      if (low == closest.length) continue;
+
+      int last = closestCount < closest.length ? closestCount : closest.length - 1;
+      System.arraycopy(closest, low, closest, low + 1, last - low);
+      closest[low] = node;
+      if (closestCount < closest.length) closestCount++;
     }
-    if (bestNeighbours.size() < KademliaCommonConfig.K)
-      result = new BigInteger[bestNeighbours.size()];
+  }
 
-    return bestNeighbours.toArray(result);
+  /** Converts routing table entries back to BigInteger IDs, the format carried by messages. */
+  private static BigInteger[] toBigIntegers(Collection<UInt256> ids) {
+    BigInteger[] result = new BigInteger[ids.size()];
+    int i = 0;
+    for (UInt256 id : ids) result[i++] = id.toBigInteger();
+    return result;
   }
 
   // ______________________________________________________________________________________________
   public Object clone() {
     RoutingTable dolly = new RoutingTable(nBuckets, k, maxReplacements);
-    for (int i = 0; i < k_buckets.size(); i++) {
-      k_buckets.put(i, new KBucket()); // (KBucket) k_buckets.get(i).clone());
-    }
     return dolly;
   }
 
@@ -183,7 +202,7 @@ public class RoutingTable implements Cloneable {
       // Print the number of elements in each k-bucket
       //  sb.append("KBucket ").append(i);
 
-      sb.append(k_buckets.get(i).getNeighborCount()).append("\n");
+      sb.append(neighbours(i).size()).append("\n");
 
       // Uncomment to print all the elements in this k-bucket (row)
       // KBucket kBucket = k_buckets.get(i);
@@ -193,12 +212,32 @@ public class RoutingTable implements Cloneable {
     return sb.toString();
   }
 
+  /**
+   * Returns all the nodes in the routing table.
+   *
+   * @return the nodes of every k-bucket, from the lowest bucket to the highest
+   */
+  public BigInteger[] getAllNeighbours() {
+    ArrayList<UInt256> all = new ArrayList<UInt256>();
+    for (int i = 0; i < nBuckets; i++) all.addAll(neighbours(i));
+    return toBigIntegers(all);
+  }
+
   public KBucket getBucket(BigInteger node) {
-    return bucketAtDistance(Util.logDistance(nodeId, node));
+    return bucketAtDistance(UInt256.logDistance(nodeUid, Util.toUInt256(node)));
   }
 
   public int getBucketNum(BigInteger node) {
-    int dist = Util.logDistance(nodeId, node);
+    return getBucketNum(UInt256.logDistance(nodeUid, Util.toUInt256(node)));
+  }
+
+  /**
+   * Returns the index of the bucket holding the nodes at the given log distance.
+   *
+   * @param dist the log distance from this node
+   * @return the bucket index
+   */
+  protected int getBucketNum(int dist) {
     if (dist <= bucketMinDistance) {
       return 0;
     }
@@ -206,12 +245,19 @@ public class RoutingTable implements Cloneable {
   }
 
   protected KBucket bucketAtDistance(int distance) {
+    int i = getBucketNum(distance);
+    if (k_buckets[i] == null) k_buckets[i] = new KBucket();
+    return k_buckets[i];
+  }
 
-    if (distance <= bucketMinDistance) {
-      return k_buckets.get(0);
-    }
+  /** Returns the nodes of a k-bucket, without creating it if it is empty. */
+  private Collection<UInt256> neighbours(int bucket) {
+    KBucket b = k_buckets[bucket];
+    return b == null ? Collections.emptySet() : b.neighbours.keySet();
+  }
 
-    return k_buckets.get(distance - bucketMinDistance - 1);
+  private Collection<UInt256> neighboursAtDistance(int distance) {
+    return neighbours(getBucketNum(distance));
   }
 
   public int getbucketMinDistance() {
@@ -219,7 +265,12 @@ public class RoutingTable implements Cloneable {
   }
 
   public void setNodeId(BigInteger id) {
-    this.nodeId = id;
+    setNodeId(Util.toUInt256(id));
+  }
+
+  public void setNodeId(UInt256 id) {
+    this.nodeId = id.toBigInteger();
+    this.nodeUid = id;
   }
 
   public BigInteger getNodeId() {
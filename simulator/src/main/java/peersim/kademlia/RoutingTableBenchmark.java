@@ -0,0 +1,159 @@
+package peersim.kademlia;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Network;
+
+/**
+ * Initializer that measures the closest-K query of the routing tables ({@link
+ * RoutingTable#getNeighbours(BigInteger, BigInteger)}) against the previous implementation, which
+ * copied every neighbour of every bucket and grouped them by log distance. Queries are issued for
+ * random keys on the routing tables of random nodes and the throughput of both methods is printed
+ * in queries per second.
+ *
+ * <p>It has to be placed after the initializer that fills the routing tables (e.g. {@link
+ * StateBuilder}).
+ */
+public class RoutingTableBenchmark implements peersim.core.Control {
+
+  /**
+   * The Kademlia protocol to benchmark.
+   *
+   * @config
+   */
+  private static final String PAR_PROT = "protocol";
+
+  /**
+   * Number of queries to run for each method. Defaults to 100000.
+   *
+   * @config
+   */
+  private static final String PAR_QUERIES = "queries";
+
+  private final int kademliaid;
+
+  private final int queries;
+
+  /**
+   * Constructor that reads the configuration parameters.
+   *
+   * @param prefix the prefix string of the parameters read from the configuration file
+   */
+  public RoutingTableBenchmark(String prefix) {
+    kademliaid = Configuration.getPid(prefix + "." + PAR_PROT);
+    queries = Configuration.getInt(prefix + "." + PAR_QUERIES, 100000);
+  }
+
+  /**
+   * Runs the benchmark and prints the results.
+   *
+   * @return always false
+   */
+  public boolean execute() {
+    UniformRandomGenerator urg =
+        new UniformRandomGenerator(KademliaCommonConfig.BITS, CommonState.r);
+    RoutingTable[] tables = new RoutingTable[queries];
+    BigInteger[] keys = new BigInteger[queries];
+    BigInteger[] srcs = new BigInteger[queries];
+    for (int i = 0; i < queries; i++) {
+      tables[i] = get(CommonState.r.nextInt(Network.size())).getRoutingTable();
+      keys[i] = urg.generate();
+      srcs[i] = get(CommonState.r.nextInt(Network.size())).getKademliaNode().getId();
+    }
+
+    // warm up both paths before measuring
+    int warmup = Math.min(queries, 10000);
+    for (int i = 0; i < warmup; i++) {
+      previousGetNeighbours(tables[i], keys[i], srcs[i]);
+      tables[i].getNeighbours(keys[i], srcs[i]);
+    }
+
+    long returned = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < queries; i++)
+      returned += previousGetNeighbours(tables[i], keys[i], srcs[i]).length;
+    long previousTime = System.nanoTime() - start;
+
+    long returnedNew = 0;
+    start = System.nanoTime();
+    for (int i = 0; i < queries; i++)
+      returnedNew += tables[i].getNeighbours(keys[i], srcs[i]).length;
+    long newTime = System.nanoTime() - start;
+
+    System.out.println(
+        "RoutingTableBenchmark: " + Network.size() + " nodes, " + queries + " queries");
+    System.out.println(
+        "RoutingTableBenchmark: log distance grouping "
+            + rate(previousTime)
+            + " queries/s, "
+            + returned
+            + " neighbours returned");
+    System.out.println(
+        "RoutingTableBenchmark: bucket walk "
+            + rate(newTime)
+            + " queries/s, "
+            + returnedNew
+            + " neighbours returned");
+    return false;
+  }
+
+  /**
+   * The closest-K query as implemented before the bucket walk, kept as a reference for the
+   * benchmark.
+   */
+  private static BigInteger[] previousGetNeighbours(
+      RoutingTable rt, BigInteger key, BigInteger src) {
+    BigInteger[] result = new BigInteger[KademliaCommonConfig.K];
+    ArrayList<BigInteger> neighbour_candidates = new ArrayList<BigInteger>();
+
+    int prefix_len = Util.logDistance(rt.nodeId, key);
+    if (rt.bucketAtDistance(prefix_len).neighbours.size() >= KademliaCommonConfig.K) {
+      List<BigInteger> bucket = new ArrayList<BigInteger>();
+      for (UInt256 n : rt.bucketAtDistance(prefix_len).neighbours.keySet())
+        bucket.add(n.toBigInteger());
+      return bucket.toArray(result);
+    }
+
+    prefix_len = 0;
+    while (prefix_len < KademliaCommonConfig.BITS) {
+      for (UInt256 n : rt.bucketAtDistance(prefix_len).neighbours.keySet())
+        neighbour_candidates.add(n.toBigInteger());
+      neighbour_candidates.remove(src);
+      prefix_len++;
+    }
+
+    TreeMap<Integer, List<BigInteger>> distance_map = new TreeMap<Integer, List<BigInteger>>();
+    for (BigInteger node : neighbour_candidates) {
+      if (distance_map.get(Util.logDistance(node, key)) == null) {
+        List<BigInteger> l = new ArrayList<BigInteger>();
+        l.add(node);
+        distance_map.put(Util.logDistance(node, key), l);
+      } else {
+        distance_map.get(Util.logDistance(node, key)).add(node);
+      }
+    }
+
+    List<BigInteger> bestNeighbours = new ArrayList<BigInteger>();
+    for (List<BigInteger> list : distance_map.values()) {
+      for (BigInteger i : list) {
+        if (bestNeighbours.size() < KademliaCommonConfig.K) bestNeighbours.add(i);
+        else break;
+      }
+    }
+    if (bestNeighbours.size() < KademliaCommonConfig.K)
+      result = new BigInteger[bestNeighbours.size()];
+    return bestNeighbours.toArray(result);
+  }
+
+  private KademliaProtocol get(int i) {
+    return (KademliaProtocol) Network.get(i).getProtocol(kademliaid);
+  }
+
+  private long rate(long nanos) {
+    return (long) (queries / (Math.max(nanos, 1) / 1e9));
+  }
+}
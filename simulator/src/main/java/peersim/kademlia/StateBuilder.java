@@ -1,7 +1,12 @@
 package peersim.kademlia;
 
-import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import peersim.config.Configuration;
 import peersim.core.CommonState;
 import peersim.core.Network;
@@ -22,9 +27,19 @@ public class StateBuilder implements peersim.core.Control {
   private static final String PAR_PROT = "protocol";
   private static final String PAR_TRANSPORT = "transport";
 
+  /** Number of threads filling the k-buckets, 1 by default */
+  private static final String PAR_THREADS = "threads";
+
+  /** Number of random nodes added to the k-buckets of each node */
+  private static final int RANDOM_NEIGHBOURS = 100;
+
+  /** Number of nodes whose random nodes are drawn together and filled by the same thread */
+  private static final int BATCH = 1024;
+
   private String prefix;
   private int kademliaid;
   private int transportid;
+  private int threads;
 
   /**
    * Constructor method for the StateBuilder class. It performs the necessary initialization of the
@@ -36,6 +51,7 @@ public class StateBuilder implements peersim.core.Control {
     this.prefix = prefix;
     kademliaid = Configuration.getPid(this.prefix + "." + PAR_PROT);
     transportid = Configuration.getPid(this.prefix + "." + PAR_TRANSPORT);
+    threads = Configuration.getInt(this.prefix + "." + PAR_THREADS, 1);
   }
 
   /**
@@ -72,11 +88,16 @@ public class StateBuilder implements peersim.core.Control {
    * adding 100 (not the 50 mentioned in the previous comment) nodes to each node's k-bucket. Then
    * adds 50 nearby nodes to each node's k-bucket.
    *
+   * <p>The random nodes of a batch of nodes are drawn first, in the same order as if the nodes were
+   * filled one after the other, so that the k-buckets can then be filled in parallel with the same
+   * result.
+   *
    * @return always false
    */
   public boolean execute() {
 
-    // Sort the network by nodeId (Ascending)
+    // Sort the network by nodeId (Ascending). NodeIds are not negative, so their numeric order is
+    // the order of their binary representation
     Network.sort(
         new Comparator<Node>() {
           /**
@@ -87,34 +108,64 @@ public class StateBuilder implements peersim.core.Control {
            * @return 0 if same, negative if o1 < 02, and positive if o1 > o2
            */
           public int compare(Node o1, Node o2) {
-            Node n1 = (Node) o1;
-            Node n2 = (Node) o2;
-            KademliaProtocol p1 = (KademliaProtocol) (n1.getProtocol(kademliaid));
-            KademliaProtocol p2 = (KademliaProtocol) (n2.getProtocol(kademliaid));
-            return Util.put0(p1.getKademliaNode().getId())
-                .compareTo(Util.put0(p2.getKademliaNode().getId()));
+            KademliaProtocol p1 = (KademliaProtocol) (o1.getProtocol(kademliaid));
+            KademliaProtocol p2 = (KademliaProtocol) (o2.getProtocol(kademliaid));
+            return p1.getKademliaNode().getId().compareTo(p2.getKademliaNode().getId());
           }
         });
 
     int sz = Network.size();
-    // For every node, add 100 random nodes to its k-bucket - not sure why this was 50 previously...
+    // the ids are converted once and shared by all the routing tables
+    UInt256[] ids = new UInt256[sz];
+    RoutingTable[] tables = new RoutingTable[sz];
     for (int i = 0; i < sz; i++) {
-      Node iNode = Network.get(i);
-      KademliaProtocol iKad = (KademliaProtocol) (iNode.getProtocol(kademliaid));
+      ids[i] = get(i).getKademliaNode().getUid();
+      tables[i] = get(i).getRoutingTable();
+    }
+
+    ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+    try {
+      List<Future<?>> parts = new ArrayList<>();
+      for (int from = 0; from < sz; from += BATCH) {
+        int start = from;
+        int end = Math.min(sz, from + BATCH);
+        // For every node, add 100 random nodes to its k-bucket - not sure why this was 50
+        // previously...
+        int[] random = new int[(end - start) * RANDOM_NEIGHBOURS];
+        for (int i = 0; i < random.length; i++) random[i] = CommonState.r.nextInt(sz);
 
-      for (int k = 0; k < 100; k++) {
-        KademliaProtocol jKad =
-            (KademliaProtocol) (Network.get(CommonState.r.nextInt(sz)).getProtocol(kademliaid));
-        iKad.getRoutingTable().addNeighbour(jKad.getKademliaNode().getId());
+        if (pool == null) fill(start, end, ids, tables, random);
+        else parts.add(pool.submit(() -> fill(start, end, ids, tables, random)));
       }
+      for (Future<?> part : parts) part.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      if (pool != null) pool.shutdown();
     }
+    return false;
+  } // end execute()
 
-    // Add 50 nearby nodes to each node's k-bucket
-    for (int i = 0; i < sz; i++) {
-      Node iNode = Network.get(i);
-      KademliaProtocol iKad = (KademliaProtocol) (iNode.getProtocol(kademliaid));
-      BigInteger iNodeId = iKad.getKademliaNode().getId();
+  /**
+   * Fills the k-buckets of a range of nodes, first with their random nodes, then with the 50 nodes
+   * that follow them in the sorted network.
+   *
+   * @param from the index of the first node
+   * @param to the index after the last node
+   * @param ids the nodeIds of the sorted network
+   * @param tables the routing tables of the sorted network
+   * @param random the random nodes, RANDOM_NEIGHBOURS for each node of the range
+   */
+  private static void fill(int from, int to, UInt256[] ids, RoutingTable[] tables, int[] random) {
+    int sz = ids.length;
+    for (int i = from; i < to; i++) {
+      for (int k = 0; k < RANDOM_NEIGHBOURS; k++)
+        tables[i].addNeighbour(ids[random[(i - from) * RANDOM_NEIGHBOURS + k]]);
 
+      // Add 50 nearby nodes to each node's k-bucket
       int start = i;
       if (i > sz - 50) {
         start = sz - 25;
@@ -122,15 +173,10 @@ public class StateBuilder implements peersim.core.Control {
       for (int k = 0; k < 50; k++) {
         start++;
         // start > 0 isn't necessary anymore
-        if (start > 0 && start < sz) {
-          KademliaProtocol jKad = (KademliaProtocol) (Network.get(start).getProtocol(kademliaid));
-          BigInteger jNodeId = jKad.getKademliaNode().getId();
-          if (!jNodeId.equals(iNodeId)) {
-            iKad.getRoutingTable().addNeighbour(jKad.getKademliaNode().getId());
-          }
+        if (start > 0 && start < sz && !ids[start].equals(ids[i])) {
+          tables[i].addNeighbour(ids[start]);
         }
       }
     }
-    return false;
-  } // end execute()
+  }
 }
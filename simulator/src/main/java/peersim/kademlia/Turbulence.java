@@ -197,6 +197,7 @@ public class Turbulence implements Control {
         new UniformRandomGenerator(KademliaCommonConfig.BITS, CommonState.r);
     KademliaNode node = new KademliaNode(urg.generate(), "127.0.0.1", 0);
     ((KademliaProtocol) (newNode.getProtocol(kademliaid))).setNode(node);
+    Network.registerId(node.getId(), newNode);
 
     // Sort the network
     sortNet();
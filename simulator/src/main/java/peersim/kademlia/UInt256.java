@@ -0,0 +1,219 @@
+package peersim.kademlia;
+
+import java.math.BigInteger;
+
+/**
+ * Fixed-width unsigned 256-bit identifier, stored as four <code>long</code> words (most significant
+ * first). XOR, log distance and comparisons work directly on the words, so the routing code can
+ * compare identifiers without allocating the intermediate <code>BigInteger</code> objects created
+ * by {@link BigInteger#xor}.
+ *
+ * <p>The value of an instance never changes. The <code>BigInteger</code> an instance was created
+ * from is kept, or created the first time it is needed, so converting back with {@link
+ * #toBigInteger()} at the protocol boundaries (messages, logs, DAS layer) allocates at most once.
+ * Threads converting the same instance at once may each create an equal <code>BigInteger</code>.
+ */
+public final class UInt256 implements Comparable<UInt256> {
+
+  /** Number of bits of the identifier. */
+  public static final int SIZE = 256;
+
+  /** The zero identifier. */
+  public static final UInt256 ZERO = new UInt256(0, 0, 0, 0);
+
+  private final long w0;
+  private final long w1;
+  private final long w2;
+  private final long w3;
+
+  /** Cached BigInteger representation, set by {@link #valueOf} or created lazily. */
+  private BigInteger big;
+
+  /**
+   * Creates an identifier from its four words.
+   *
+   * @param w0 the most significant 64 bits
+   * @param w1 bits 128 to 191
+   * @param w2 bits 64 to 127
+   * @param w3 the least significant 64 bits
+   */
+  public UInt256(long w0, long w1, long w2, long w3) {
+    this.w0 = w0;
+    this.w1 = w1;
+    this.w2 = w2;
+    this.w3 = w3;
+  }
+
+  /**
+   * Converts a non-negative BigInteger of at most 256 bits.
+   *
+   * @param b the value to convert
+   * @return the identifier with the same value, or null if b is null
+   * @throws IllegalArgumentException if b is negative or longer than 256 bits
+   */
+  public static UInt256 valueOf(BigInteger b) {
+    if (b == null) return null;
+    if (b.signum() < 0 || b.bitLength() > SIZE)
+      throw new IllegalArgumentException("Not an unsigned 256-bit value: " + b);
+    byte[] bytes = b.toByteArray();
+    UInt256 u = new UInt256(word(bytes, 3), word(bytes, 2), word(bytes, 1), word(bytes, 0));
+    u.big = b;
+    return u;
+  }
+
+  /**
+   * Returns the k-th 64-bit word of a big-endian byte array, counting from the least significant.
+   */
+  private static long word(byte[] bytes, int k) {
+    long w = 0;
+    int end = bytes.length - 8 * k;
+    for (int i = Math.max(0, end - 8); i < end; i++) w = (w << 8) | (bytes[i] & 0xffL);
+    return w;
+  }
+
+  /**
+   * Returns the value as a BigInteger.
+   *
+   * @return the BigInteger with the same value
+   */
+  public BigInteger toBigInteger() {
+    if (big == null) {
+      byte[] bytes = new byte[33];
+      putWord(bytes, 1, w0);
+      putWord(bytes, 9, w1);
+      putWord(bytes, 17, w2);
+      putWord(bytes, 25, w3);
+      big = new BigInteger(bytes);
+    }
+    return big;
+  }
+
+  private static void putWord(byte[] bytes, int offset, long w) {
+    for (int i = 7; i >= 0; i--) {
+      bytes[offset + i] = (byte) w;
+      w >>>= 8;
+    }
+  }
+
+  /**
+   * Returns the bitwise XOR of this identifier and another one.
+   *
+   * @param o the other identifier
+   * @return this XOR o
+   */
+  public UInt256 xor(UInt256 o) {
+    return new UInt256(w0 ^ o.w0, w1 ^ o.w1, w2 ^ o.w2, w3 ^ o.w3);
+  }
+
+  /**
+   * Returns the number of bits of the value, i.e. the position of the highest set bit plus one.
+   *
+   * @return the bit length, 0 for zero
+   */
+  public int bitLength() {
+    return bitLength(w0, w1, w2, w3);
+  }
+
+  private static int bitLength(long x0, long x1, long x2, long x3) {
+    if (x0 != 0) return 256 - Long.numberOfLeadingZeros(x0);
+    if (x1 != 0) return 192 - Long.numberOfLeadingZeros(x1);
+    if (x2 != 0) return 128 - Long.numberOfLeadingZeros(x2);
+    if (x3 != 0) return 64 - Long.numberOfLeadingZeros(x3);
+    return 0;
+  }
+
+  /**
+   * Returns true if the bit at the given position is set.
+   *
+   * @param n the bit position, 0 being the least significant bit
+   * @return true if bit n is set
+   */
+  public boolean testBit(int n) {
+    long w;
+    switch (n >>> 6) {
+      case 0:
+        w = w3;
+        break;
+      case 1:
+        w = w2;
+        break;
+      case 2:
+        w = w1;
+        break;
+      case 3:
+        w = w0;
+        break;
+      default:
+        return false;
+    }
+    return (w & (1L << (n & 63))) != 0;
+  }
+
+  /**
+   * Measures the log-distance between two identifiers, i.e. the bit length of their XOR, without
+   * allocating. It returns the same value as {@link Util#logDistance(BigInteger, BigInteger)}.
+   *
+   * @param a the first identifier
+   * @param b the second identifier
+   * @return the log-distance between a and b
+   */
+  public static int logDistance(UInt256 a, UInt256 b) {
+    return bitLength(a.w0 ^ b.w0, a.w1 ^ b.w1, a.w2 ^ b.w2, a.w3 ^ b.w3);
+  }
+
+  /**
+   * Compares the XOR distances of two identifiers to a target without allocating.
+   *
+   * @param a the first identifier
+   * @param b the second identifier
+   * @param target the target identifier
+   * @return a negative number, zero or a positive number if a is respectively closer, as close or
+   *     farther than b from the target
+   */
+  public static int compareDistance(UInt256 a, UInt256 b, UInt256 target) {
+    int c = Long.compareUnsigned(a.w0 ^ target.w0, b.w0 ^ target.w0);
+    if (c != 0) return c;
+    c = Long.compareUnsigned(a.w1 ^ target.w1, b.w1 ^ target.w1);
+    if (c != 0) return c;
+    c = Long.compareUnsigned(a.w2 ^ target.w2, b.w2 ^ target.w2);
+    if (c != 0) return c;
+    return Long.compareUnsigned(a.w3 ^ target.w3, b.w3 ^ target.w3);
+  }
+
+  /**
+   * Compares two identifiers as unsigned numbers, consistently with {@link
+   * BigInteger#compareTo(BigInteger)}.
+   */
+  @Override
+  public int compareTo(UInt256 o) {
+    int c = Long.compareUnsigned(w0, o.w0);
+    if (c != 0) return c;
+    c = Long.compareUnsigned(w1, o.w1);
+    if (c != 0) return c;
+    c = Long.compareUnsigned(w2, o.w2);
+    if (c != 0) return c;
+    return Long.compareUnsigned(w3, o.w3);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) return true;
+    if (!(o instanceof UInt256)) return false;
+    UInt256 u = (UInt256) o;
+    return w0 == u.w0 && w1 == u.w1 && w2 == u.w2 && w3 == u.w3;
+  }
+
+  @Override
+  public int hashCode() {
+    long h = w0 * 31 + w1;
+    h = h * 31 + w2;
+    h = h * 31 + w3;
+    return Long.hashCode(h);
+  }
+
+  /** Returns the decimal representation of the identifier, as BigInteger does. */
+  @Override
+  public String toString() {
+    return toBigInteger().toString();
+  }
+}
@@ -1,8 +1,10 @@
 package peersim.kademlia;
 
 import java.math.BigInteger;
-import java.util.Set;
+import java.util.Collection;
 import peersim.core.CommonState;
+import peersim.core.Network;
+import peersim.core.Node;
 
 /**
  * Some utility and mathematical function to work with BigInteger numbers and strings.
@@ -60,7 +62,8 @@ public class Util {
    * @param closest
    * @return BigInteger
    */
-  public static final int getMinCplWithSet(BigInteger targetKey, Set<BigInteger> closestSet) {
+  public static final int getMinCplWithSet(
+      BigInteger targetKey, Collection<BigInteger> closestSet) {
     int curr_minCPL = KademliaCommonConfig.BITS;
     for (BigInteger n : closestSet) {
       int cpl = Util.prefixLen(n, targetKey);
@@ -121,6 +124,25 @@ public class Util {
     return a.xor(b);
   }
 
+  /**
+   * Returns an ID as a fixed-width identifier. The ID of a node in the network is found in constant
+   * time and its identifier, converted when the node was created, is returned without allocating;
+   * other IDs, like random lookup targets, are converted.
+   *
+   * @param id the ID
+   * @return the identifier with the same value, or null if id is null
+   */
+  public static UInt256 toUInt256(BigInteger id) {
+    if (id == null) return null;
+    Node n = Network.getById(id);
+    if (n != null && n.getKademliaProtocol() != null) {
+      KademliaNode node = n.getKademliaProtocol().getKademliaNode();
+      // a node can register other IDs than its own
+      if (node != null && node.getId().equals(id)) return node.getUid();
+    }
+    return UInt256.valueOf(id);
+  }
+
   // ______________________________________________________________________________________________
   /**
    * generates a random find node message, by selecting randomly the destination.
@@ -1,7 +1,9 @@
 package peersim.kademlia.das;
 
 import java.math.BigInteger;
-import java.util.Collection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Iterator;
 import java.util.TreeSet;
 import peersim.core.CommonState;
@@ -10,9 +12,6 @@ import peersim.kademlia.KademliaCommonConfig;
 
 public class Block implements Iterator<Sample>, Cloneable {
 
-  /** The square matrix of samples */
-  private Sample[][] blockSamples;
-
   /** Block identifier */
   private long blockId;
 
@@ -34,33 +33,21 @@ public class Block implements Iterator<Sample>, Cloneable {
   /** number of samples in a block */
   private int numSamples;
 
-  // private TreeSet<BigInteger> samples;
-  private TreeSet<BigInteger> samplesByRow;
-  private TreeSet<BigInteger> samplesByColumn;
-  // private HashMap<BigInteger, BigInteger> sampleMap;
-  // Constructor with block id
-  public Block(long id) {
-
-    SIZE = 512;
-    this.numSamples = this.SIZE * this.SIZE;
-    _init();
-
-    samplesByRow = new TreeSet<>();
-    samplesByColumn = new TreeSet<>();
-    // sampleMap = new HashMap<>();
+  /**
+   * Sorted sample ids, only used with the random mapping, where ids cannot be computed from a
+   * range. Created on the first radius query.
+   */
+  private TreeSet<BigInteger> randomIds;
 
-    this.blockId = id;
-    blockSamples = new Sample[SIZE][SIZE];
-    row = column = 0;
+  /*
+   * Samples are not stored: with the region based mapping the id of a sample is computed from its
+   * row and column, and radius queries are solved by integer arithmetic on the sample numbers.
+   * Sample objects are only created when returned.
+   */
 
-    for (int i = 0; i < blockSamples.length; i++) {
-      for (int j = 0; j < blockSamples[0].length; j++) {
-        blockSamples[i][j] = new Sample(blockId, i + 1, j + 1, this);
-        samplesByRow.add(blockSamples[i][j].getIdByRow());
-        samplesByColumn.add(blockSamples[i][j].getIdByColumn());
-        // sampleMap.put(blockSamples[i][j].getIdByColumn(), blockSamples[i][j].getIdByRow());
-      }
-    }
+  // Constructor with block id
+  public Block(long id) {
+    this(512, id);
   }
 
   // Constructor specifying block id and matrix size
@@ -69,44 +56,8 @@ public class Block implements Iterator<Sample>, Cloneable {
     SIZE = size;
     this.numSamples = this.SIZE * this.SIZE;
     _init();
-    samplesByRow = new TreeSet<>();
-    samplesByColumn = new TreeSet<>();
-    // sampleMap = new HashMap<>();
-
     this.blockId = id;
-    blockSamples = new Sample[SIZE][SIZE];
-    row = column = 0;
-
-    for (int i = 0; i < blockSamples.length; i++) {
-      for (int j = 0; j < blockSamples[0].length; j++) {
-        blockSamples[i][j] = new Sample(blockId, i + 1, j + 1, this);
-        samplesByRow.add(blockSamples[i][j].getIdByRow());
-        samplesByColumn.add(blockSamples[i][j].getIdByColumn());
-        // sampleMap.put(blockSamples[i][j].getIdByColumn(), blockSamples[i][j].getIdByRow());
-      }
-    }
-  }
-
-  // Constructor used when cloning
-  public Block(Sample[][] blockSamples, int size, long id) {
-    SIZE = size;
-    this.numSamples = this.SIZE * this.SIZE;
-    _init();
-    this.blockSamples = blockSamples;
     row = column = 0;
-    this.blockId = id;
-    // samples = new TreeSet<>();
-    samplesByRow = new TreeSet<>();
-    samplesByColumn = new TreeSet<>();
-
-    for (int i = 0; i < blockSamples.length; i++) {
-      for (int j = 0; j < blockSamples[0].length; j++) {
-        blockSamples[i][j] = new Sample(blockId, i + 1, j + 1, this);
-        samplesByRow.add(blockSamples[i][j].getIdByRow());
-        samplesByColumn.add(blockSamples[i][j].getIdByColumn());
-        // sampleMap.put(blockSamples[i][j].getIdByColumn(), blockSamples[i][j].getIdByRow());
-      }
-    }
   }
 
   /**
@@ -117,7 +68,8 @@ public class Block implements Iterator<Sample>, Cloneable {
    */
   public Object clone() {
     initIterator();
-    Block dolly = new Block(this.blockSamples, this.SIZE, this.blockId);
+    Block dolly = new Block(this.SIZE, this.blockId);
+    dolly.randomIds = this.randomIds;
     return dolly;
   }
 
@@ -142,9 +94,15 @@ public class Block implements Iterator<Sample>, Cloneable {
     return this.blockId;
   }
 
-  /* Returns all the block samples */
+  /* Returns all the block samples, creating a new matrix */
   public Sample[][] getSamples() {
-    return this.blockSamples;
+    Sample[][] samples = new Sample[SIZE][SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      for (int j = 0; j < SIZE; j++) {
+        samples[i][j] = getSample(i, j);
+      }
+    }
+    return samples;
   }
 
   /* Returns the ids of n random selected samples */
@@ -154,7 +112,7 @@ public class Block implements Iterator<Sample>, Cloneable {
     for (int i = 0; i < samples.length; i++) {
       int r = CommonState.r.nextInt(SIZE);
       int c = CommonState.r.nextInt(SIZE);
-      samples[i] = this.blockSamples[r][c].getId();
+      samples[i] = getIdByRow(r + 1, c + 1);
     }
     return samples;
   }
@@ -166,14 +124,14 @@ public class Block implements Iterator<Sample>, Cloneable {
     for (int i = 0; i < samples.length; i++) {
       int r = CommonState.r.nextInt(SIZE);
       int c = CommonState.r.nextInt(SIZE);
-      samples[i] = this.blockSamples[r][c];
+      samples[i] = getSample(r, c);
     }
     return samples;
   }
 
-  /* Returns the ids of n random selected samples */
+  /* Returns the sample at the given position, counting from 0 */
   public Sample getSample(int row, int column) {
-    return this.blockSamples[row][column];
+    return new Sample(blockId, row + 1, column + 1, this);
   }
 
   @Override
@@ -187,7 +145,7 @@ public class Block implements Iterator<Sample>, Cloneable {
   @Override
   public Sample next() {
 
-    Sample s = blockSamples[row][column];
+    Sample s = getSample(row, column);
 
     column++;
     if (column == SIZE) {
@@ -195,7 +153,6 @@ public class Block implements Iterator<Sample>, Cloneable {
       column = 0;
     }
 
-    if (column > SIZE - 1) return null;
     return s;
   }
 
@@ -216,42 +173,25 @@ public class Block implements Iterator<Sample>, Cloneable {
 
   /* Returns the total number of samples in the block */
   public BigInteger[] getSamplesByRadius(BigInteger peerId, BigInteger radius) {
-    BigInteger top = peerId.add(radius);
-    BigInteger bottom = peerId.subtract(radius);
-
-    Collection<BigInteger> subSet = samplesByRow.subSet(bottom, true, top, true);
-    return (BigInteger[]) subSet.toArray(new BigInteger[0]);
+    return getSamplesByRadiusByRow(peerId, radius);
   }
 
   /* Returns the ids of the samples within the radius to the peerId specified*/
   public BigInteger[] getSamplesByRadiusByRow(BigInteger peerId, BigInteger radius) {
-    BigInteger top = peerId.add(radius);
-    BigInteger bottom = peerId.subtract(radius);
-
-    Collection<BigInteger> subSet = samplesByRow.subSet(bottom, true, top, true);
-    return (BigInteger[]) subSet.toArray(new BigInteger[0]);
+    return getIdsInRange(peerId.subtract(radius), peerId.add(radius), BigInteger.valueOf(blockId));
   }
 
   /* Returns the ids of the samples within the radius to the peerId specified, using sample column id*/
   public BigInteger[] getSamplesByRadiusByColumn(BigInteger peerId, BigInteger radius) {
-    BigInteger top = peerId.add(radius);
-    BigInteger bottom = peerId.subtract(radius);
-
-    Collection<BigInteger> subSet = samplesByColumn.subSet(bottom, true, top, true);
-
-    /*List<BigInteger> result = new ArrayList<>();
-    for (BigInteger sampleId : subSet) {
-      result.add(sampleMap.get(sampleId));
-    }
-    return (BigInteger[]) result.toArray(new BigInteger[0]);*/
-    return (BigInteger[]) subSet.toArray(new BigInteger[0]);
+    return getIdsInRange(
+        peerId.subtract(radius), peerId.add(radius), BigInteger.valueOf(blockId + 1));
   }
 
   /* Returns the ids of the all the samples in a specific row*/
   public BigInteger[] getSamplesIdsByRow(int row) {
     BigInteger[] samples = new BigInteger[this.SIZE];
     for (int i = 0; i < samples.length; i++) {
-      samples[i] = this.blockSamples[row - 1][i].getIdByRow();
+      samples[i] = getIdByRow(row, i + 1);
     }
     return samples;
   }
@@ -260,11 +200,81 @@ public class Block implements Iterator<Sample>, Cloneable {
   public BigInteger[] getSamplesIdsByColumn(int column) {
     BigInteger[] samples = new BigInteger[this.SIZE];
     for (int i = 0; i < samples.length; i++) {
-      samples[i] = this.blockSamples[i][column - 1].getIdByColumn();
+      samples[i] = getIdByColumn(i + 1, column);
     }
     return samples;
   }
 
+  /**
+   * Returns the id of a sample using rows as reference, with row and column counted from 1. Samples
+   * are numbered by row and spaced by {@link #INTER_SAMPLE_GAP} in the keyspace.
+   */
+  BigInteger getIdByRow(int row, int column) {
+    if (KademliaCommonConfigDas.MAPPING_FN == KademliaCommonConfigDas.SAMPLE_MAPPING_RANDOM)
+      return getRandomId(row, column);
+    return INTER_SAMPLE_GAP
+        .multiply(BigInteger.valueOf((long) (row - 1) * SIZE + (column - 1)))
+        .add(BigInteger.valueOf(blockId));
+  }
+
+  /**
+   * Returns the id of a sample using columns as reference, with row and column counted from 1.
+   * Samples are numbered by column and shifted by one from the row based ids.
+   */
+  BigInteger getIdByColumn(int row, int column) {
+    if (KademliaCommonConfigDas.MAPPING_FN == KademliaCommonConfigDas.SAMPLE_MAPPING_RANDOM)
+      return getRandomId(row, column);
+    return INTER_SAMPLE_GAP
+        .multiply(BigInteger.valueOf((long) (column - 1) * SIZE + (row - 1)))
+        .add(BigInteger.valueOf(blockId))
+        .add(BigInteger.ONE);
+  }
+
+  /** Hash of the block id, row and column, used as id by the random mapping. */
+  private BigInteger getRandomId(int row, int column) {
+    try {
+      String idName =
+          String.valueOf(blockId) + "_" + String.valueOf(row) + "x" + String.valueOf(column);
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] hash = digest.digest(idName.getBytes(StandardCharsets.UTF_8));
+      return new BigInteger(1, hash);
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Returns, in increasing order, the sample ids between bottom and top (both included). With the
+   * region based mapping the ids are offset + k * {@link #INTER_SAMPLE_GAP} for the sample numbers
+   * k, so the range of numbers is computed directly.
+   */
+  private BigInteger[] getIdsInRange(BigInteger bottom, BigInteger top, BigInteger offset) {
+    if (KademliaCommonConfigDas.MAPPING_FN == KademliaCommonConfigDas.SAMPLE_MAPPING_RANDOM) {
+      if (randomIds == null) {
+        randomIds = new TreeSet<>();
+        for (int i = 1; i <= SIZE; i++) {
+          for (int j = 1; j <= SIZE; j++) randomIds.add(getRandomId(i, j));
+        }
+      }
+      return randomIds.subSet(bottom, true, top, true).toArray(new BigInteger[0]);
+    }
+
+    BigInteger high = top.subtract(offset);
+    if (high.signum() < 0) return new BigInteger[0];
+    long last = Math.min(high.divide(INTER_SAMPLE_GAP).longValue(), numSamples - 1);
+    long first = 0;
+    BigInteger low = bottom.subtract(offset);
+    if (low.signum() > 0)
+      first =
+          low.add(INTER_SAMPLE_GAP).subtract(BigInteger.ONE).divide(INTER_SAMPLE_GAP).longValue();
+    if (first > last) return new BigInteger[0];
+
+    BigInteger[] ids = new BigInteger[(int) (last - first + 1)];
+    for (int i = 0; i < ids.length; i++)
+      ids[i] = INTER_SAMPLE_GAP.multiply(BigInteger.valueOf(first + i)).add(offset);
+    return ids;
+  }
+
   private void _init() {
 
     // execute once
@@ -65,41 +65,12 @@ public class CustomDistributionDas implements peersim.core.Control {
     List<DASProtocol> validators = new ArrayList<>();
 
     for (int i = 0; i < Network.size(); ++i) {
-      Node generalNode = Network.get(i);
-      BigInteger id;
-      KademliaNode node;
-      id = urg.generate();
-      node = new KademliaNode(id, "0.0.0.0", 0);
-
-      KademliaProtocol kadProt = null;
-      DASProtocol dasProt = null;
-
       /** Generate honest and evil nodes * */
-      if ((i > 0) && (i < (numEvilNodes + 1))) {
-        kadProt = ((KademliaProtocol) (Network.get(i).getProtocol(protocolEvilKadID)));
-        dasProt = ((EvilDASProtocol) (Network.get(i).getProtocol(protocolEvilDasID)));
-        kadProt.setProtocolID(protocolEvilKadID);
-        dasProt.setDASProtocolID(protocolEvilDasID);
-        node.setEvil(true);
-
-      } else {
-        kadProt = ((KademliaProtocol) (Network.get(i).getProtocol(protocolKadID)));
-        dasProt = ((DASProtocol) (Network.get(i).getProtocol(protocolDasID)));
-        kadProt.setProtocolID(protocolKadID);
-        dasProt.setDASProtocolID(protocolDasID);
-      }
-
-      generalNode.setKademliaProtocol(kadProt);
-      generalNode.setDASProtocol(dasProt);
-      generalNode.setProtocol(protocolDasID, dasProt);
-      if (protocolEvilDasID > 0) generalNode.setProtocol(protocolEvilDasID, dasProt);
-      kadProt.setNode(node);
-
-      dasProt.setKademliaProtocol(kadProt);
-      kadProt.setEventsCallback(dasProt);
+      boolean evil = (i > 0) && (i < (numEvilNodes + 1));
+      DASProtocol dasProt = initNode(Network.get(i), urg.generate(), evil);
 
       if (i >= (numEvilNodes + 1) && i < numValidators + (numEvilNodes + 1)) {
-        assert (!node.isEvil());
+        assert (!evil);
         dasProt.setValidator(true);
         validatorsIds.add(dasProt.getKademliaId());
         validators.add(dasProt);
@@ -118,4 +89,45 @@ public class CustomDistributionDas implements peersim.core.Control {
 
     return false;
   }
+
+  /**
+   * Assigns a NodeId to a node and links its Kademlia and DAS protocols, the honest or the evil
+   * ones.
+   *
+   * @param generalNode the node
+   * @param id the NodeId
+   * @param evil whether the node runs the evil protocols
+   * @return the DAS protocol of the node
+   */
+  DASProtocol initNode(Node generalNode, BigInteger id, boolean evil) {
+    KademliaNode node = new KademliaNode(id, "0.0.0.0", 0);
+
+    KademliaProtocol kadProt = null;
+    DASProtocol dasProt = null;
+
+    if (evil) {
+      kadProt = ((KademliaProtocol) (generalNode.getProtocol(protocolEvilKadID)));
+      dasProt = ((EvilDASProtocol) (generalNode.getProtocol(protocolEvilDasID)));
+      kadProt.setProtocolID(protocolEvilKadID);
+      dasProt.setDASProtocolID(protocolEvilDasID);
+      node.setEvil(true);
+
+    } else {
+      kadProt = ((KademliaProtocol) (generalNode.getProtocol(protocolKadID)));
+      dasProt = ((DASProtocol) (generalNode.getProtocol(protocolDasID)));
+      kadProt.setProtocolID(protocolKadID);
+      dasProt.setDASProtocolID(protocolDasID);
+    }
+
+    generalNode.setKademliaProtocol(kadProt);
+    generalNode.setDASProtocol(dasProt);
+    generalNode.setProtocol(protocolDasID, dasProt);
+    if (protocolEvilDasID > 0) generalNode.setProtocol(protocolEvilDasID, dasProt);
+    kadProt.setNode(node);
+    Network.registerId(id, generalNode);
+
+    dasProt.setKademliaProtocol(kadProt);
+    kadProt.setEventsCallback(dasProt);
+    return dasProt;
+  }
 }
@@ -1,14 +1,22 @@
 package peersim.kademlia.das;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import peersim.core.CommonState;
+import peersim.core.Network;
+import peersim.kademlia.KademliaCommonConfig;
 import peersim.kademlia.KademliaObserver;
 import peersim.kademlia.Message;
 import peersim.kademlia.Util;
 import peersim.kademlia.das.operations.RandomSamplingOperationDHT;
 import peersim.kademlia.das.operations.SamplingOperation;
 import peersim.kademlia.das.operations.ValidatorSamplingOperationDHT;
-import peersim.kademlia.operations.GetOperation;
+import peersim.kademlia.operations.MultiGetOperation;
 import peersim.kademlia.operations.Operation;
 
 public class DASDHTProtocol extends DASProtocol {
@@ -40,7 +48,7 @@ public class DASDHTProtocol extends DASProtocol {
     column = new int[KademliaCommonConfigDas.BLOCK_DIM_SIZE + 1];
     if (isBuilder()) {
 
-      logger.warning("Builder new block:" + currentBlock.getBlockId());
+      logger.warning(() -> "Builder new block:" + currentBlock.getBlockId());
       while (currentBlock.hasNext()) {
         Sample s = currentBlock.next();
         Message msg = generatePutMessageSample(s);
@@ -64,12 +72,13 @@ public class DASDHTProtocol extends DASProtocol {
       for (SamplingOperation sop : samplingOp.values()) {
         KademliaObserver.reportOperation(sop);
         logger.warning(
-            "Sampling operation finished init "
-                + sop.getId()
-                + " "
-                + CommonState.getTime()
-                + " "
-                + sop.getTimestamp());
+            () ->
+                "Sampling operation finished init "
+                    + sop.getId()
+                    + " "
+                    + CommonState.getTime()
+                    + " "
+                    + sop.getTimestamp());
       }
       samplingOp.clear();
       kadOps.clear();
@@ -82,7 +91,7 @@ public class DASDHTProtocol extends DASProtocol {
     if (isBuilder()) return;
     BigInteger[] sampleId = new BigInteger[1];
     sampleId[0] = ((BigInteger) m.body);
-    logger.info("Getting sample  " + sampleId[0]);
+    logger.info(() -> "Getting sample  " + sampleId[0]);
   }
 
   /**
@@ -112,14 +121,15 @@ public class DASDHTProtocol extends DASProtocol {
    */
   protected void startRowsandColumnsSampling() {
     logger.warning(
-        "Starting rows and columns fetch "
-            + rowWithHighestNumSamples()
-            + " "
-            + row[rowWithHighestNumSamples()]
-            + " "
-            + columnWithHighestNumSamples()
-            + " "
-            + column[columnWithHighestNumSamples()]);
+        () ->
+            "Starting rows and columns fetch "
+                + rowWithHighestNumSamples()
+                + " "
+                + row[rowWithHighestNumSamples()]
+                + " "
+                + columnWithHighestNumSamples()
+                + " "
+                + column[columnWithHighestNumSamples()]);
 
     // start 2 row 2 column Validator operation (1 row/column with the highest number of samples
     // already downloaded and another random)
@@ -153,12 +163,13 @@ public class DASDHTProtocol extends DASProtocol {
     op.elaborateResponse(kv.getAll().toArray(new Sample[0]));
     samplingOp.put(op.getId(), op);
     logger.warning(
-        "Sampling operation started validator "
-            + op.getId()
-            + " "
-            + KademliaCommonConfigDas.ALPHA
-            + " "
-            + timestamp);
+        () ->
+            "Sampling operation started validator "
+                + op.getId()
+                + " "
+                + KademliaCommonConfigDas.ALPHA
+                + " "
+                + timestamp);
 
     op.setAvailableRequests(KademliaCommonConfigDas.ALPHA);
     doSampling(op);
@@ -170,25 +181,26 @@ public class DASDHTProtocol extends DASProtocol {
       samplingOp.remove(sop.getId());
       KademliaObserver.reportOperation(sop);
       logger.warning(
-          "Sampling operation finished dosampling "
-              + sop.getId()
-              + " "
-              + CommonState.getTime()
-              + " "
-              + sop.getTimestamp());
+          () ->
+              "Sampling operation finished dosampling "
+                  + sop.getId()
+                  + " "
+                  + CommonState.getTime()
+                  + " "
+                  + sop.getTimestamp());
 
       return true;
     } else {
       boolean success = false;
-      logger.warning("Dosampling " + sop.getAvailableRequests());
+      logger.warning(() -> "Dosampling " + sop.getAvailableRequests());
 
-      while (sop.getAvailableRequests() > 0 && sop.getSamples().length > 0) {
-        BigInteger[] reqSamples = sop.getSamples();
-        BigInteger sample = reqSamples[CommonState.r.nextInt(reqSamples.length)];
-        logger.warning("Requesting sample " + sample + " " + reqSamples.length);
+      while (sop.getAvailableRequests() > 0) {
+        BigInteger[] reqSamples = nextSamples(sop);
+        if (reqSamples.length == 0) break;
+        logger.warning(() -> "Requesting samples " + reqSamples[0] + " " + reqSamples.length);
         int req = sop.getAvailableRequests() - 1;
         sop.setAvailableRequests(req);
-        Message msg = generateGetMessageSample(sample);
+        Message msg = generateGetMessageSamples(reqSamples);
         Operation get = this.kadProtocol.handleInit(msg, kademliaId);
         kadOps.put(get, sop);
         success = true;
@@ -198,40 +210,71 @@ public class DASDHTProtocol extends DASProtocol {
     }
   }
 
+  /**
+   * Chooses the samples to get with the next lookup of a sampling operation: a random missing
+   * sample not requested yet, and the other ones sharing at least log2(N/K) leading bits with it,
+   * whose K closest nodes are likely the same.
+   *
+   * @param sop the sampling operation
+   * @return the samples, the one the lookup converges to first, or none if all are requested
+   */
+  private BigInteger[] nextSamples(SamplingOperation sop) {
+    Set<BigInteger> requested = new HashSet<>();
+    for (Map.Entry<Operation, SamplingOperation> e : kadOps.entrySet()) {
+      if (e.getValue() == sop && e.getKey() instanceof MultiGetOperation)
+        Collections.addAll(requested, ((MultiGetOperation) e.getKey()).getKeys());
+    }
+    List<BigInteger> candidates = new ArrayList<>();
+    for (BigInteger sample : sop.getSamples()) {
+      if (!requested.contains(sample)) candidates.add(sample);
+    }
+    if (candidates.isEmpty()) return new BigInteger[0];
+
+    BigInteger target = candidates.get(CommonState.r.nextInt(candidates.size()));
+    int ratio = Math.max(1, Network.size() / KademliaCommonConfig.K);
+    int maxDistance = KademliaCommonConfig.BITS - (31 - Integer.numberOfLeadingZeros(ratio));
+    List<BigInteger> batch = new ArrayList<>();
+    batch.add(target);
+    for (BigInteger sample : candidates) {
+      if (!sample.equals(target) && Util.logDistance(sample, target) <= maxDistance)
+        batch.add(sample);
+    }
+    return batch.toArray(new BigInteger[0]);
+  }
+
   @Override
   public void operationComplete(Operation op) {
-    logger.warning("Operation complete " + op.getClass().getSimpleName());
+    logger.warning(() -> "Operation complete " + op.getClass().getSimpleName());
 
-    if (op instanceof GetOperation) {
-      GetOperation get = (GetOperation) op;
-      Sample s = (Sample) get.getValue();
+    if (op instanceof MultiGetOperation) {
+      MultiGetOperation get = (MultiGetOperation) op;
+      Sample[] samples = get.getValues().toArray(new Sample[0]);
       SamplingOperation sop = kadOps.get(get);
-      logger.warning("Get operation DASDHT " + s + " " + sop);
+      logger.warning(() -> "Get operation DASDHT " + samples.length + " " + sop);
       kadOps.remove(get);
-      if (sop != null && s != null && !sop.completed()) {
-        Sample[] samples = {s};
+      if (sop != null && samples.length > 0 && !sop.completed()) {
         sop.elaborateResponse(samples);
         sop.addHops(get.getHops());
-        for (Long msg : get.getMessages()) {
-          sop.addMessage(msg);
-        }
+        sop.addMessages(get);
         logger.warning(
-            "Get operation completed "
-                + s.getId()
-                + " found "
-                + sop.samplesCount()
-                + " "
-                + sop.completed());
+            () ->
+                "Get operation completed "
+                    + samples.length
+                    + " found "
+                    + sop.samplesCount()
+                    + " "
+                    + sop.completed());
 
         if (sop.completed()) {
           KademliaObserver.reportOperation(sop);
           logger.warning(
-              "Sampling operation finished operationComplete "
-                  + sop.getId()
-                  + " "
-                  + CommonState.getTime()
-                  + " "
-                  + sop.getTimestamp());
+              () ->
+                  "Sampling operation finished operationComplete "
+                      + sop.getId()
+                      + " "
+                      + CommonState.getTime()
+                      + " "
+                      + sop.getTimestamp());
 
         } else doSampling(sop);
       }
@@ -241,7 +284,7 @@ public class DASDHTProtocol extends DASProtocol {
   @Override
   public void putValueReceived(Object o) {
     Sample s = (Sample) o;
-    logger.warning("Sample received put operation " + s.getId());
+    logger.warning(() -> "Sample received put operation " + s.getId());
 
     column[s.getColumn()]++;
     row[s.getRow()]++;
@@ -283,14 +326,14 @@ public class DASDHTProtocol extends DASProtocol {
 
   // ______________________________________________________________________________________________
   /**
-   * Generates a PUT message for t1 key and string message
+   * Generates a GET message for several samples, converging to the first one
    *
    * @return Message
    */
-  private Message generateGetMessageSample(BigInteger s) {
+  private Message generateGetMessageSamples(BigInteger[] s) {
 
     // Existing active destination node
-    Message m = Message.makeInitGetValue(s);
+    Message m = Message.makeInitGetValues(s[0], s);
     m.timestamp = CommonState.getTime();
 
     return m;
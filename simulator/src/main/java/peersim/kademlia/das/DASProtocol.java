@@ -183,7 +183,7 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
         Timeout t = (Timeout) event;
         if (sentMsg.containsKey(t.msgID)) { // the response msg isn't arrived
           // remove form sentMsg
-          logger.warning("Timeouuuuut! " + t.msgID);
+          logger.warning(() -> "Timeouuuuut! " + t.msgID);
           sentMsg.remove(t.msgID);
           // this.searchTable.removeNode(t.node);
           SamplingOperation sop = samplingOp.get(t.opID);
@@ -224,7 +224,7 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
   }
 
   public void setBuilder(boolean isBuilder) {
-    logger.warning("Set builder " + isBuilder + " " + this.kademliaId);
+    logger.warning(() -> "Set builder " + isBuilder + " " + this.kademliaId);
     this.isBuilder = isBuilder;
   }
 
@@ -260,14 +260,14 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
     // adding the whole block to the builder's kv store
     if (isBuilder()) {
 
-      logger.warning("Builder new block:" + currentBlock.getBlockId());
+      logger.warning(() -> "Builder new block:" + currentBlock.getBlockId());
       while (currentBlock.hasNext()) {
         Sample s = currentBlock.next();
         kv.add(s.getIdByRow(), s);
         kv.add(s.getIdByColumn(), s);
       }
     } else {
-      logger.warning("Non Builder new block:" + currentBlock.getBlockId());
+      logger.warning(() -> "Non Builder new block:" + currentBlock.getBlockId());
 
       samplingStarted = false;
       searchTable.setBlock(currentBlock);
@@ -296,8 +296,8 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
       for (SamplingOperation sop : samplingOp.values()) {
         KademliaObserver.reportOperation(sop);
         if (sop instanceof ValidatorSamplingOperation)
-          logger.warning("Sampling operation finished validator " + sop.getId());
-        else logger.warning("Sampling operation finished random " + sop.getId());
+          logger.warning(() -> "Sampling operation finished validator " + sop.getId());
+        else logger.warning(() -> "Sampling operation finished random " + sop.getId());
       }
       samplingOp.clear();
       kadOps.clear();
@@ -318,12 +318,13 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
     if (isBuilder()) return;
 
     logger.warning(
-        "Getting sample from builder "
-            + sampleId[0]
-            + " from:"
-            + builderAddress
-            + " "
-            + samplesRequested);
+        () ->
+            "Getting sample from builder "
+                + sampleId[0]
+                + " from:"
+                + builderAddress
+                + " "
+                + samplesRequested);
     Message msg = generateGetSampleMessage(sampleId);
     msg.operationId = -1;
     msg.src = this.getKademliaProtocol().getKademliaNode();
@@ -338,7 +339,7 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
 
   protected void handleGetSample(Message m, int myPid) {
     // kv is for storing the sample you have
-    logger.info("KV size " + kv.occupancy() + " from:" + m.src.getId() + " " + m.id);
+    logger.info(() -> "KV size " + kv.occupancy() + " from:" + m.src.getId() + " " + m.id);
     // sample IDs that are requested in the message
     List<BigInteger> samples = Arrays.asList((BigInteger[]) m.body);
     // samples to return
@@ -374,7 +375,7 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
               .toArray(new BigInteger[0]);
     else returnedNodes = nodes.toArray(new BigInteger[0]);
 
-    logger.info("Get sample request responding with " + s.size() + " samples");
+    logger.info(() -> "Get sample request responding with " + s.size() + " samples");
 
     Message response = new Message(Message.MSG_GET_SAMPLE_RESPONSE, returnedSamples);
     response.operationId = m.operationId;
@@ -393,16 +394,17 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
     searchTable.addNodes((BigInteger[]) m.value);
     for (Sample s : samples) {
       logger.warning(
-          "Received sample:"
-              + samples.length
-              + " "
-              + kv.occupancy()
-              + " "
-              + s.getRow()
-              + " "
-              + s.getColumn()
-              + " "
-              + samplesRequested);
+          () ->
+              "Received sample:"
+                  + samples.length
+                  + " "
+                  + kv.occupancy()
+                  + " "
+                  + s.getRow()
+                  + " "
+                  + s.getColumn()
+                  + " "
+                  + samplesRequested);
       // just to check whether we started actual sampling
       // we increase the counter when asking the builder and decrease when receiving the sample from
       // the builder
@@ -423,22 +425,23 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
       // keeping track of received samples
       op.elaborateResponse(samples);
       logger.warning(
-          "Continue operation "
-              + op.getId()
-              + " "
-              + op.getAvailableRequests()
-              + " "
-              + op.getHops()
-              + " "
-              + searchTable.nodesIndexed().size()
-              + " "
-              + ((SamplingOperation) op).samplesCount());
+          () ->
+              "Continue operation "
+                  + op.getId()
+                  + " "
+                  + op.getAvailableRequests()
+                  + " "
+                  + op.getHops()
+                  + " "
+                  + searchTable.nodesIndexed().size()
+                  + " "
+                  + ((SamplingOperation) op).samplesCount());
 
       if (!op.completed() && op.getHops() < KademliaCommonConfigDas.MAX_HOPS) {
         BigInteger[] nextNodes = op.doSampling();
 
         for (BigInteger nextNode : nextNodes) {
-          logger.warning("sending to node " + nextNode);
+          logger.warning(() -> "sending to node " + nextNode);
           BigInteger[] reqSamples = op.getSamples();
           Message msg = generateGetSampleMessage(reqSamples);
           msg.operationId = op.getId();
@@ -449,23 +452,25 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
             logger.warning("Error sending to builder or 0 samples assigned");
             continue;
           }*/
-          op.addMessage(msg.id);
+          op.addMessage(msg);
           sendMessage(msg, nextNode, myPid);
           op.increaseHops();
         }
         if (nextNodes.length == 0) {
           logger.warning(
-              "No left nodes to ask "
-                  + op.getAvailableRequests()
-                  + " "
-                  + kadOps.size()
-                  + " "
-                  + op.getSamples().length);
+              () ->
+                  "No left nodes to ask "
+                      + op.getAvailableRequests()
+                      + " "
+                      + kadOps.size()
+                      + " "
+                      + op.getSamples().length);
           if (op.getAvailableRequests() == KademliaCommonConfigDas.ALPHA) {
-            for (BigInteger sample : op.getSamples()) logger.warning("Missing sample " + sample);
+            for (BigInteger sample : op.getSamples())
+              logger.warning(() -> "Missing sample " + sample);
             while (!doSampling(op)) {
               op.increaseRadius(2);
-              logger.warning("Increasing radius " + op.getId());
+              logger.warning(() -> "Increasing radius " + op.getId());
             }
             /*samplingOp.remove(m.operationId);
             logger.warning("Sampling operation finished");
@@ -477,8 +482,8 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
         logger.warning("Operation completed");
         samplingOp.remove(m.operationId);
         if (op instanceof ValidatorSamplingOperation)
-          logger.warning("Sampling operation finished validator completed " + op.getId());
-        else logger.warning("Sampling operation finished random completed " + op.getId());
+          logger.warning(() -> "Sampling operation finished validator completed " + op.getId());
+        else logger.warning(() -> "Sampling operation finished random completed " + op.getId());
         KademliaObserver.reportOperation(op);
       }
       // We start a new operation
@@ -520,7 +525,7 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
     if (m.getType() == Message.MSG_GET_SAMPLE) { // is a request
       Timeout t = new Timeout(destId, m.id, m.operationId);
       long latency = transport.getLatency(src, dest);
-      logger.warning("Send message added " + m.id + " " + latency);
+      logger.warning(() -> "Send message added " + m.id + " " + latency);
 
       // add to sent msg
       this.sentMsg.put(m.id, m.timestamp);
@@ -571,6 +576,10 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
     validatorsList = ids;
   }
 
+  public BigInteger[] getKnownValidators() {
+    return validatorsList;
+  }
+
   /**
    * Starts the random sampling operation
    *
@@ -600,14 +609,15 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
    */
   protected void startRowsandColumnsSampling() {
     logger.warning(
-        "Starting rows and columns fetch "
-            + rowWithHighestNumSamples()
-            + " "
-            + row[rowWithHighestNumSamples()]
-            + " "
-            + columnWithHighestNumSamples()
-            + " "
-            + column[columnWithHighestNumSamples()]);
+        () ->
+            "Starting rows and columns fetch "
+                + rowWithHighestNumSamples()
+                + " "
+                + row[rowWithHighestNumSamples()]
+                + " "
+                + columnWithHighestNumSamples()
+                + " "
+                + column[columnWithHighestNumSamples()]);
 
     // start 2 row 2 column Validator operation (1 row/column with the highest number of samples
     // already downloaded and another random)
@@ -626,24 +636,25 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
       KademliaObserver.reportOperation(sop);
       // logger.warning("Sampling operation finished " + sop.getId());
       if (sop instanceof ValidatorSamplingOperation)
-        logger.warning("Sampling operation finished validator dosampling " + sop.getId());
-      else logger.warning("Sampling operation finished random dosampling " + sop.getId());
+        logger.warning(() -> "Sampling operation finished validator dosampling " + sop.getId());
+      else logger.warning(() -> "Sampling operation finished random dosampling " + sop.getId());
       return true;
     } else {
       boolean success = false;
-      logger.warning("Dosampling " + sop.getAvailableRequests());
+      logger.warning(() -> "Dosampling " + sop.getAvailableRequests());
       BigInteger[] nextNodes = sop.doSampling();
       for (BigInteger nextNode : nextNodes) {
         BigInteger[] reqSamples = sop.getSamples();
         logger.warning(
-            "sending to node "
-                + nextNode
-                + " "
-                + reqSamples.length
-                + " "
-                + sop.getAvailableRequests()
-                + " "
-                + sop.getId());
+            () ->
+                "sending to node "
+                    + nextNode
+                    + " "
+                    + reqSamples.length
+                    + " "
+                    + sop.getAvailableRequests()
+                    + " "
+                    + sop.getId());
 
         Message msg = generateGetSampleMessage(reqSamples);
         msg.operationId = sop.getId();
@@ -654,7 +665,7 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
           logger.warning("Error sending to builder or 0 samples assigned");
           continue;
         }*/
-        sop.addMessage(msg.id);
+        sop.addMessage(msg);
         // logger.warning("Send message " + dasID + " " + this);
         sendMessage(msg, nextNode, dasID);
         sop.getMessages();
@@ -675,7 +686,7 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
             this.isValidator,
             this);
     samplingOp.put(op.getId(), op);
-    logger.warning("Sampling operation started validator " + op.getId());
+    logger.warning(() -> "Sampling operation started validator " + op.getId());
 
     op.elaborateResponse(kv.getAll().toArray(new Sample[0]));
     op.setAvailableRequests(KademliaCommonConfigDas.ALPHA);
@@ -699,20 +710,27 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
   public void operationComplete(Operation op) {
     if (op instanceof FindOperation) {
       logger.warning(
-          "Findoperation complete with result " + op.isFinished() + " " + kadOps.size() + " " + op);
+          () ->
+              "Findoperation complete with result "
+                  + op.isFinished()
+                  + " "
+                  + kadOps.size()
+                  + " "
+                  + op);
       FindOperation fop = (FindOperation) op;
       List<BigInteger> list = fop.getNeighboursList();
       list.remove(builderAddress);
       searchTable.addNodes(list.toArray(new BigInteger[0]));
       logger.warning(
-          "Search table operation complete"
-              // + searchTable.samplesIndexed().size()
-              // + " "
-              + searchTable.nodesIndexed().size()
-              + " "
-              //       + kadOps.get(op).nrHops
-              //       + " "
-              + list.size());
+          () ->
+              "Search table operation complete"
+                  // + searchTable.samplesIndexed().size()
+                  // + " "
+                  + searchTable.nodesIndexed().size()
+                  + " "
+                  //       + kadOps.get(op).nrHops
+                  //       + " "
+                  + list.size());
 
       if (kadOps.get(op) == null) return;
 
@@ -721,10 +739,11 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
       }
 
       logger.warning(
-          "Sampling operation found "
-              + kadOps.size()
-              + " "
-              + kadOps.get(op).getAvailableRequests());
+          () ->
+              "Sampling operation found "
+                  + kadOps.size()
+                  + " "
+                  + kadOps.get(op).getAvailableRequests());
       kadOps.remove(op);
     }
   }
@@ -744,12 +763,13 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
     }
     searchTable.addNodes(list.toArray(new BigInteger[0]));
     logger.warning(
-        "Search table nodes found "
-            // + searchTable.samplesIndexed().size()
-            // + " "
-            + searchTable.nodesIndexed().size()
-            + " "
-            + neighbours.length);
+        () ->
+            "Search table nodes found "
+                // + searchTable.samplesIndexed().size()
+                // + " "
+                + searchTable.nodesIndexed().size()
+                + " "
+                + neighbours.length);
 
     if (kadOps.get(op) != null) {
       if (!kadOps.get(op).completed()) {
@@ -762,7 +782,7 @@ public class DASProtocol implements Cloneable, EDProtocol, KademliaEvents, Missi
   @Override
   public void missing(BigInteger sample, Operation op) {
 
-    logger.warning("Missing nodes for sample " + sample + " " + kadOps.size());
+    logger.warning(() -> "Missing nodes for sample " + sample + " " + kadOps.size());
     /*if (!queried.contains(sample) && kadOps.size() < 3) {
       Message lookup = Util.generateFindNodeMessage(sample);
       Operation lop = this.kadProtocol.handleInit(lookup, kademliaId);
@@ -14,7 +14,7 @@ public class EvilDASProtocol extends DASProtocol {
   @Override
   protected void handleGetSample(Message m, int myPid) {
     /** Ignore sample request * */
-    logger.warning("Handle get sample - return nothing " + this);
+    logger.warning(() -> "Handle get sample - return nothing " + this);
   }
 
   @Override
@@ -24,7 +24,7 @@ public class EvilDASProtocol extends DASProtocol {
 
   @Override
   protected void handleInitGetSample(Message m, int myPid) {
-    logger.warning("Init block evil node - getting samples " + this);
+    logger.warning(() -> "Init block evil node - getting samples " + this);
     // super.handleInitGetSample(m, myPid);
   }
 
@@ -0,0 +1,298 @@
+package peersim.kademlia.das;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Network;
+import peersim.core.Node;
+import peersim.edsim.EDSimulator;
+import peersim.kademlia.KademliaCommonConfig;
+import peersim.kademlia.KademliaProtocol;
+import peersim.kademlia.RoutingTable;
+import peersim.util.ExtendedRandom;
+
+/**
+ * This initializer saves the network built by other initializers to a file, so that the following
+ * runs restore it instead of building it again. The initializers are given as its own, with the
+ * prefix <code>init</code>, and one of them must be a {@link CustomDistributionDas}:
+ *
+ * <pre>
+ * init.0checkpoint peersim.kademlia.das.NetworkCheckpoint
+ * init.0checkpoint.file network.ckpt
+ * init.0checkpoint.init.1uniqueNodeID peersim.kademlia.das.CustomDistributionDas
+ * init.0checkpoint.init.2statebuilder peersim.kademlia.StateBuilder
+ * </pre>
+ *
+ * If the file does not exist, the initializers are run and the network is saved: the order of the
+ * nodes, their NodeIds, evil, validator and builder roles, the known validators, the routing
+ * tables, the simulated time and the state of {@link CommonState#r}. Otherwise the initializers are
+ * not run and the network is restored from the file, so that the simulation continues exactly as
+ * after running them.
+ *
+ * <p>The file must be saved with the same configuration, as only the size of the network and the
+ * bits of the NodeIds are checked. The search tables are empty after the initialization and the
+ * initializers must not schedule events, which cannot be saved. The random generator is replaced in
+ * {@link CommonState#r}, so the components created before this initializer that keep it draw from
+ * the previous one. With more than one experiment, all of them start from the same network.
+ */
+public class NetworkCheckpoint implements Control {
+
+  // ______________________________________________________________________________________________
+  /**
+   * The file of the saved network.
+   *
+   * @config
+   */
+  private static final String PAR_FILE = "file";
+
+  /**
+   * The initializers that build the network when it is not saved.
+   *
+   * @config
+   */
+  private static final String PAR_INIT = "init";
+
+  private static final String MAGIC = "peersim.kademlia.das.NetworkCheckpoint";
+
+  private static final int VERSION = 1;
+
+  /** A missing NodeId or validator list */
+  private static final int NONE = -1;
+
+  /** A NodeId that is not in the network, followed by its bytes */
+  private static final int OUTSIDE = -2;
+
+  /** A validator list that is the same as the one of the previous node */
+  private static final int SAME = -2;
+
+  private final String prefix;
+
+  private final File file;
+
+  private final Control[] inits;
+
+  private final CustomDistributionDas distribution;
+
+  // ______________________________________________________________________________________________
+  public NetworkCheckpoint(String prefix) {
+    this.prefix = prefix;
+    file = new File(Configuration.getString(prefix + "." + PAR_FILE));
+
+    Object[] tmp = Configuration.getInstanceArray(prefix + "." + PAR_INIT);
+    inits = new Control[tmp.length];
+    CustomDistributionDas found = null;
+    for (int i = 0; i < tmp.length; ++i) {
+      inits[i] = (Control) tmp[i];
+      if (tmp[i] instanceof CustomDistributionDas) found = (CustomDistributionDas) tmp[i];
+    }
+    if (found == null)
+      throw new IllegalParameterException(
+          prefix + "." + PAR_INIT, "No CustomDistributionDas to assign the saved NodeIds");
+    distribution = found;
+  }
+
+  // ______________________________________________________________________________________________
+  /**
+   * Restores the network from the file, or builds it with the initializers and saves it.
+   *
+   * @return always false
+   */
+  public boolean execute() {
+    // the nodes as created, as the initializers may reorder them
+    Node[] created = new Node[Network.size()];
+    for (int i = 0; i < created.length; ++i) created[i] = Network.get(i);
+
+    try {
+      if (file.exists()) {
+        restore(created);
+        System.err.println("NetworkCheckpoint: restored " + created.length + " nodes from " + file);
+      } else {
+        int pending = EDSimulator.pendingEvents();
+        for (Control init : inits) init.execute();
+        if (EDSimulator.pendingEvents() != pending)
+          throw new IllegalParameterException(
+              prefix + "." + PAR_INIT, "The initializers scheduled events, which cannot be saved");
+        save(created);
+        System.err.println("NetworkCheckpoint: saved " + created.length + " nodes to " + file);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return false;
+  }
+
+  // ______________________________________________________________________________________________
+  private void save(Node[] created) throws IOException {
+    IdentityHashMap<Node, Integer> createdIndex = new IdentityHashMap<>();
+    for (int i = 0; i < created.length; ++i) createdIndex.put(created[i], i);
+    HashMap<BigInteger, Integer> position = new HashMap<>();
+    for (int i = 0; i < Network.size(); ++i) position.put(getKad(i).getKademliaNode().getId(), i);
+
+    // written to a temporary file first, not to leave a partial network to restore
+    File tmp = new File(file.getPath() + ".tmp");
+    try (ObjectOutputStream out =
+        new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+      out.writeUTF(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(Network.size());
+      out.writeInt(KademliaCommonConfig.BITS);
+      out.writeLong(CommonState.getTime());
+
+      // the NodeIds first, as the rest refers to the nodes by position
+      for (int i = 0; i < Network.size(); ++i) {
+        Node node = Network.get(i);
+        out.writeInt(createdIndex.get(node));
+        writeId(out, getKad(i).getKademliaNode().getId());
+        out.writeBoolean(getKad(i).getKademliaNode().isEvil());
+      }
+
+      BigInteger[] previous = null;
+      for (int i = 0; i < Network.size(); ++i) {
+        DASProtocol das = Network.get(i).getDASProtocol();
+        out.writeBoolean(das.isValidator());
+        out.writeBoolean(das.isBuilder());
+        writeNode(out, das.getBuilderAddress(), position);
+
+        BigInteger[] validators = das.getKnownValidators();
+        if (validators == null) out.writeInt(NONE);
+        else if (validators == previous || Arrays.equals(validators, previous)) out.writeInt(SAME);
+        else {
+          out.writeInt(validators.length);
+          for (BigInteger id : validators) writeNode(out, id, position);
+          previous = validators;
+        }
+      }
+
+      for (int i = 0; i < Network.size(); ++i) {
+        BigInteger[] neighbours = getKad(i).getRoutingTable().getAllNeighbours();
+        out.writeInt(neighbours.length);
+        for (BigInteger id : neighbours) writeNode(out, id, position);
+      }
+
+      out.writeObject(CommonState.r);
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  // ______________________________________________________________________________________________
+  private void restore(Node[] created) throws IOException {
+    try (ObjectInputStream in =
+        new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (!in.readUTF().equals(MAGIC) || in.readInt() != VERSION)
+        throw new IllegalParameterException(prefix + "." + PAR_FILE, "Not a saved network");
+      int size = in.readInt();
+      int bits = in.readInt();
+      if (size != Network.size() || bits != KademliaCommonConfig.BITS)
+        throw new IllegalParameterException(
+            prefix + "." + PAR_FILE,
+            "Saved network of "
+                + size
+                + " nodes with "
+                + bits
+                + " bits NodeIds, expected "
+                + Network.size()
+                + " nodes with "
+                + KademliaCommonConfig.BITS
+                + " bits");
+      CommonState.setTime(in.readLong());
+
+      Node[] nodes = new Node[size];
+      DASProtocol[] das = new DASProtocol[size];
+      BigInteger[] ids = new BigInteger[size];
+      for (int i = 0; i < size; ++i) {
+        nodes[i] = created[in.readInt()];
+        ids[i] = readId(in);
+        das[i] = distribution.initNode(nodes[i], ids[i], in.readBoolean());
+      }
+
+      BigInteger[] validators = null;
+      for (int i = 0; i < size; ++i) {
+        das[i].setValidator(in.readBoolean());
+        if (in.readBoolean()) das[i].setBuilder(true);
+        BigInteger builder = readNode(in, ids);
+        if (builder != null) das[i].setBuilderAddress(builder);
+
+        // the nodes that knew the same validators share the list
+        int count = in.readInt();
+        if (count == NONE) continue;
+        if (count != SAME) {
+          validators = new BigInteger[count];
+          for (int j = 0; j < count; ++j) validators[j] = readNode(in, ids);
+        }
+        das[i].addKnownValidator(validators);
+      }
+
+      for (int i = 0; i < size; ++i) {
+        RoutingTable table = das[i].getKademliaProtocol().getRoutingTable();
+        int count = in.readInt();
+        for (int j = 0; j < count; ++j) table.addNeighbour(readNode(in, ids));
+      }
+
+      try {
+        CommonState.r = (ExtendedRandom) in.readObject();
+      } catch (ClassNotFoundException e) {
+        throw new IllegalParameterException(prefix + "." + PAR_FILE, e.toString());
+      }
+
+      IdentityHashMap<Node, Integer> position = new IdentityHashMap<>();
+      for (int i = 0; i < size; ++i) position.put(nodes[i], i);
+      Network.sort((n1, n2) -> Integer.compare(position.get(n1), position.get(n2)));
+    }
+  }
+
+  // ______________________________________________________________________________________________
+  private static KademliaProtocol getKad(int i) {
+    return Network.get(i).getKademliaProtocol();
+  }
+
+  private static void writeId(ObjectOutputStream out, BigInteger id) throws IOException {
+    byte[] bytes = id.toByteArray();
+    out.writeShort(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Writes a NodeId as the position of its node, or as {@link #OUTSIDE} followed by the NodeId if
+   * it is not in the network, or as {@link #NONE} if it is null.
+   */
+  private static void writeNode(
+      ObjectOutputStream out, BigInteger id, HashMap<BigInteger, Integer> position)
+      throws IOException {
+    Integer p = id == null ? null : position.get(id);
+    if (p != null) out.writeInt(p);
+    else if (id == null) out.writeInt(NONE);
+    else {
+      out.writeInt(OUTSIDE);
+      writeId(out, id);
+    }
+  }
+
+  private static BigInteger readNode(ObjectInputStream in, BigInteger[] ids) throws IOException {
+    int p = in.readInt();
+    if (p == NONE) return null;
+    if (p == OUTSIDE) return readId(in);
+    return ids[p];
+  }
+
+  private static BigInteger readId(ObjectInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readUnsignedShort()];
+    in.readFully(bytes);
+    return new BigInteger(bytes);
+  }
+}
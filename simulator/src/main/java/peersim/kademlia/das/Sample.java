@@ -1,10 +1,12 @@
 package peersim.kademlia.das;
 
 import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
+/**
+ * A sample of a {@link Block}. Samples are lightweight views created by the block when needed: two
+ * instances with the same block id, row and column are equal. The ids are computed by the block on
+ * first use.
+ */
 public class Sample {
 
   /** Row and column numbers of a sample within a block */
@@ -27,7 +29,6 @@ public class Sample {
     this.row = row;
     this.column = column;
     this.blockId = blockId;
-    computeID();
   }
 
   /**
@@ -49,38 +50,11 @@ public class Sample {
   /** Map this sample to the DHT keyspace */
   public void computeID() {
     if (KademliaCommonConfigDas.MAPPING_FN == KademliaCommonConfigDas.SAMPLE_MAPPING_RANDOM) {
-      try {
-        String idName =
-            String.valueOf(blockId) + "_" + String.valueOf(row) + "x" + String.valueOf(column);
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] hash = digest.digest(idName.getBytes(StandardCharsets.UTF_8));
-        // this.id = new BigInteger(1, hash);
-        this.idByColumn = new BigInteger(1, hash);
-        this.idByRow = new BigInteger(1, hash);
-      } catch (NoSuchAlgorithmException e) {
-        e.printStackTrace();
-      }
+      this.idByRow = this.idByColumn = block.getIdByRow(row, column);
     } else if (KademliaCommonConfigDas.MAPPING_FN
         == KademliaCommonConfigDas.SAMPLE_MAPPING_REGION_BASED) {
-      /*System.out.println(
-      "ComputeId "
-          + this.row
-          + " "
-          + this.column
-          + " "
-          + this.sampleNumberByRow()
-          + " "
-          + this.sampleNumberByColumn());*/
-      this.idByRow =
-          Block.INTER_SAMPLE_GAP
-              .multiply(BigInteger.valueOf(this.sampleNumberByRow()))
-              .add(BigInteger.valueOf(blockId));
-      this.idByColumn =
-          Block.INTER_SAMPLE_GAP
-              .multiply(BigInteger.valueOf(this.sampleNumberByColumn()))
-              .add(BigInteger.valueOf(blockId))
-              .add(BigInteger.valueOf(1));
-
+      this.idByRow = block.getIdByRow(row, column);
+      this.idByColumn = block.getIdByColumn(row, column);
     } else {
       System.out.println("Error: invalid selection for sample mapping function");
       System.exit(1);
@@ -96,8 +70,8 @@ public class Sample {
   /** Given the peerID of a node, determine if this sample falls within the region of the node. */
   public boolean isInRegionByColumn(BigInteger peerID, BigInteger radius) {
     /** (peerID - radius) < this.id < (peerID + radius) */
-    if ((this.idByColumn.compareTo(peerID.subtract(radius)) == 1)
-        && (this.idByColumn.compareTo(peerID.add(radius)) == -1)) {
+    if ((getIdByColumn().compareTo(peerID.subtract(radius)) == 1)
+        && (getIdByColumn().compareTo(peerID.add(radius)) == -1)) {
       return true;
     } else {
       return false;
@@ -107,8 +81,8 @@ public class Sample {
   /** Given the peerID of a node, determine if this sample falls within the region of the node. */
   public boolean isInRegionByRow(BigInteger peerID, BigInteger radius) {
     /** (peerID - radius) < this.id < (peerID + radius) */
-    if ((this.idByRow.compareTo(peerID.subtract(radius)) == 1)
-        && (this.idByRow.compareTo(peerID.add(radius)) == -1)) {
+    if ((getIdByRow().compareTo(peerID.subtract(radius)) == 1)
+        && (getIdByRow().compareTo(peerID.add(radius)) == -1)) {
       return true;
     } else {
       return false;
@@ -132,7 +106,7 @@ public class Sample {
 
   /** Computed identifier of the sample, depending of the mapping mode */
   public BigInteger getId() {
-    return idByRow;
+    return getIdByRow();
   }
 
   /**
@@ -140,6 +114,7 @@ public class Sample {
    * case of random mapping
    */
   public BigInteger getIdByRow() {
+    if (idByRow == null) computeID();
     return idByRow;
   }
 
@@ -148,6 +123,20 @@ public class Sample {
    * case of random mapping
    */
   public BigInteger getIdByColumn() {
+    if (idByColumn == null) computeID();
     return idByColumn;
   }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) return true;
+    if (!(o instanceof Sample)) return false;
+    Sample s = (Sample) o;
+    return blockId == s.blockId && row == s.row && column == s.column;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (blockId * 31 + row) * 31 + column;
+  }
 }
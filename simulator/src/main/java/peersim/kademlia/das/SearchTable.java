@@ -2,10 +2,10 @@ package peersim.kademlia.das;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -19,12 +19,16 @@ public class SearchTable {
 
   private HashSet<BigInteger> blackList; // , samplesIndexed;
 
+  /** Nodes added to nodesIndexed, in order, so that the operations can index them incrementally */
+  private ArrayList<BigInteger> nodesAdded;
+
   public SearchTable(Block currentblock) {
 
     this.currentBlock = currentblock;
     // this.sampleMap = new HashMap<>();
     this.nodesIndexed = new TreeSet<>();
     this.blackList = new HashSet<>();
+    this.nodesAdded = new ArrayList<>();
   }
 
   public void setBlock(Block currentBlock) {
@@ -51,7 +55,7 @@ public class SearchTable {
   public void addNodes(BigInteger[] nodes) {
 
     for (BigInteger id : nodes) {
-      if (!blackList.contains(id)) nodesIndexed.add(id);
+      if (!blackList.contains(id) && nodesIndexed.add(id)) nodesAdded.add(id);
     }
   }
 
@@ -64,22 +68,50 @@ public class SearchTable {
     return nodesIndexed;
   }
 
+  public boolean contains(BigInteger node) {
+    return nodesIndexed.contains(node);
+  }
+
+  /** Returns the number of nodes added so far, including the ones removed afterwards. */
+  public int nodesAddedCount() {
+    return nodesAdded.size();
+  }
+
+  /**
+   * Returns a node added to the table.
+   *
+   * @param i the position of the node in the order in which the nodes were added
+   */
+  public BigInteger nodeAdded(int i) {
+    return nodesAdded.get(i);
+  }
+
   /*public HashSet<BigInteger> samplesIndexed() {
     return samplesIndexed;
   }*/
 
   public List<BigInteger> getNodesbySample(BigInteger sampleId, BigInteger radius) {
 
-    BigInteger bottom = sampleId.subtract(radius);
-    if (radius.compareTo(sampleId) == 1) bottom = BigInteger.ZERO;
+    return new ArrayList<BigInteger>(getNodesInRange(sampleId, radius));
+
+    // return sampleMap.get(sampleId);
+
+  }
 
-    BigInteger top = sampleId.add(radius);
+  /**
+   * Returns a view of the nodes at most radius away from an ID, without copying them.
+   *
+   * @param id the center of the range
+   * @param radius the maximum distance
+   */
+  public NavigableSet<BigInteger> getNodesInRange(BigInteger id, BigInteger radius) {
 
-    Collection<BigInteger> subSet = nodesIndexed.subSet(bottom, true, top, true);
-    return new ArrayList<BigInteger>(subSet);
+    BigInteger bottom = id.subtract(radius);
+    if (radius.compareTo(id) == 1) bottom = BigInteger.ZERO;
 
-    // return sampleMap.get(sampleId);
+    BigInteger top = id.add(radius);
 
+    return nodesIndexed.subSet(bottom, true, top, true);
   }
 
   public List<BigInteger> getNodesbySample(Set<BigInteger> samples, BigInteger radius) {
@@ -3,9 +3,11 @@ package peersim.kademlia.das;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import peersim.config.Configuration;
 import peersim.core.CommonState;
@@ -55,6 +57,9 @@ public class TrafficGeneratorSample implements Control {
 
   private HashMap<BigInteger, Node> nodeMap;
   private HashSet<BigInteger> nodesMissing;
+
+  /** Nodes of the network sorted by Kademlia ID, rebuilt for every block */
+  private TreeMap<BigInteger, Node> nodesById;
   // ______________________________________________________________________________________________
   public TrafficGeneratorSample(String prefix) {
 
@@ -135,6 +140,37 @@ public class TrafficGeneratorSample implements Control {
     return new ArrayList<BigInteger>(subSet);
   }
 
+  /** Indexes the nodes currently in the network by Kademlia ID. */
+  private void indexNodes() {
+    nodesById = new TreeMap<>();
+    for (int i = 0; i < Network.size(); i++) {
+      Node n = Network.get(i);
+      nodesById.put(((DASProtocol) n.getDASProtocol()).getKademliaId(), n);
+    }
+  }
+
+  /**
+   * Returns the nodes whose region contains the sample, either by row or by column id, in the order
+   * of the network. It gives the same nodes as checking {@link Sample#isInRegionByRow} and {@link
+   * Sample#isInRegionByColumn} for every node, with two range queries on the index.
+   */
+  private List<Node> getNodesInRegion(Sample s, BigInteger radius) {
+    List<Node> result =
+        new ArrayList<>(
+            nodesById
+                .subMap(s.getIdByRow().subtract(radius), false, s.getIdByRow().add(radius), false)
+                .values());
+    for (Node n :
+        nodesById
+            .subMap(s.getIdByColumn().subtract(radius), false, s.getIdByColumn().add(radius), false)
+            .values()) {
+      if (!s.isInRegionByRow(((DASProtocol) n.getDASProtocol()).getKademliaId(), radius))
+        result.add(n);
+    }
+    result.sort(Comparator.comparingInt(Node::getIndex));
+    return result;
+  }
+
   // ______________________________________________________________________________________________
   /**
    * every call of this control generates and send a random find node message
@@ -205,6 +241,7 @@ public class TrafficGeneratorSample implements Control {
       Block b = new Block(KademliaCommonConfigDas.BLOCK_DIM_SIZE, ID_GENERATOR);
       int samplesWithinRegion = 0; // samples that are within at least one node's region
       int totalSamples = 0;
+      indexNodes();
 
       while (b.hasNext()) {
         Sample s = b.next();
@@ -224,14 +261,9 @@ public class TrafficGeneratorSample implements Control {
                 + radius);
 
         while (!inRegion) {
-          for (int i = 0; i < Network.size(); i++) {
-            Node n = Network.get(i);
+          for (Node n : getNodesInRegion(s, radius)) {
             DASProtocol dasProt = ((DASProtocol) (n.getDASProtocol()));
-            // if (dasProt.isBuilder()) EDSimulator.add(0, generateNewBlockMessage(s), n, daspid);
-            // else
-            if (n.isUp()
-                && (s.isInRegionByRow(dasProt.getKademliaId(), radius)
-                    || s.isInRegionByColumn(dasProt.getKademliaId(), radius))) {
+            if (n.isUp()) {
               totalSamples++;
               EDSimulator.add(
                   1, generateNewSampleMessage(s.getIdByColumn()), n, dasProt.getDASProtocolID());
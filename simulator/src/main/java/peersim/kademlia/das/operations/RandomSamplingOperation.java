@@ -44,8 +44,8 @@ public class RandomSamplingOperation extends SamplingOperation {
 
     randomSamples = currentBlock.getNRandomSamples(KademliaCommonConfigDas.N_SAMPLES);
     for (Sample rs : randomSamples) {
-      samples.put(rs.getId(), false);
-      samples.put(rs.getIdByColumn(), false);
+      addSample(rs.getId());
+      addSample(rs.getIdByColumn());
     }
   }
 
@@ -71,14 +71,7 @@ public class RandomSamplingOperation extends SamplingOperation {
 
   public boolean completed() {
 
-    boolean completed = true;
-    for (BigInteger id : samples.keySet()) {
-      if (!samples.get(id)) {
-        completed = false;
-        break;
-      }
-    }
-    return completed;
+    return missingSamples() == 0;
   }
 
   public BigInteger[] doSampling() {
@@ -106,10 +99,8 @@ public class RandomSamplingOperation extends SamplingOperation {
     for (Sample s : sam) {
       if (samples.containsKey(s.getId()) && samples.containsKey(s.getIdByColumn())) {
         if (!samples.get(s.getId()) && !samples.get(s.getIdByColumn())) {
-          samples.remove(s.getId());
-          samples.remove(s.getIdByColumn());
-          samples.put(s.getIdByColumn(), true);
-          samples.put(s.getId(), true);
+          receiveSample(s.getIdByColumn());
+          receiveSample(s.getId());
           samplesCount++;
         }
       }
@@ -124,7 +115,7 @@ public class RandomSamplingOperation extends SamplingOperation {
     result.put("id", this.operationId);
     result.put("src", this.srcNode);
     result.put("type", "RandomSamplingOperation");
-    result.put("messages", getMessagesString());
+    putMessages(result);
     result.put("start", this.timestamp);
     result.put("completion_time", this.stopTime);
     result.put("hops", this.nrHops);
@@ -20,9 +20,9 @@ public class RandomSamplingOperationDHT extends RandomSamplingOperation {
     super(srcNode, destNode, timestamp, currentBlock, searchTable, isValidator, callback);
 
     Sample[] randomSamples = currentBlock.getNRandomSamples(KademliaCommonConfigDas.N_SAMPLES);
-    samples.clear();
+    clearSamples();
     for (Sample rs : randomSamples) {
-      samples.put(rs.getId(), false);
+      addSample(rs.getId());
     }
   }
 
@@ -32,8 +32,7 @@ public class RandomSamplingOperationDHT extends RandomSamplingOperation {
     for (Sample s : sam) {
       if (samples.containsKey(s.getId())) {
         if (!samples.get(s.getId())) {
-          samples.remove(s.getId());
-          samples.put(s.getId(), true);
+          receiveSample(s.getId());
           samplesCount++;
         }
       }
@@ -2,9 +2,12 @@ package peersim.kademlia.das.operations;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import peersim.core.CommonState;
 import peersim.kademlia.das.Block;
 import peersim.kademlia.das.KademliaCommonConfigDas;
 import peersim.kademlia.das.MissingNode;
@@ -21,14 +24,46 @@ public abstract class SamplingOperation extends FindOperation {
   protected boolean isValidator;
   protected MissingNode callback;
   protected Block currentBlock;
-  // protected HashSet<BigInteger> queried;
+  /** Nodes already queried for samples by this operation */
+  protected HashSet<BigInteger> queried;
 
   protected BigInteger radius;
 
+  /**
+   * Index of the samples still missing and the nodes of the search table that can provide them,
+   * used to choose the next node to query without scanning all the samples. It is built the first
+   * time a node is needed and kept up to date as samples are received and nodes are added to the
+   * search table; it is built again when the radius changes.
+   */
+  private TreeSet<BigInteger> missing;
+
+  /** The missing samples as returned by getSamples, null if they changed since */
+  private BigInteger[] missingArray;
+
+  /** Candidates not queried yet, by node */
+  private HashMap<BigInteger, Candidate> candidates;
+
+  /** Candidates covering at least one missing sample, the ones covering more samples first */
+  private TreeSet<Candidate> ranking;
+
+  /** Number of indexed nodes within the radius of each missing sample */
+  private HashMap<BigInteger, Integer> coverage;
+
+  /** Missing samples without any indexed node within the radius */
+  private TreeSet<BigInteger> uncovered;
+
+  /** Radius used to build the index, null if it has to be built */
+  private BigInteger indexedRadius;
+
+  /** Number of nodes added to the search table already indexed */
+  private int indexedNodes;
+
   public SamplingOperation(
       BigInteger srcNode, BigInteger destNode, long timestamp, Block block, boolean isValidator) {
     super(srcNode, destNode, timestamp);
     samples = new HashMap<BigInteger, Boolean>();
+    missing = new TreeSet<BigInteger>();
+    queried = new HashSet<BigInteger>();
     completed = false;
     this.isValidator = isValidator;
     currentBlock = block;
@@ -44,6 +79,8 @@ public abstract class SamplingOperation extends FindOperation {
       MissingNode callback) {
     super(srcNode, destNode, timestamp);
     samples = new HashMap<BigInteger, Boolean>();
+    missing = new TreeSet<BigInteger>();
+    queried = new HashSet<BigInteger>();
     completed = false;
     this.isValidator = isValidator;
     this.callback = callback;
@@ -51,7 +88,6 @@ public abstract class SamplingOperation extends FindOperation {
 
     radius = currentBlock.computeRegionRadius(KademliaCommonConfigDas.NUM_SAMPLE_COPIES_PER_PEER);
 
-    // queried = new HashSet<>();
     // TODO Auto-generated constructor stub
   }
   // public abstract void elaborateResponse(Sample[] sam);
@@ -61,13 +97,56 @@ public abstract class SamplingOperation extends FindOperation {
   // public abstract BigInteger[] getSamples(BigInteger peerId);
 
   public BigInteger[] getSamples() {
-    List<BigInteger> result = new ArrayList<>();
+    if (missingArray == null) missingArray = missing.toArray(new BigInteger[0]);
+    return missingArray;
+  }
+
+  /**
+   * Adds a sample to the ones to collect.
+   *
+   * @param sample the ID of the sample
+   */
+  protected void addSample(BigInteger sample) {
+    if (samples.putIfAbsent(sample, false) != null) return;
+    missing.add(sample);
+    missingArray = null;
+    indexedRadius = null;
+  }
 
-    for (BigInteger sample : samples.keySet()) {
-      if (!samples.get(sample)) result.add(sample);
+  /** Removes all the samples to collect. */
+  protected void clearSamples() {
+    samples.clear();
+    missing.clear();
+    missingArray = null;
+    indexedRadius = null;
+  }
+
+  /**
+   * Marks a sample as received.
+   *
+   * @param sample the ID of the sample
+   * @return true if the sample was missing
+   */
+  protected boolean receiveSample(BigInteger sample) {
+    if (!missing.remove(sample)) return false;
+    samples.put(sample, true);
+    missingArray = null;
+    if (indexedRadius != null) {
+      coverage.remove(sample);
+      uncovered.remove(sample);
+      for (BigInteger node : searchTable.getNodesInRange(sample, indexedRadius)) {
+        Candidate c = candidates.get(node);
+        if (c == null) continue;
+        ranking.remove(c);
+        if (--c.covered > 0) ranking.add(c);
+      }
     }
+    return true;
+  }
 
-    return result.toArray(new BigInteger[0]);
+  /** Returns the number of samples still missing. */
+  public int missingSamples() {
+    return missing.size();
   }
   // public abstract BigInteger[] startSampling();
 
@@ -84,31 +163,51 @@ public abstract class SamplingOperation extends FindOperation {
     return new BigInteger[0];
   }
 
+  /**
+   * Returns the node not queried yet that can provide most of the missing samples, and marks it as
+   * queried. Ties are broken randomly.
+   *
+   * @return the ID of the node, or null if no node within the radius of any missing sample is left
+   */
   public BigInteger getNeighbour() {
 
-    BigInteger res = null;
-    List<BigInteger> nodes = new ArrayList<>();
-    for (BigInteger sample : samples.keySet()) {
+    updateIndex();
+    if (callback != null) for (BigInteger sample : uncovered) callback.missing(sample, this);
 
-      if (!samples.get(sample)) {
-        List<BigInteger> nodesBySample = searchTable.getNodesbySample(sample, radius);
-
-        if (nodesBySample != null && nodesBySample.size() > 0) nodes.addAll(nodesBySample);
-        else if (callback != null) callback.missing(sample, this);
+    Candidate c;
+    while ((c = ranking.pollFirst()) != null) {
+      candidates.remove(c.node);
+      if (searchTable.contains(c.node) && queried.add(c.node)) {
+        this.available_requests--; // decrease available requets
+        return c.node;
       }
     }
-    Collections.shuffle(nodes);
+    return null;
+  }
 
-    for (BigInteger node : nodes) {
-      if (closestSet.get(node) == null) {
-        closestSet.put(node, true);
-        this.available_requests--; // decrease available requets
-        res = node;
-        break;
+  /** Builds the index if needed and adds the nodes added to the search table since. */
+  private void updateIndex() {
+    if (!radius.equals(indexedRadius)) {
+      indexedRadius = radius;
+      indexedNodes = 0;
+      candidates = new HashMap<BigInteger, Candidate>();
+      ranking = new TreeSet<Candidate>();
+      coverage = new HashMap<BigInteger, Integer>();
+      uncovered = new TreeSet<BigInteger>(missing);
+    }
+    for (; indexedNodes < searchTable.nodesAddedCount(); indexedNodes++) {
+      BigInteger node = searchTable.nodeAdded(indexedNodes);
+      if (!searchTable.contains(node)) continue;
+      Set<BigInteger> covered = missing.subSet(node.subtract(radius), true, node.add(radius), true);
+      for (BigInteger sample : covered) {
+        if (coverage.merge(sample, 1, Integer::sum) == 1) uncovered.remove(sample);
+      }
+      if (!queried.contains(node)) {
+        Candidate c = new Candidate(node, covered.size());
+        candidates.put(node, c);
+        if (c.covered > 0) ranking.add(c);
       }
     }
-
-    return res;
   }
 
   public void increaseRadius(int multiplier) {
@@ -120,4 +219,25 @@ public abstract class SamplingOperation extends FindOperation {
   public int samplesCount() {
     return samplesCount;
   }
+
+  /** A node that can be queried, with the number of missing samples within its radius */
+  private static class Candidate implements Comparable<Candidate> {
+
+    final BigInteger node;
+    int covered;
+    /** Random order among the candidates covering the same number of samples */
+    final long tieBreak;
+
+    Candidate(BigInteger node, int covered) {
+      this.node = node;
+      this.covered = covered;
+      this.tieBreak = CommonState.r.nextLong();
+    }
+
+    public int compareTo(Candidate c) {
+      if (covered != c.covered) return covered > c.covered ? -1 : 1;
+      if (tieBreak != c.tieBreak) return tieBreak < c.tieBreak ? -1 : 1;
+      return node.compareTo(c.node);
+    }
+  }
 }
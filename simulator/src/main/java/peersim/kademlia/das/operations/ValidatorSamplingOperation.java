@@ -47,11 +47,11 @@ public class ValidatorSamplingOperation extends SamplingOperation {
     this.column = column;
     if (row > 0) {
       for (BigInteger sample : block.getSamplesIdsByRow(row)) {
-        samples.put(sample, false);
+        addSample(sample);
       }
     } else if (column > 0) {
       for (BigInteger sample : block.getSamplesIdsByColumn(column)) {
-        samples.put(sample, false);
+        addSample(sample);
       }
     }
     this.searchTable = searchTable;
@@ -66,16 +66,14 @@ public class ValidatorSamplingOperation extends SamplingOperation {
         if (samples.containsKey(s.getIdByRow())) {
           if (!samples.get(s.getIdByRow())) {
             samplesCount++;
-            samples.remove(s.getIdByRow());
-            samples.put(s.getIdByRow(), true);
+            receiveSample(s.getIdByRow());
           }
         }
       } else {
         if (samples.containsKey(s.getIdByColumn())) {
           if (!samples.get(s.getIdByColumn())) {
             samplesCount++;
-            samples.remove(s.getIdByColumn());
-            samples.put(s.getIdByColumn(), true);
+            receiveSample(s.getIdByColumn());
           }
         }
       }
@@ -152,7 +150,7 @@ public class ValidatorSamplingOperation extends SamplingOperation {
     result.put("id", this.operationId);
     result.put("src", this.srcNode);
     result.put("type", "ValidatorSamplingOperation");
-    result.put("messages", getMessagesString());
+    putMessages(result);
     result.put("start", this.timestamp);
     result.put("completion_time", this.stopTime);
     result.put("hops", this.nrHops);
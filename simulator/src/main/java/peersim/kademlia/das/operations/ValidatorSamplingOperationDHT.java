@@ -28,12 +28,12 @@ public class ValidatorSamplingOperationDHT extends ValidatorSamplingOperation {
     this.column = column;
     if (row > 0) {
       for (BigInteger sample : block.getSamplesIdsByRow(row)) {
-        samples.put(sample, false);
+        addSample(sample);
         // System.out.println(srcNode + " " + sample);
       }
     } else if (column > 0) {
       for (BigInteger sample : block.getSamplesIdsByRow(column)) {
-        samples.put(sample, false);
+        addSample(sample);
         // System.out.println(srcNode + " " + sample);
       }
     }
@@ -47,8 +47,7 @@ public class ValidatorSamplingOperationDHT extends ValidatorSamplingOperation {
     for (Sample s : sam) {
       if (samples.containsKey(s.getId())) {
         if (!samples.get(s.getId())) {
-          samples.remove(s.getId());
-          samples.put(s.getId(), true);
+          receiveSample(s.getId());
           samplesCount++;
         }
       }
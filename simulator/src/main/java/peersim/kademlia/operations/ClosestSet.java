@@ -0,0 +1,167 @@
+package peersim.kademlia.operations;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import peersim.kademlia.UInt256;
+import peersim.kademlia.Util;
+
+/**
+ * Bounded set of the nodes closest to a target, used by the lookup operations. The nodes are kept
+ * sorted by XOR distance to the target together with a flag telling whether they have already been
+ * queried.<br>
+ * Since the XOR distance to a fixed target is unique for every ID, the position of a node is found
+ * by binary search, which gives membership tests and insertions in O(log K) comparisons. Distances
+ * are compared with {@link UInt256#compareDistance} and never materialised.<br>
+ * The closest unqueried node is tracked with a cursor that only moves back when a closer node is
+ * inserted, so retrieving the next node to query takes amortised constant time.
+ */
+public class ClosestSet {
+
+  /** Target of the lookup. */
+  private final UInt256 target;
+
+  /** Maximum number of nodes kept. */
+  private final int capacity;
+
+  /** Nodes sorted by increasing distance to the target. */
+  private final UInt256[] nodes;
+
+  /** Queried flag of each node, at the same position as in nodes. */
+  private final boolean[] queried;
+
+  /** Number of nodes in the set. */
+  private int size;
+
+  /** No node before this position is unqueried. */
+  private int cursor;
+
+  /**
+   * Creates an empty set.
+   *
+   * @param target the ID the distances are measured from
+   * @param capacity the maximum number of nodes kept (usually K)
+   */
+  public ClosestSet(BigInteger target, int capacity) {
+    this.target = Util.toUInt256(target);
+    this.capacity = capacity;
+    this.nodes = new UInt256[capacity];
+    this.queried = new boolean[capacity];
+    this.size = 0;
+    this.cursor = 0;
+  }
+
+  /**
+   * Binary search of a node by its distance to the target.
+   *
+   * @return the position of the node if present, otherwise (-(insertion point) - 1)
+   */
+  private int indexOf(UInt256 node) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int c = UInt256.compareDistance(nodes[mid], node, target);
+      if (c < 0) low = mid + 1;
+      else if (c > 0) high = mid - 1;
+      else return mid;
+    }
+    return -(low + 1);
+  }
+
+  /**
+   * Adds an unqueried node to the set. If the set is full, the node replaces the farthest one when
+   * it is closer to the target, otherwise it is discarded.
+   *
+   * @param id the node to add
+   * @return true if the node has been added
+   */
+  public boolean add(BigInteger id) {
+    UInt256 node = Util.toUInt256(id);
+    int pos = indexOf(node);
+    if (pos >= 0) return false;
+    pos = -(pos + 1);
+    if (pos == capacity) return false;
+
+    // drop the farthest node when full
+    int last = size < capacity ? size : capacity - 1;
+    System.arraycopy(nodes, pos, nodes, pos + 1, last - pos);
+    System.arraycopy(queried, pos, queried, pos + 1, last - pos);
+    nodes[pos] = node;
+    queried[pos] = false;
+    if (size < capacity) size++;
+    if (pos < cursor) cursor = pos;
+    return true;
+  }
+
+  /**
+   * Removes a node from the set.
+   *
+   * @param id the node to remove
+   * @return true if the node was in the set
+   */
+  public boolean remove(BigInteger id) {
+    int pos = indexOf(Util.toUInt256(id));
+    if (pos < 0) return false;
+    System.arraycopy(nodes, pos + 1, nodes, pos, size - pos - 1);
+    System.arraycopy(queried, pos + 1, queried, pos, size - pos - 1);
+    size--;
+    nodes[size] = null;
+    if (pos < cursor) cursor--;
+    return true;
+  }
+
+  /**
+   * Returns the closest node that has not been queried yet and marks it as queried.
+   *
+   * @return the ID of the node, or null if all the nodes have been queried
+   */
+  public BigInteger nextToQuery() {
+    while (cursor < size && queried[cursor]) cursor++;
+    if (cursor == size) return null;
+    queried[cursor] = true;
+    return nodes[cursor++].toBigInteger();
+  }
+
+  /**
+   * Checks whether a node is in the set.
+   *
+   * @param id the node to check
+   * @return true if the node is in the set
+   */
+  public boolean contains(BigInteger id) {
+    return id != null && indexOf(Util.toUInt256(id)) >= 0;
+  }
+
+  /**
+   * Checks whether a node is in the set and has been queried.
+   *
+   * @param id the node to check
+   * @return true if the node is in the set and has been queried
+   */
+  public boolean isQueried(BigInteger id) {
+    if (id == null) return false;
+    int pos = indexOf(Util.toUInt256(id));
+    return pos >= 0 && queried[pos];
+  }
+
+  /**
+   * Returns the number of nodes in the set.
+   *
+   * @return the size of the set
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the nodes of the set, sorted by increasing distance to the target.
+   *
+   * @return a new list with the IDs of the nodes
+   */
+  public List<BigInteger> getIds() {
+    List<BigInteger> result = new ArrayList<BigInteger>(size);
+    for (int i = 0; i < size; i++) result.add(nodes[i].toBigInteger());
+    return result;
+  }
+}
@@ -15,7 +15,6 @@ import peersim.core.Node;
 import peersim.kademlia.KademliaCommonConfig;
 import peersim.kademlia.KademliaProtocol;
 import peersim.kademlia.UniformRandomGenerator;
-import peersim.kademlia.Util;
 
 /**
  * This class represents a find operation and offer the methods needed to maintain and update the
@@ -30,10 +29,10 @@ public class FindOperation extends Operation {
   /** number of available find request message to send (it must be always less than ALPHA) */
   protected int available_requests;
   /**
-   * This map contains the K closest nodes and corresponding boolean value that indicates if the
-   * nodes has been already queried or not
+   * This set contains the K closest nodes, sorted by distance to the destination, and whether each
+   * of them has been already queried or not
    */
-  protected HashMap<BigInteger, Boolean> closestSet;
+  protected ClosestSet closestSet;
 
   /**
    * defaul constructor
@@ -45,7 +44,7 @@ public class FindOperation extends Operation {
   public FindOperation(BigInteger srcNode, BigInteger destNode, long timestamp) {
     super(srcNode, destNode, timestamp);
     // initialize closestSet
-    closestSet = new HashMap<BigInteger, Boolean>();
+    closestSet = new ClosestSet(destNode, KademliaCommonConfig.K);
     returned = new ArrayList<BigInteger>();
   }
 
@@ -61,7 +60,7 @@ public class FindOperation extends Operation {
     this.available_requests = requests;
   }
 
-  public HashMap<BigInteger, Boolean> getClosest() {
+  public ClosestSet getClosest() {
     return this.closestSet;
   }
 
@@ -72,35 +71,9 @@ public class FindOperation extends Operation {
    */
   public void elaborateResponse(BigInteger[] neighbours) {
 
-    // add to closestSet
+    // add to closestSet, replacing the farthest node when it is full
     for (BigInteger n : neighbours) {
-
-      if (n != null) {
-        if (!closestSet.containsKey(n)) {
-          if (closestSet.size() < KademliaCommonConfig.K) { // add directly
-            closestSet.put(n, false);
-          } else { // find in the closest set if there are nodes whit less distance
-            BigInteger newdist = Util.xorDistance(n, destNode);
-
-            // find the node with max distance
-            BigInteger maxdist = newdist;
-            BigInteger nodemaxdist = n;
-            for (BigInteger i : closestSet.keySet()) {
-              BigInteger dist = Util.xorDistance(i, destNode);
-
-              if (dist.compareTo(maxdist) > 0) {
-                maxdist = dist;
-                nodemaxdist = i;
-              }
-            }
-
-            if (nodemaxdist.compareTo(n) != 0) {
-              closestSet.remove(nodemaxdist);
-              closestSet.put(n, false);
-            }
-          }
-        }
-      }
+      if (n != null) closestSet.add(n);
     }
     // update responseNumber
     available_requests++;
@@ -113,22 +86,10 @@ public class FindOperation extends Operation {
    */
   public BigInteger getNeighbour() {
     // find closest neighbour ( the first not already queried)
-    BigInteger res = null;
-    for (BigInteger n : closestSet.keySet()) {
-      if (n != null && closestSet.get(n) == false) {
-        if (res == null) {
-          res = n;
-        } else if (Util.xorDistance(n, destNode).compareTo(Util.xorDistance(res, destNode)) < 0) {
-          res = n;
-        }
-      }
-    }
+    BigInteger res = closestSet.nextToQuery();
 
     // Has been found a valid neighbour
     if (res != null) {
-      closestSet.remove(res);
-      closestSet.put(res, true);
-      // increaseUsed(res);
       available_requests--; // decrease available request
     }
 
@@ -136,13 +97,12 @@ public class FindOperation extends Operation {
   }
 
   /**
-   * get the neighbours in closest set which has not been already queried
+   * get the neighbours in closest set, sorted by distance to the destination
    *
    * @return the closest nodes set up to K
    */
   public List<BigInteger> getNeighboursList() {
-    return new ArrayList<BigInteger>(closestSet.keySet());
-    // return new ArrayList<BigInteger>(closestSet.keySet()).subList(0, KademliaCommonConfig.K-1);
+    return closestSet.getIds();
   }
 
   public void visualize() {
@@ -197,7 +157,7 @@ public class FindOperation extends Operation {
     result.put("id", this.operationId);
     result.put("src", this.srcNode);
     result.put("type", this.getClass().getSimpleName());
-    result.put("messages", getMessagesString());
+    putMessages(result);
     result.put("start", this.timestamp);
     result.put("stop", this.stopTime);
     result.put("hops", this.nrHops);
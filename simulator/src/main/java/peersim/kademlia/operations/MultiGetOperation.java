@@ -0,0 +1,98 @@
+package peersim.kademlia.operations;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An extension of the FindOperation class to get the values of several keys with a single lookup.
+ * The lookup converges to the nodes closest to the destination, usually one of the keys, and every
+ * GET message asks for all the keys still missing. Keys sharing a long prefix are stored by mostly
+ * the same nodes, so they are found by the same messages.
+ */
+public class MultiGetOperation extends FindOperation {
+
+  /** Values of the keys, in the order of the keys, null for the keys still missing */
+  private LinkedHashMap<BigInteger, Object> values;
+
+  /** Number of keys with a value */
+  private int found = 0;
+
+  /**
+   * Constructs a new MultiGetOperation object.
+   *
+   * @param srcNode the ID of the source node.
+   * @param destNode the ID the lookup converges to.
+   * @param keys the keys to get.
+   * @param timestamp the timestamp of the operation.
+   */
+  public MultiGetOperation(
+      BigInteger srcNode, BigInteger destNode, BigInteger[] keys, long timestamp) {
+    super(srcNode, destNode, timestamp);
+    values = new LinkedHashMap<BigInteger, Object>();
+    for (BigInteger key : keys) values.put(key, null);
+  }
+
+  /**
+   * Adds the values received for some of the keys.
+   *
+   * @param received the values received, by key.
+   */
+  public void addValues(Map<BigInteger, Object> received) {
+    for (Map.Entry<BigInteger, Object> e : received.entrySet()) {
+      if (e.getValue() != null
+          && values.containsKey(e.getKey())
+          && values.put(e.getKey(), e.getValue()) == null) found++;
+    }
+  }
+
+  /**
+   * Gets the keys of the operation.
+   *
+   * @return the keys, in the order they were given.
+   */
+  public BigInteger[] getKeys() {
+    return values.keySet().toArray(new BigInteger[0]);
+  }
+
+  /**
+   * Gets the keys without a value yet, to be requested in the next GET messages.
+   *
+   * @return the keys still missing.
+   */
+  public BigInteger[] getMissingKeys() {
+    List<BigInteger> missing = new ArrayList<BigInteger>();
+    for (Map.Entry<BigInteger, Object> e : values.entrySet())
+      if (e.getValue() == null) missing.add(e.getKey());
+    return missing.toArray(new BigInteger[0]);
+  }
+
+  /**
+   * Gets the values found so far.
+   *
+   * @return the values found.
+   */
+  public List<Object> getValues() {
+    List<Object> result = new ArrayList<Object>(found);
+    for (Object value : values.values()) if (value != null) result.add(value);
+    return result;
+  }
+
+  /**
+   * Checks whether the values of all the keys have been found.
+   *
+   * @return true if no key is missing.
+   */
+  public boolean allFound() {
+    return found == values.size();
+  }
+
+  public Map<String, Object> toMap() {
+    Map<String, Object> result = super.toMap();
+    result.put("keys", values.size());
+    result.put("found", found);
+    return result;
+  }
+}
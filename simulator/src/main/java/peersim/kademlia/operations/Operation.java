@@ -2,8 +2,12 @@ package peersim.kademlia.operations;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import peersim.config.Configuration;
+import peersim.kademlia.Message;
 
 /**
  * This class represents a find operation and offer the methods needed to maintain and update the
@@ -15,6 +19,49 @@ import java.util.Map;
  */
 public abstract class Operation {
 
+  /**
+   * Configuration parameter that, if present, makes the operations keep the IDs of their messages,
+   * reported in the "messages" field (used by the visualiser). Otherwise they only count the
+   * messages by type and size.
+   *
+   * @config
+   */
+  public static final String PAR_MESSAGE_IDS = "operation.message_ids";
+
+  /**
+   * Columns of the operation log, the union of the keys put by {@link #toMap} in the operation
+   * types, so that all of them are written to the same table.
+   */
+  public static final String[] COLUMNS = {
+    "id",
+    "src",
+    "type",
+    "messages",
+    "start",
+    "stop",
+    "completion_time",
+    "hops",
+    "num_messages",
+    "message_types",
+    "message_bytes",
+    "hop_histogram",
+    "keys",
+    "found",
+    "samples",
+    "row",
+    "column",
+    "block_id",
+    "old_block",
+    "validator",
+    "completed"
+  };
+
+  /** Hop counts from this value on are counted together in the histogram */
+  private static final int MAX_HOPS = 64;
+
+  /** Whether the IDs of the messages are kept, null until the configuration is read */
+  private static Boolean keepMessageIds;
+
   /** unique sequence number generator of the operation */
   protected static long OPERATION_ID_GENERATOR = 0;
 
@@ -42,7 +89,23 @@ public abstract class Operation {
   /** Timestamp stop Operation */
   protected Long stopTime;
 
-  /** Messages in the operation */
+  /** Number of messages in the operation */
+  protected int messageCount;
+
+  /** Number of messages in the operation by message type */
+  protected int[] messageTypes = new int[0];
+
+  /** Total size of the messages in the operation */
+  protected long messageBytes;
+
+  /**
+   * Number of times each hop count was counted, the last element counting MAX_HOPS or more: the
+   * depth of the responses for lookups, the hops of the lookups and messages done on behalf of the
+   * operation otherwise
+   */
+  protected int[] hopHistogram = new int[0];
+
+  /** IDs of the messages in the operation, null unless {@value #PAR_MESSAGE_IDS} is set */
   protected List<Long> messages;
   /**
    * defaul constructor
@@ -56,7 +119,8 @@ public abstract class Operation {
     this.nrHops = 0;
     // set a new find ID
     operationId = OPERATION_ID_GENERATOR++;
-    this.messages = new ArrayList<>();
+    if (keepMessageIds == null) keepMessageIds = Configuration.contains(PAR_MESSAGE_IDS);
+    if (keepMessageIds) this.messages = new ArrayList<>();
     returned = new ArrayList<BigInteger>();
   }
 
@@ -88,29 +152,130 @@ public abstract class Operation {
     this.finished = finished;
   }
 
-  public void addMessage(long msgId) {
-    messages.add(msgId);
+  /**
+   * Accounts for a message of the operation.
+   *
+   * @param msgId the ID of the message
+   * @param type the type of the message
+   * @param size the size of the message, 0 if unknown
+   */
+  public void addMessage(long msgId, int type, int size) {
+    messageCount++;
+    if (type >= messageTypes.length) messageTypes = Arrays.copyOf(messageTypes, type + 1);
+    messageTypes[type]++;
+    messageBytes += size;
+    if (messages != null) messages.add(msgId);
+  }
+
+  public void addMessage(Message m) {
+    addMessage(m.id, m.getType(), m.getSize());
+  }
+
+  /**
+   * Accounts for the messages of another operation, like a lookup done on behalf of this one.
+   *
+   * @param op the other operation
+   */
+  public void addMessages(Operation op) {
+    messageCount += op.messageCount;
+    if (op.messageTypes.length > messageTypes.length)
+      messageTypes = Arrays.copyOf(messageTypes, op.messageTypes.length);
+    for (int i = 0; i < op.messageTypes.length; i++) messageTypes[i] += op.messageTypes[i];
+    messageBytes += op.messageBytes;
+    if (messages != null && op.messages != null) messages.addAll(op.messages);
+  }
+
+  public int getMessageCount() {
+    return messageCount;
   }
 
+  public long getMessageBytes() {
+    return messageBytes;
+  }
+
+  /** Returns the IDs of the messages, empty unless {@value #PAR_MESSAGE_IDS} is set. */
   public List<Long> getMessages() {
-    return messages;
+    return messages == null ? Collections.<Long>emptyList() : messages;
   }
 
   public String getMessagesString() {
     // this.messages = this.messages + messageId + "|";
-    String msgs = "";
-    for (Long msg : messages) {
-      msgs += msg + "|";
+    StringBuilder msgs = new StringBuilder();
+    for (Long msg : getMessages()) {
+      msgs.append(msg).append('|');
+    }
+    return msgs.toString();
+  }
+
+  /** Returns the number of messages by type, as <code>type:count|type:count|</code>. */
+  public String getMessageTypesString() {
+    StringBuilder types = new StringBuilder();
+    for (int i = 0; i < messageTypes.length; i++) {
+      if (messageTypes[i] > 0)
+        types.append(typeToString(i)).append(':').append(messageTypes[i]).append('|');
+    }
+    return types.toString();
+  }
+
+  /**
+   * Returns the name of a message type, as reported in the message types. The operations whose
+   * messages are not Kademlia messages name them with the types of their protocol.
+   *
+   * @param type the type of the message
+   * @return the name of the type
+   */
+  protected String typeToString(int type) {
+    return Message.typeToString(type);
+  }
+
+  /** Returns the number of times each hop count was counted, as <code>hops:count|</code>. */
+  public String getHopHistogramString() {
+    StringBuilder hops = new StringBuilder();
+    for (int i = 0; i < hopHistogram.length; i++) {
+      if (hopHistogram[i] > 0) hops.append(i).append(':').append(hopHistogram[i]).append('|');
     }
-    return msgs;
+    return hops.toString();
+  }
+
+  /**
+   * Puts the message accounting of the operation in a map, as returned by toMap. The IDs of the
+   * messages are only put if they are kept.
+   *
+   * @param result the map
+   */
+  protected void putMessages(Map<String, Object> result) {
+    if (messages != null) result.put("messages", getMessagesString());
+    result.put("num_messages", messageCount);
+    result.put("message_types", getMessageTypesString());
+    result.put("message_bytes", messageBytes);
+    result.put("hop_histogram", getHopHistogramString());
   }
 
   public int getHops() {
     return nrHops;
   }
 
+  /**
+   * Adds the hops of a message or a lookup done on behalf of the operation, counting them in the
+   * histogram of hops.
+   *
+   * @param nrHops the hops
+   */
   public void addHops(int nrHops) {
     this.nrHops += nrHops;
+    countHops(nrHops);
+  }
+
+  /**
+   * Counts a hop count in the histogram of hops, without adding it to the hops of the operation,
+   * like the depth at which a response of a lookup arrived.
+   *
+   * @param nrHops the hops
+   */
+  public void countHops(int nrHops) {
+    int i = Math.max(0, Math.min(nrHops, MAX_HOPS));
+    if (i >= hopHistogram.length) hopHistogram = Arrays.copyOf(hopHistogram, i + 1);
+    hopHistogram[i]++;
   }
 
   public void increaseHops() {
@@ -60,7 +60,7 @@ public class RegionBasedFindOperation extends FindOperation {
     int curr_minCPL = 0;
     if (neighbour == null && available_requests == KademliaCommonConfig.ALPHA) {
       // should we let the find operation terminate?
-      curr_minCPL = Util.getMinCplWithSet(this.targetNode, this.closestSet.keySet());
+      curr_minCPL = Util.getMinCplWithSet(this.targetNode, this.closestSet.getIds());
       // we found all closest peers with common prefix length >= curr_minCPL
       if (curr_minCPL <= this.minCPL) {
         return null;
@@ -68,29 +68,8 @@ public class RegionBasedFindOperation extends FindOperation {
         // Update the destNode
         this.destNode = Util.flipBit(this.targetNode, curr_minCPL);
         // Form a new closestSet using regionalSet
-        this.closestSet = new HashMap<BigInteger, Boolean>();
-        for (BigInteger n : regionalSet.keySet()) {
-          if (closestSet.size() < KademliaCommonConfig.K) { // add directly
-            closestSet.put(n, false);
-          } else {
-            BigInteger newdist = Util.xorDistance(n, destNode);
-            // find the node with max distance
-            BigInteger maxdist = newdist;
-            BigInteger nodemaxdist = n;
-            for (BigInteger i : closestSet.keySet()) {
-              BigInteger dist = Util.xorDistance(i, destNode);
-              if (dist.compareTo(maxdist) > 0) {
-                maxdist = dist;
-                nodemaxdist = i;
-              }
-            }
-
-            if (nodemaxdist.compareTo(n) != 0) {
-              closestSet.remove(nodemaxdist);
-              closestSet.put(n, false);
-            }
-          }
-        }
+        this.closestSet = new ClosestSet(this.destNode, KademliaCommonConfig.K);
+        for (BigInteger n : regionalSet.keySet()) closestSet.add(n);
       }
     }
 
@@ -20,6 +20,9 @@ package peersim.rangesim;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import peersim.*;
 import peersim.config.*;
 import peersim.core.*;
@@ -79,6 +82,18 @@ import peersim.util.*;
  * <p>The new JVM inherits the same classpath as the JVM running the RangeSimulator. The {@value
  * #PAR_JVM} parameter can be used to specify additional classpath specification.
  *
+ * <p>The experiments are run one after the other, unless {@value #PAR_PROCESSES} is larger than
+ * one: then up to that many JVMs run at the same time. The output of concurrent experiments cannot
+ * be mixed, so it requires {@value #PAR_OUTDIR}, where every experiment gets its own directory,
+ * named after its values, which is its working directory (relative log folders are created there)
+ * and holds its <code>stdout.txt</code> and <code>stderr.txt</code>. The configuration is parsed
+ * once and written to <code>base.cfg</code> in {@value #PAR_OUTDIR}, which the experiments read
+ * instead of the original files. For example:
+ *
+ * <pre>
+ * java peersim.rangesim.RangeSimulator config.file rangesim.processes=8 rangesim.outdir=sweep
+ * </pre>
+ *
  * @author Alberto Montresor
  * @version $Revision: 1.11 $
  */
@@ -103,6 +118,21 @@ public class RangeSimulator implements ProcessHandler {
    */
   public static final String PAR_JVM = "jvm.options";
 
+  /**
+   * The maximum number of experiments run at the same time, each in its own JVM. Defaults to 1.
+   *
+   * @config
+   */
+  private static final String PAR_PROCESSES = "rangesim.processes";
+
+  /**
+   * The directory where the output of every experiment is written, in a directory of its own. If
+   * not set, the output is printed on the standard output and error.
+   *
+   * @config
+   */
+  private static final String PAR_OUTDIR = "rangesim.outdir";
+
   // --------------------------------------------------------------------------
   // Static variables
   // --------------------------------------------------------------------------
@@ -119,8 +149,17 @@ public class RangeSimulator implements ProcessHandler {
   /** Command line arguments */
   private String[] args;
 
-  /** The current process that is executed */
-  private Process p;
+  /** The configuration read from the command line */
+  private Properties properties;
+
+  /** Maximum number of experiments run at the same time */
+  private int processes;
+
+  /** Directory of the output of the experiments, null to print it */
+  private File outdir;
+
+  /** The processes currently executed */
+  private final Set<Process> running = Collections.synchronizedSet(new HashSet<Process>());
 
   // --------------------------------------------------------------------------
   // Main
@@ -149,7 +188,7 @@ public class RangeSimulator implements ProcessHandler {
 
     // Read property file
     System.err.println("Simulator: loading configuration");
-    Properties properties = new ParsedProperties(args);
+    properties = new ParsedProperties(args);
     Configuration.setConfig(properties);
 
     // Read jvm options and separate them in different strings
@@ -157,6 +196,10 @@ public class RangeSimulator implements ProcessHandler {
     if (opt == null) jvmoptions = new String[0];
     else jvmoptions = opt.split(" ");
 
+    processes = Configuration.getInt(PAR_PROCESSES, 1);
+    String dir = Configuration.getString(PAR_OUTDIR, null);
+    if (dir != null) outdir = new File(dir).getAbsoluteFile();
+
     // Parse range parameters
     parseRanges();
   }
@@ -243,10 +286,19 @@ public class RangeSimulator implements ProcessHandler {
   // --------------------------------------------------------------------
 
   private void doExperiments(String[] args) {
+    if (processes > 1 && outdir == null)
+      throw new IllegalParameterException(
+          PAR_PROCESSES, "running experiments in parallel requires " + PAR_OUTDIR);
 
     // Configure the java parameter for exception
     String filesep = System.getProperty("file.separator");
     String classpath = System.getProperty("java.class.path");
+    if (outdir != null) {
+      // The experiments run in their own directories: the classpath must not be relative, and
+      // they read the configuration already parsed
+      classpath = absoluteClasspath(classpath);
+      args = new String[] {writeConfig().getPath()};
+    }
     String javapath = System.getProperty("java.home") + filesep + "bin" + filesep + "java";
     ArrayList<String> list = new ArrayList<String>(20);
     list.add(javapath);
@@ -281,6 +333,8 @@ public class RangeSimulator implements ProcessHandler {
     int startpar = list.size();
     for (int i = 0; i < values.length; i++) list.add("");
 
+    ExecutorService pool = processes > 1 ? Executors.newFixedThreadPool(processes) : null;
+
     // Execute with different values
     int[] idx = new int[values.length]; // Initialized to 0
     while (idx[0] < values[0].length) {
@@ -306,11 +360,72 @@ public class RangeSimulator implements ProcessHandler {
 
       System.err.println("Experiment: " + log);
 
-      executeProcess(list);
+      File dir = outdir == null ? null : new File(outdir, runName(idx));
+      if (pool == null) executeProcess(list, dir);
+      else {
+        List<String> command = new ArrayList<String>(list);
+        pool.execute(() -> executeProcess(command, dir));
+      }
 
       // Increment values
       nextValues(idx, values);
     }
+
+    if (pool != null) {
+      pool.shutdown();
+      try {
+        while (!pool.awaitTermination(1, TimeUnit.MINUTES))
+          ;
+      } catch (InterruptedException e) {
+        pool.shutdownNow();
+      }
+    }
+  }
+
+  // --------------------------------------------------------------------
+
+  /** Returns the name of the directory of an experiment, made of its parameters and values. */
+  private String runName(int[] idx) {
+    StringBuilder name = new StringBuilder();
+    for (int j = 0; j < pars.length; j++) {
+      if (j > 0) name.append(',');
+      name.append(pars[j]).append('=').append(values[j][idx[j]]);
+    }
+    return name.toString().replaceAll("[^A-Za-z0-9._=,+-]", "_");
+  }
+
+  // --------------------------------------------------------------------
+
+  /** Makes every entry of a classpath absolute. */
+  private static String absoluteClasspath(String classpath) {
+    String[] entries = classpath.split(File.pathSeparator);
+    StringBuilder result = new StringBuilder();
+    for (String entry : entries) {
+      if (result.length() > 0) result.append(File.pathSeparator);
+      result.append(entry.isEmpty() ? entry : new File(entry).getAbsolutePath());
+    }
+    return result.toString();
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Writes the parsed configuration in {@value #PAR_OUTDIR}, one property per line, so that the
+   * experiments do not parse the original files again.
+   *
+   * @return the file written
+   */
+  private File writeConfig() {
+    File file = new File(outdir, "base.cfg");
+    outdir.mkdirs();
+    try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+      for (String name : new TreeSet<String>(properties.stringPropertyNames()))
+        out.println(name + " " + properties.getProperty(name));
+    } catch (IOException e) {
+      System.err.println("Unable to write " + file + ": " + e);
+      System.exit(1);
+    }
+    return file;
   }
 
   // --------------------------------------------------------------------
@@ -319,27 +434,48 @@ public class RangeSimulator implements ProcessHandler {
    * Execute the "command line" represented by this String list. The first argument is the process
    * to be executed. We try to run the same JVM as the current one. If not possible, we use the
    * first java command found in the path.
+   *
+   * @param list the command line
+   * @param dir the working directory of the process, where its output is written, or null to run it
+   *     in the current directory and print its output
    */
-  private void executeProcess(List<String> list) {
+  private void executeProcess(List<String> list, File dir) {
     // Prepare the argument array for process forking
     String[] newargs = new String[list.size()];
+    Process p = null;
+
+    PrintStream out = System.out;
+    PrintStream err = System.err;
+    if (dir != null) {
+      dir.mkdirs();
+      try {
+        out = new PrintStream(new FileOutputStream(new File(dir, "stdout.txt")));
+        err = new PrintStream(new FileOutputStream(new File(dir, "stderr.txt")));
+      } catch (IOException e) {
+        System.err.println("Unable to write the output in " + dir + ": " + e);
+        System.exit(1);
+      }
+    }
 
     // Execute a new JVM
     try {
       ProcessBuilder pb = new ProcessBuilder(list.toArray(newargs));
       pb.redirectErrorStream(true);
+      pb.directory(dir);
       p = pb.start();
     } catch (IOException e1) {
       try {
         list.set(0, "java");
         ProcessBuilder pb = new ProcessBuilder(list.toArray(newargs));
         pb.redirectErrorStream(true);
+        pb.directory(dir);
         p = pb.start();
       } catch (IOException e2) {
         System.err.println("Unable to launch a Java virtual machine");
         System.exit(1);
       }
     }
+    running.add(p);
 
     // Read the output from the process and redirect it to System.out
     // and System.err.
@@ -347,17 +483,21 @@ public class RangeSimulator implements ProcessHandler {
     String line;
     while ((line = getLine(toprint)) != null) {
       if (line.length() == 0) {
-        System.out.println();
+        out.println();
       } else {
         int last = line.charAt(line.length() - 1);
         if (last != TaggedOutputStream.TAG) {
-          System.err.println(line);
+          err.println(line);
         } else {
           line = line.substring(0, line.length() - 1);
-          System.out.println(line);
+          out.println(line);
         }
       }
     }
+    if (dir != null) {
+      out.close();
+      err.close();
+    }
 
     // We close all the files and we destroy the process. They are not
     // cleaned when the process is closed. See:
@@ -372,9 +512,8 @@ public class RangeSimulator implements ProcessHandler {
       e.printStackTrace();
     }
 
-    // The static variable p (used also by ShutdownThread) is back to
-    // null - no process must be killed on shutdown.
-    p = null;
+    // The process is no longer killed on shutdown
+    running.remove(p);
   }
 
   // --------------------------------------------------------------------
@@ -402,16 +541,22 @@ public class RangeSimulator implements ProcessHandler {
 
   RangeSimulator() {}
 
-  /** Stop the process executing the external java virtual machine. */
+  /** Stop the processes executing the external java virtual machines. */
   public void doStop() {
-    if (p != null) p.destroy();
+    synchronized (running) {
+      for (Process p : running) p.destroy();
+    }
   }
 
   /**
-   * Wait until the java virtual machine has terminated; it won't be used in this class, but you
+   * Wait until the java virtual machines have terminated; it won't be used in this class, but you
    * never know.
    */
   public void join() throws InterruptedException {
-    p.waitFor();
+    Process[] processes;
+    synchronized (running) {
+      processes = running.toArray(new Process[0]);
+    }
+    for (Process p : processes) p.waitFor();
   }
 }
@@ -0,0 +1,91 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.transport;
+
+import peersim.config.*;
+import peersim.core.*;
+import peersim.util.IncrementalStats;
+
+/**
+ * Prints statistics of the links modelled by {@link BandwidthTransport}: the queue length (bytes
+ * waiting) and the utilisation of the upload and download links of the nodes that are up. Each line
+ * contains the statistics of {@link IncrementalStats} over the nodes.
+ */
+public class BandwidthObserver implements Control {
+
+  // ---------------------------------------------------------------------
+  // Parameters
+  // ---------------------------------------------------------------------
+
+  /**
+   * The {@link BandwidthTransport} to observe.
+   *
+   * @config
+   */
+  private static final String PAR_TRANSPORT = "transport";
+
+  // ---------------------------------------------------------------------
+  // Fields
+  // ---------------------------------------------------------------------
+
+  /** The name of this observer in the configuration */
+  private final String name;
+
+  /** Protocol identifier of the transport */
+  private final int transport;
+
+  // ---------------------------------------------------------------------
+  // Initialization
+  // ---------------------------------------------------------------------
+
+  /** Reads configuration parameters. */
+  public BandwidthObserver(String prefix) {
+    name = prefix;
+    transport = Configuration.getPid(prefix + "." + PAR_TRANSPORT);
+  }
+
+  // ---------------------------------------------------------------------
+  // Methods
+  // ---------------------------------------------------------------------
+
+  /**
+   * Prints the statistics of the upload and download queues and utilisations.
+   *
+   * @return always false
+   */
+  public boolean execute() {
+    IncrementalStats upQueue = new IncrementalStats();
+    IncrementalStats downQueue = new IncrementalStats();
+    IncrementalStats upUse = new IncrementalStats();
+    IncrementalStats downUse = new IncrementalStats();
+    for (int i = 0; i < Network.size(); i++) {
+      Node n = Network.get(i);
+      if (!n.isUp()) continue;
+      BandwidthTransport t = (BandwidthTransport) n.getProtocol(transport);
+      upQueue.add(t.getUploadQueue(n));
+      downQueue.add(t.getDownloadQueue(n));
+      upUse.add(t.getUploadUtilisation(n));
+      downUse.add(t.getDownloadUtilisation(n));
+    }
+    long time = CommonState.getTime();
+    System.out.println(name + ": " + time + " upload queue " + upQueue);
+    System.out.println(name + ": " + time + " download queue " + downQueue);
+    System.out.println(name + ": " + time + " upload utilisation " + upUse);
+    System.out.println(name + ": " + time + " download utilisation " + downUse);
+    return false;
+  }
+}
@@ -0,0 +1,293 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.transport;
+
+import java.util.Arrays;
+import peersim.config.*;
+import peersim.core.*;
+import peersim.edsim.*;
+import peersim.gossipsub.Message;
+
+/**
+ * Transport that models the upload link of the sender and the download link of the receiver of
+ * every message. The propagation latency is taken from an underlying transport protocol, to which
+ * the transmission times and the queueing on both links are added.
+ *
+ * <p>Each link serves messages in FIFO order. A message starts being uploaded when the upload link
+ * of the sender is free, and it starts being downloaded when its first bit reaches the receiver and
+ * the download link of the receiver is free. It is delivered when it is completely downloaded,
+ * which cannot be earlier than its upload completion plus the latency. Transmission times are
+ * computed from the message size (only {@link Message} has one) as in the other transports, in
+ * milliseconds from bandwidths in bits per second. Messages queue behind each other even if they
+ * have no size; links with no bandwidth limit have no queue. Links are reserved when a message is
+ * sent, so the download queue is ordered by sending time.
+ *
+ * <p>The upload bandwidth of a node is {@link Node#getBandwidth()} if set, otherwise {@value
+ * #PAR_UPLOAD}. The download bandwidth is {@value #PAR_DOWNLOAD}, unless set for the node with
+ * {@link #setDownloadBandwidth}. The state of the links is kept in arrays indexed by node ID, so a
+ * single instance is shared by all the nodes. The queue length and utilisation of each link are
+ * available to observers, e.g. {@link BandwidthObserver}.
+ */
+public final class BandwidthTransport implements Transport {
+
+  // ---------------------------------------------------------------------
+  // Parameters
+  // ---------------------------------------------------------------------
+
+  /**
+   * The name of the underlying transport protocol, which provides the latency between nodes.
+   *
+   * @config
+   */
+  private static final String PAR_TRANSPORT = "transport";
+
+  /**
+   * Default upload bandwidth in bits per second, used for the nodes without a bandwidth. Defaults
+   * to 0, meaning no limit.
+   *
+   * @config
+   */
+  private static final String PAR_UPLOAD = "upload";
+
+  /**
+   * Default download bandwidth in bits per second. Defaults to 0, meaning no limit.
+   *
+   * @config
+   */
+  private static final String PAR_DOWNLOAD = "download";
+
+  /** Overhead of the lower layers, as in the other transports. */
+  private static final double OVERHEAD = 1.03;
+
+  // ---------------------------------------------------------------------
+  // Fields
+  // ---------------------------------------------------------------------
+
+  /** Protocol identifier of the underlying transport */
+  private final int transport;
+
+  private final long upload;
+
+  private final long download;
+
+  /** Download bandwidth of each node, 0 if not set */
+  private long[] downloadBandwidth = new long[0];
+
+  /** Time at which the upload link of each node is free */
+  private double[] uploadFree = new double[0];
+
+  /** Time at which the download link of each node is free */
+  private double[] downloadFree = new double[0];
+
+  /** Total time the upload link of each node is transmitting */
+  private double[] uploadBusy = new double[0];
+
+  /** Total time the download link of each node is occupied, also by slow senders */
+  private double[] downloadBusy = new double[0];
+
+  /** Bytes sent by each node */
+  private long[] sent = new long[0];
+
+  /** Bytes received by each node */
+  private long[] received = new long[0];
+
+  // ---------------------------------------------------------------------
+  // Initialization
+  // ---------------------------------------------------------------------
+
+  /** Reads configuration parameters. */
+  public BandwidthTransport(String prefix) {
+    transport = Configuration.getPid(prefix + "." + PAR_TRANSPORT);
+    upload = Configuration.getLong(prefix + "." + PAR_UPLOAD, 0);
+    download = Configuration.getLong(prefix + "." + PAR_DOWNLOAD, 0);
+    if (upload < 0)
+      throw new IllegalParameterException(prefix + "." + PAR_UPLOAD, "Negative bandwidth");
+    if (download < 0)
+      throw new IllegalParameterException(prefix + "." + PAR_DOWNLOAD, "Negative bandwidth");
+  }
+
+  // ---------------------------------------------------------------------
+
+  /**
+   * Returns <code>this</code>. This way only one instance exists in the system that is linked from
+   * all the nodes. The state of the nodes is kept in arrays indexed by node ID.
+   */
+  public Object clone() {
+    return this;
+  }
+
+  // ---------------------------------------------------------------------
+  // Methods
+  // ---------------------------------------------------------------------
+
+  /**
+   * Delivers the message after the latency of the underlying transport, the transmission times and
+   * the time spent in the queues of the upload and download links.
+   */
+  public void send(Node src, Node dest, Object msg, int pid) {
+    int s = index(src);
+    int d = index(dest);
+    long now = CommonState.getTime();
+    long latency = getLatency(src, dest);
+    int size = msg instanceof Message ? ((Message) msg).getSize() : 0;
+
+    // upload
+    long up = getUploadBandwidth(src);
+    double upStart = now;
+    double upEnd = now;
+    if (up > 0) {
+      upStart = Math.max(now, uploadFree[s]);
+      double tx = transmissionTime(size, up);
+      upEnd = upStart + tx;
+      uploadFree[s] = upEnd;
+      uploadBusy[s] += tx;
+    }
+
+    // download, starting when the first bit arrives
+    long down = getDownloadBandwidth(dest);
+    double delivery = upEnd + latency;
+    if (down > 0) {
+      double downStart = Math.max(upStart + latency, downloadFree[d]);
+      double tx = transmissionTime(size, down);
+      delivery = Math.max(downStart + tx, delivery);
+      downloadFree[d] = delivery;
+      downloadBusy[d] += delivery - downStart;
+    }
+
+    sent[s] += size;
+    received[d] += size;
+    EDSimulator.add((long) (delivery - now), msg, dest, pid);
+  }
+
+  // ---------------------------------------------------------------------
+
+  /** Returns the latency of the underlying transport. */
+  public long getLatency(Node src, Node dest) {
+    Transport t = (Transport) src.getProtocol(transport);
+    return t.getLatency(src, dest);
+  }
+
+  /** Returns the minimum latency of the underlying transport. */
+  public long getMinLatency() {
+    Transport t = (Transport) Network.prototype.getProtocol(transport);
+    return t.getMinLatency();
+  }
+
+  // ---------------------------------------------------------------------
+
+  /** Returns the upload bandwidth of a node in bits per second, 0 if unlimited. */
+  public long getUploadBandwidth(Node node) {
+    return node.getBandwidth() > 0 ? node.getBandwidth() : upload;
+  }
+
+  /** Returns the download bandwidth of a node in bits per second, 0 if unlimited. */
+  public long getDownloadBandwidth(Node node) {
+    int i = index(node);
+    return downloadBandwidth[i] > 0 ? downloadBandwidth[i] : download;
+  }
+
+  /**
+   * Sets the download bandwidth of a node.
+   *
+   * @param node the node
+   * @param bandwidth the bandwidth in bits per second, 0 to use the configured default
+   */
+  public void setDownloadBandwidth(Node node, long bandwidth) {
+    int i = index(node);
+    downloadBandwidth[i] = bandwidth;
+  }
+
+  // ---------------------------------------------------------------------
+
+  /** Returns the bytes waiting to be uploaded by a node at the current time. */
+  public long getUploadQueue(Node node) {
+    int i = index(node);
+    return queuedBytes(uploadFree[i], getUploadBandwidth(node));
+  }
+
+  /** Returns the bytes waiting to be downloaded by a node at the current time. */
+  public long getDownloadQueue(Node node) {
+    int i = index(node);
+    return queuedBytes(downloadFree[i], getDownloadBandwidth(node));
+  }
+
+  /**
+   * Returns the fraction of time in which the upload link of a node is busy, from the beginning
+   * until now or until the queued messages are sent, if later.
+   */
+  public double getUploadUtilisation(Node node) {
+    int i = index(node);
+    return utilisation(uploadBusy[i], uploadFree[i]);
+  }
+
+  /**
+   * Returns the fraction of time in which the download link of a node is busy, from the beginning
+   * until now or until the queued messages are received, if later.
+   */
+  public double getDownloadUtilisation(Node node) {
+    int i = index(node);
+    return utilisation(downloadBusy[i], downloadFree[i]);
+  }
+
+  /** Returns the bytes sent so far by a node. */
+  public long getBytesSent(Node node) {
+    int i = index(node);
+    return sent[i];
+  }
+
+  /** Returns the bytes received so far by a node, including the ones still in transit. */
+  public long getBytesReceived(Node node) {
+    int i = index(node);
+    return received[i];
+  }
+
+  // ---------------------------------------------------------------------
+
+  private static double transmissionTime(int size, long bandwidth) {
+    return size * 8 * OVERHEAD / bandwidth * 1000;
+  }
+
+  private static long queuedBytes(double free, long bandwidth) {
+    double backlog = free - CommonState.getTime();
+    if (backlog <= 0 || bandwidth <= 0) return 0;
+    return (long) (backlog * bandwidth / (8 * OVERHEAD * 1000));
+  }
+
+  private static double utilisation(double busy, double free) {
+    double end = Math.max(CommonState.getTime(), free);
+    return end > 0 ? busy / end : 0;
+  }
+
+  /**
+   * Returns the array index of a node, growing the arrays if needed. It must be called before
+   * reading the array fields.
+   */
+  private int index(Node node) {
+    int i = (int) node.getID();
+    if (i >= sent.length) {
+      int n = Math.max(i + 1, 2 * sent.length);
+      downloadBandwidth = Arrays.copyOf(downloadBandwidth, n);
+      uploadFree = Arrays.copyOf(uploadFree, n);
+      downloadFree = Arrays.copyOf(downloadFree, n);
+      uploadBusy = Arrays.copyOf(uploadBusy, n);
+      downloadBusy = Arrays.copyOf(downloadBusy, n);
+      sent = Arrays.copyOf(sent, n);
+      received = Arrays.copyOf(received, n);
+    }
+    return i;
+  }
+}
@@ -31,7 +31,7 @@ import peersim.edsim.*;
  * @author Alberto Montresor
  * @version $Revision: 1.11 $
  */
-public class E2ETransport implements Transport, RouterInfo {
+public class E2ETransport implements Transport, RouterInfo, NodeLocalProtocol {
 
   // ---------------------------------------------------------------------
   // Parameters
@@ -112,6 +112,14 @@ public class E2ETransport implements Transport, RouterInfo {
     return E2ENetwork.getLatency(sender.router, receiver.router) + local * 2;
   }
 
+  /**
+   * Returns twice the local delay, which is the latency between two nodes assigned to the same
+   * router.
+   */
+  public long getMinLatency() {
+    return local * 2;
+  }
+
   // ---------------------------------------------------------------------
   // Methods inherited by RouterInfo
   // ---------------------------------------------------------------------
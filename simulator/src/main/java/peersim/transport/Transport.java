@@ -50,4 +50,14 @@ public interface Transport extends Protocol {
    * @param dest destination node
    */
   public long getLatency(Node src, Node dest);
+
+  /**
+   * Returns a lower bound of the delay of any message sent through this transport. The event driven
+   * engine uses it as lookahead when partitions of the network are executed in parallel: within
+   * this time no node can affect another one. The default implementation returns 0, that is, no
+   * bound is known.
+   */
+  public default long getMinLatency() {
+    return 0;
+  }
 }
@@ -27,10 +27,13 @@ import peersim.gossipsub.Message;
  * Implement a transport layer that reliably delivers messages with a random delay, that is drawn
  * from the configured interval according to the uniform distribution.
  *
+ * <p>It can be run by the parallel engine: the busy time of the upload interface, shared by all the
+ * nodes, is only updated for gossipsub messages, whose protocol cannot be run in parallel.
+ *
  * @author Alberto Montresor
  * @version $Revision: 1.14 $
  */
-public class UniformRandomTransport implements Transport {
+public class UniformRandomTransport implements Transport, NodeLocalProtocol {
 
   // ---------------------------------------------------------------------
   // Parameters
@@ -114,7 +117,9 @@ public class UniformRandomTransport implements Transport {
       transDelay += this.uploadInterfaceBusyUntil - timeNow;
       this.uploadInterfaceBusyUntil += (long) transDelay; // truncated value
 
-    } else {
+    } else if (transDelay > 0) {
+      // an idle interface is left untouched, so that nodes sending at
+      // different times do not write the shared field
       this.uploadInterfaceBusyUntil = timeNow + (long) transDelay; // truncated value
     }
 
@@ -136,4 +141,9 @@ public class UniformRandomTransport implements Transport {
   public long getLatency(Node src, Node dest) {
     return (range == 1 ? min : min + CommonState.r.nextLong(range));
   }
+
+  /** Returns the configured minimum delay. */
+  public long getMinLatency() {
+    return min;
+  }
 }
@@ -20,6 +20,7 @@ package peersim.transport;
 
 import peersim.config.*;
 import peersim.core.*;
+import peersim.edsim.NodeLocalProtocol;
 
 /**
  * This transport protocol can be combined with other transports to simulate message losses. Its
@@ -28,11 +29,12 @@ import peersim.core.*;
  *
  * <p>The memory requirements are minimal, as a single instance is created and inserted in the
  * protocol array of all nodes (because instances have no state that depends on the hosting node).
+ * It can be run by the parallel engine if the underlying transport can.
  *
  * @author Alberto Montresor
  * @version $Revision: 1.13 $
  */
-public final class UnreliableTransport implements Transport {
+public final class UnreliableTransport implements Transport, NodeLocalProtocol {
 
   // ---------------------------------------------------------------------
   // Parameters
@@ -110,4 +112,10 @@ public final class UnreliableTransport implements Transport {
     Transport t = (Transport) src.getProtocol(transport);
     return t.getLatency(src, dest);
   }
+
+  /** Returns the minimum latency of the underlying protocol. */
+  public long getMinLatency() {
+    Transport t = (Transport) Network.prototype.getProtocol(transport);
+    return t.getMinLatency();
+  }
 }
@@ -0,0 +1,224 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.Consumer;
+import peersim.core.CommonState;
+
+/**
+ * Expiration of keys in simulated time, as a hashed timing wheel. Time is divided in ticks, and
+ * each key is put in the slot of the tick of its expiration time, modulo the number of slots.
+ * Scheduling a key is O(1). The keys are not expired by events: the owner calls {@link #advance}
+ * when it is accessed, and the slots of the ticks elapsed since the previous call are swept in a
+ * batch, using {@link CommonState#getTime()} as the current time. Keys expiring more than one
+ * revolution later stay in their slot until their turn.
+ *
+ * <p>A key has at most one expiration time: scheduling it again replaces it, and {@link #cancel}
+ * removes it. The entries replaced in the slots are discarded when swept, or all at once when no
+ * key is scheduled anymore.
+ *
+ * @param <K> the type of the keys
+ */
+public class ExpiryWheel<K> {
+
+  // ===================== fields ========================================
+  // =====================================================================
+
+  /** Default length of a tick, in simulated time units. */
+  public static final long DEFAULT_TICK = 1;
+
+  /** Default number of slots. */
+  public static final int DEFAULT_SLOTS = 1024;
+
+  private static final int INITIAL_SLOT_SIZE = 4;
+
+  private final long tick;
+
+  /** Keys of the entries of each slot */
+  private final Object[][] keys;
+
+  /** Expiration times of the entries of each slot */
+  private final long[][] times;
+
+  /** Number of entries of each slot */
+  private final int[] sizes;
+
+  /** Number of entries of all the slots, including the replaced ones */
+  private int entries = 0;
+
+  /** Current expiration time of each key */
+  private final HashMap<K, Long> deadlines = new HashMap<K, Long>();
+
+  /** The last tick swept */
+  private long last;
+
+  private long evictions = 0;
+
+  // ====================== initialization ==============================
+  // ====================================================================
+
+  /** Creates a wheel with {@value #DEFAULT_SLOTS} slots of {@value #DEFAULT_TICK} time unit. */
+  public ExpiryWheel() {
+    this(DEFAULT_TICK, DEFAULT_SLOTS);
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Creates an empty wheel.
+   *
+   * @param tick the length of a tick in simulated time units, the granularity of the sweeps
+   * @param slots the number of slots, the ticks in a revolution of the wheel
+   */
+  public ExpiryWheel(long tick, int slots) {
+    if (tick <= 0 || slots <= 0)
+      throw new IllegalArgumentException("Tick and slots must be positive");
+    this.tick = tick;
+    keys = new Object[slots][];
+    times = new long[slots][];
+    sizes = new int[slots];
+    last = CommonState.getTime() / tick;
+  }
+
+  // ======================== methods ===================================
+  // ====================================================================
+
+  /**
+   * Schedules the expiration of a key, replacing the previous one.
+   *
+   * @param key the key
+   * @param time the absolute simulated time at which the key expires
+   */
+  public void schedule(K key, long time) {
+    deadlines.put(key, time);
+    int s = slot(time / tick);
+    int n = sizes[s];
+    if (keys[s] == null) {
+      keys[s] = new Object[INITIAL_SLOT_SIZE];
+      times[s] = new long[INITIAL_SLOT_SIZE];
+    } else if (n == keys[s].length) {
+      keys[s] = Arrays.copyOf(keys[s], 2 * n);
+      times[s] = Arrays.copyOf(times[s], 2 * n);
+    }
+    keys[s][n] = key;
+    times[s][n] = time;
+    sizes[s] = n + 1;
+    entries++;
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Removes the expiration of a key, if any.
+   *
+   * @param key the key
+   */
+  public void cancel(K key) {
+    if (deadlines.remove(key) != null && deadlines.isEmpty()) clearSlots();
+  }
+
+  // --------------------------------------------------------------------
+
+  /** Removes all the expirations. The eviction counter is not reset. */
+  public void clear() {
+    deadlines.clear();
+    clearSlots();
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Evicts the keys expired until the current simulated time, in the order of their slots.
+   *
+   * @param expired called for each expired key, which is no longer scheduled
+   */
+  public void advance(Consumer<? super K> expired) {
+    long now = CommonState.getTime();
+    long current = now / tick;
+    if (deadlines.isEmpty()) {
+      clearSlots();
+      last = current;
+      return;
+    }
+    // the last tick is swept again, as it may have keys expiring after the last call
+    long from = current - last >= sizes.length ? current - sizes.length + 1 : last;
+    for (long t = from; t <= current; t++) sweep(slot(t), now, expired);
+    last = current;
+  }
+
+  // --------------------------------------------------------------------
+
+  /** Returns the number of keys with an expiration. */
+  public int size() {
+    return deadlines.size();
+  }
+
+  // --------------------------------------------------------------------
+
+  /** Returns the number of keys expired so far. */
+  public long getEvictions() {
+    return evictions;
+  }
+
+  // --------------------------------------------------------------------
+
+  /** Discards the entries of all the slots, which are all replaced if no key is scheduled. */
+  private void clearSlots() {
+    if (entries == 0) return;
+    Arrays.fill(keys, null);
+    Arrays.fill(times, null);
+    Arrays.fill(sizes, 0);
+    entries = 0;
+  }
+
+  // --------------------------------------------------------------------
+
+  private int slot(long t) {
+    return (int) Math.floorMod(t, (long) sizes.length);
+  }
+
+  // --------------------------------------------------------------------
+
+  /** Removes the expired and replaced entries of a slot, keeping the order of the other ones. */
+  @SuppressWarnings("unchecked")
+  private void sweep(int s, long now, Consumer<? super K> expired) {
+    int n = sizes[s];
+    if (n == 0) return;
+    Object[] k = keys[s];
+    long[] t = times[s];
+    int kept = 0;
+    for (int i = 0; i < n; i++) {
+      K key = (K) k[i];
+      Long deadline = deadlines.get(key);
+      if (deadline == null || deadline != t[i]) continue;
+      if (t[i] <= now) {
+        deadlines.remove(key);
+        evictions++;
+        expired.accept(key);
+        continue;
+      }
+      k[kept] = key;
+      t[kept] = t[i];
+      kept++;
+    }
+    Arrays.fill(k, kept, n, null);
+    sizes[s] = kept;
+    entries -= n - kept;
+  }
+}
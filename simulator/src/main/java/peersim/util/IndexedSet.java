@@ -0,0 +1,197 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+/**
+ * A set whose elements are kept in an array, so that they can be accessed by index and sampled at
+ * random without copying the set. Removing an element moves the last one into its place. The order
+ * of the elements is arbitrary and changes with {@link #remove} and {@link #sample}.
+ *
+ * <p>The positions are found with an open addressing table of <code>int</code>, which takes a few
+ * bytes per element instead of the entry objects of a {@link java.util.HashSet}, as a node can hold
+ * a set of every other node.
+ */
+public class IndexedSet<E> {
+
+  // ===================== fields ========================================
+  // =====================================================================
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  private Object[] elements;
+
+  private int size;
+
+  /** Linear probing table with the position of an element plus one, 0 for an empty slot */
+  private int[] table;
+
+  // ====================== initialization ==============================
+  // ====================================================================
+
+  /** Creates an empty set. */
+  public IndexedSet() {
+    elements = new Object[INITIAL_CAPACITY];
+    table = new int[INITIAL_CAPACITY * 2];
+  }
+
+  // ======================== methods ===================================
+  // ====================================================================
+
+  /**
+   * Adds an element to the set.
+   *
+   * @param e the element
+   * @return true if the element was not in the set
+   */
+  public boolean add(E e) {
+    int s = find(e);
+    if (s >= 0) return false;
+    if (size == elements.length) {
+      elements = Arrays.copyOf(elements, size * 2);
+      table = new int[elements.length * 2];
+      for (int i = 0; i < size; i++) table[~find(elements[i])] = i + 1;
+      s = find(e);
+    }
+    elements[size++] = e;
+    table[~s] = size;
+    return true;
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Removes an element from the set, moving the last element into its position.
+   *
+   * @param e the element
+   * @return true if the element was in the set
+   */
+  public boolean remove(E e) {
+    int s = find(e);
+    if (s < 0) return false;
+    int pos = table[s] - 1;
+    clearSlot(s);
+    size--;
+    if (pos < size) {
+      elements[pos] = elements[size];
+      table[find(elements[pos])] = pos + 1;
+    }
+    elements[size] = null;
+    return true;
+  }
+
+  // --------------------------------------------------------------------
+
+  public boolean contains(E e) {
+    return find(e) >= 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  @SuppressWarnings("unchecked")
+  public E get(int i) {
+    if (i >= size) throw new IndexOutOfBoundsException(i + " >= " + size);
+    return (E) elements[i];
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Selects up to <code>n</code> elements uniformly at random, without replacement, skipping the
+   * excluded ones. It runs a partial Fisher-Yates shuffle in place, so it takes time proportional
+   * to the elements drawn, <code>n</code> plus the excluded ones met, rather than to the size of
+   * the set.
+   *
+   * @param n the number of elements to select
+   * @param r the source of randomness
+   * @param excluded the elements that cannot be selected, or null
+   * @return the selected elements, fewer than <code>n</code> only if there are not enough
+   */
+  public List<E> sample(int n, Random r, Predicate<? super E> excluded) {
+    List<E> result = new ArrayList<>(Math.max(0, Math.min(n, size)));
+    for (int i = 0; i < size && result.size() < n; i++) {
+      swap(i, i + r.nextInt(size - i));
+      E e = get(i);
+      if (excluded == null || !excluded.test(e)) result.add(e);
+    }
+    return result;
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Finds the slot of an element in the table.
+   *
+   * @return the slot holding the element, or the bitwise complement of the empty slot where it
+   *     would be added
+   */
+  private int find(Object e) {
+    int mask = table.length - 1;
+    int i = slot(e);
+    while (table[i] != 0) {
+      if (elements[table[i] - 1].equals(e)) return i;
+      i = (i + 1) & mask;
+    }
+    return ~i;
+  }
+
+  private int slot(Object e) {
+    // spread the bits, as the low ones are used as the slot
+    int h = e.hashCode() * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & (table.length - 1);
+  }
+
+  /** Empties a slot, moving back the following ones that can no longer be reached otherwise. */
+  private void clearSlot(int i) {
+    int mask = table.length - 1;
+    int j = i;
+    while (true) {
+      j = (j + 1) & mask;
+      if (table[j] == 0) break;
+      int k = slot(elements[table[j] - 1]);
+      // the entry at j stays if its slot k is cyclically in (i, j]
+      if (i <= j ? (i < k && k <= j) : (i < k || k <= j)) continue;
+      table[i] = table[j];
+      i = j;
+    }
+    table[i] = 0;
+  }
+
+  private void swap(int i, int j) {
+    if (i == j) return;
+    int si = find(elements[i]);
+    int sj = find(elements[j]);
+    Object ei = elements[i];
+    elements[i] = elements[j];
+    elements[j] = ei;
+    table[si] = j + 1;
+    table[sj] = i + 1;
+  }
+
+  // --------------------------------------------------------------------
+
+  public String toString() {
+    return Arrays.toString(Arrays.copyOf(elements, size));
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of <code>long</code> values without boxing, as an open addressing hash table with linear
+ * probing. Adding, removing and checking a value take constant expected time. The table doubles
+ * when it is more than half full and is never shrunk, except by {@link #clear}.
+ */
+public class LongHashSet {
+
+  // ===================== fields ========================================
+  // =====================================================================
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** Marks an empty slot. The value itself is tracked by {@link #hasEmpty} */
+  private static final long EMPTY = 0;
+
+  private long[] table;
+
+  /** Number of values in the table, not counting {@link #EMPTY} */
+  private int size;
+
+  private boolean hasEmpty;
+
+  // ====================== initialization ==============================
+  // ====================================================================
+
+  /** Creates an empty set. */
+  public LongHashSet() {
+    table = new long[INITIAL_CAPACITY];
+  }
+
+  // ======================== methods ===================================
+  // ====================================================================
+
+  /**
+   * Adds a value to the set.
+   *
+   * @param value the value
+   * @return true if the value was not in the set
+   */
+  public boolean add(long value) {
+    if (value == EMPTY) {
+      if (hasEmpty) return false;
+      return hasEmpty = true;
+    }
+    int i = slot(value);
+    while (table[i] != EMPTY) {
+      if (table[i] == value) return false;
+      i = (i + 1) & (table.length - 1);
+    }
+    table[i] = value;
+    if (++size * 2 > table.length) grow();
+    return true;
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Checks whether a value is in the set.
+   *
+   * @param value the value
+   * @return true if the value is in the set
+   */
+  public boolean contains(long value) {
+    if (value == EMPTY) return hasEmpty;
+    int i = slot(value);
+    while (table[i] != EMPTY) {
+      if (table[i] == value) return true;
+      i = (i + 1) & (table.length - 1);
+    }
+    return false;
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Removes a value from the set. The values after it in the same run of slots are moved back, so
+   * that no slot is left marked as deleted.
+   *
+   * @param value the value
+   * @return true if the value was in the set
+   */
+  public boolean remove(long value) {
+    if (value == EMPTY) {
+      boolean had = hasEmpty;
+      hasEmpty = false;
+      return had;
+    }
+    int mask = table.length - 1;
+    int i = slot(value);
+    while (table[i] != value) {
+      if (table[i] == EMPTY) return false;
+      i = (i + 1) & mask;
+    }
+    // shift back the following values that can be reached from i
+    int j = i;
+    while (true) {
+      j = (j + 1) & mask;
+      if (table[j] == EMPTY) break;
+      int k = slot(table[j]);
+      // the value at j stays if its slot k is cyclically in (i, j]
+      if (i <= j ? (i < k && k <= j) : (i < k || k <= j)) continue;
+      table[i] = table[j];
+      i = j;
+    }
+    table[i] = EMPTY;
+    size--;
+    return true;
+  }
+
+  // --------------------------------------------------------------------
+
+  /** Returns the number of values in the set. */
+  public int size() {
+    return hasEmpty ? size + 1 : size;
+  }
+
+  // --------------------------------------------------------------------
+
+  /** Removes all the values, releasing the memory of the table. */
+  public void clear() {
+    table = new long[INITIAL_CAPACITY];
+    size = 0;
+    hasEmpty = false;
+  }
+
+  // --------------------------------------------------------------------
+
+  private int slot(long value) {
+    // spread the bits, as the values are often sequential or multiples of a step
+    long h = value * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & (table.length - 1);
+  }
+
+  private void grow() {
+    long[] old = table;
+    table = new long[old.length * 2];
+    for (long value : old) {
+      if (value == EMPTY) continue;
+      int i = slot(value);
+      while (table[i] != EMPTY) i = (i + 1) & (table.length - 1);
+      table[i] = value;
+    }
+  }
+
+  // --------------------------------------------------------------------
+
+  public String toString() {
+    long[] values = new long[size()];
+    int n = 0;
+    if (hasEmpty) values[n++] = EMPTY;
+    for (long value : table) if (value != EMPTY) values[n++] = value;
+    Arrays.sort(values);
+    return Arrays.toString(values);
+  }
+}
@@ -0,0 +1,378 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the files written by {@link TraceWriter} in the {@link TraceWriter.Format#BINARY} format,
+ * compressed or not, one record at a time:
+ *
+ * <pre>
+ * try (TraceReader r = new TraceReader("logs/messages.trace")) {
+ *   int type = r.getColumn("type");
+ *   while (r.next()) {
+ *     String t = (String) r.get(type);
+ *     ...
+ *   }
+ * }
+ * </pre>
+ *
+ * Values are returned as {@link Long}, {@link Double}, {@link BigInteger} (node IDs) or {@link
+ * String}; values that were neither numbers nor IDs are returned as strings.
+ *
+ * <p>The {@link #main} method is a command line tool to filter, aggregate and convert the files to
+ * CSV.
+ */
+public class TraceReader implements Closeable {
+
+  // ===================== fields ========================================
+  // =====================================================================
+
+  private final DataInputStream in;
+
+  private final String[] columns;
+
+  /** Dictionary of each column, from index to value */
+  private final List<Object>[] dictionaries;
+
+  /** Values of the current block, by column */
+  private Object[][] values;
+
+  /** Records in the current block */
+  private int records = 0;
+
+  /** Index of the current record in the block */
+  private int current = -1;
+
+  // ====================== initialization ==============================
+  // ====================================================================
+
+  /**
+   * Opens a file and reads its header.
+   *
+   * @param file the name of the file
+   * @throws IOException if the file cannot be read or is not a binary trace
+   */
+  @SuppressWarnings("unchecked")
+  public TraceReader(String file) throws IOException {
+    InputStream is = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+    is.mark(2);
+    boolean gzip = is.read() == 0x1f && is.read() == 0x8b;
+    is.reset();
+    if (gzip) is = new BufferedInputStream(new GZIPInputStream(is, 1 << 16), 1 << 16);
+    in = new DataInputStream(is);
+    try {
+      byte[] magic = new byte[TraceWriter.MAGIC.length];
+      in.readFully(magic);
+      if (!Arrays.equals(magic, TraceWriter.MAGIC))
+        throw new IOException(file + " is not a trace file");
+      int version = in.readUnsignedByte();
+      if (version != TraceWriter.VERSION)
+        throw new IOException(file + ": unsupported trace version " + version);
+      columns = new String[(int) readVarLong()];
+      dictionaries = new List[columns.length];
+      for (int i = 0; i < columns.length; i++) {
+        columns[i] = readString();
+        dictionaries[i] = new ArrayList<Object>();
+      }
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+    values = new Object[columns.length][0];
+  }
+
+  // ======================== methods ===================================
+  // ====================================================================
+
+  /** Returns the names of the columns. */
+  public String[] getColumns() {
+    return columns.clone();
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Returns the index of a column.
+   *
+   * @param name the name of the column
+   * @return the index of the column, or -1 if the file does not have it
+   */
+  public int getColumn(String name) {
+    for (int i = 0; i < columns.length; i++) if (columns[i].equals(name)) return i;
+    return -1;
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Moves to the next record.
+   *
+   * @return false if there are no more records
+   * @throws IOException if the file cannot be read
+   */
+  public boolean next() throws IOException {
+    if (++current < records) return true;
+    int first = in.read();
+    if (first < 0) return false;
+    records = (int) readVarLong(first);
+    if (columns.length > 0 && values[0].length < records)
+      values = new Object[columns.length][records];
+    for (int i = 0; i < columns.length; i++) readColumn(i);
+    current = 0;
+    return true;
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Returns a value of the current record.
+   *
+   * @param column the index of the column
+   * @return the value, or null if the record has none
+   */
+  public Object get(int column) {
+    return values[column][current];
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Returns a value of the current record.
+   *
+   * @param column the name of the column
+   * @return the value, or null if the record has none or the file does not have the column
+   */
+  public Object get(String column) {
+    int i = getColumn(column);
+    return i < 0 ? null : get(i);
+  }
+
+  // --------------------------------------------------------------------
+
+  /** Closes the file. */
+  public void close() throws IOException {
+    in.close();
+  }
+
+  // --------------------------------------------------------------------
+
+  private void readColumn(int i) throws IOException {
+    byte type = in.readByte();
+    long length = readVarLong();
+    Object[] v = values[i];
+    for (int j = 0; j < records; j++) {
+      switch (type) {
+        case TraceWriter.NULL:
+          v[j] = null;
+          break;
+        case TraceWriter.LONG:
+          long x = readVarLong();
+          if (x == 0) v[j] = null;
+          else {
+            x--;
+            v[j] = (x >>> 1) ^ -(x & 1);
+          }
+          break;
+        case TraceWriter.DOUBLE:
+          double d = in.readDouble();
+          v[j] = Double.isNaN(d) ? null : d;
+          break;
+        case TraceWriter.ID:
+        case TraceWriter.STRING:
+          v[j] = readEntry(dictionaries[i], type);
+          break;
+        default:
+          throw new IOException("Unknown column type " + type + ", " + length + " bytes");
+      }
+    }
+  }
+
+  private Object readEntry(List<Object> dictionary, byte type) throws IOException {
+    long index = readVarLong();
+    if (index == 0) return null;
+    if (index > 1) return dictionary.get((int) (index - 2));
+    Object value;
+    if (type == TraceWriter.ID) {
+      byte[] bytes = new byte[(int) readVarLong()];
+      in.readFully(bytes);
+      value = new BigInteger(bytes);
+    } else {
+      value = readString();
+    }
+    if (dictionary.size() < TraceWriter.DICTIONARY_LIMIT) dictionary.add(value);
+    return value;
+  }
+
+  private String readString() throws IOException {
+    byte[] bytes = new byte[(int) readVarLong()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private long readVarLong() throws IOException {
+    int b = in.read();
+    if (b < 0) throw new EOFException();
+    return readVarLong(b);
+  }
+
+  private long readVarLong(int b) throws IOException {
+    long v = b & 0x7F;
+    for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+      b = in.read();
+      if (b < 0) throw new EOFException();
+      v |= (long) (b & 0x7F) << shift;
+    }
+    return v;
+  }
+
+  // ========================== command line ============================
+  // ====================================================================
+
+  /**
+   * Filters, aggregates and converts a trace file. Usage:
+   *
+   * <pre>
+   * java peersim.util.TraceReader [options] file
+   *   -where column=value  only the records with the value, repeatable
+   *   -columns c1,c2,...   only these columns, in this order (CSV output)
+   *   -count column        the number of records for each value of the column
+   *   -stats column        the statistics of a numeric column, as by {@link IncrementalStats}
+   * </pre>
+   *
+   * Without <code>-count</code> and <code>-stats</code> the records are written to the standard
+   * output as CSV, with a header.
+   */
+  public static void main(String[] args) throws IOException {
+    List<String> where = new ArrayList<String>();
+    String file = null, select = null, count = null, stats = null;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-where") && i + 1 < args.length) where.add(args[++i]);
+      else if (args[i].equals("-columns") && i + 1 < args.length) select = args[++i];
+      else if (args[i].equals("-count") && i + 1 < args.length) count = args[++i];
+      else if (args[i].equals("-stats") && i + 1 < args.length) stats = args[++i];
+      else if (file == null && !args[i].startsWith("-")) file = args[i];
+      else {
+        file = null;
+        break;
+      }
+    }
+    if (file == null) {
+      System.err.println(
+          "Usage: TraceReader [-where column=value]... [-columns c1,c2,...] [-count column] "
+              + "[-stats column] file");
+      System.exit(1);
+    }
+
+    try (TraceReader r = new TraceReader(file)) {
+      int[] whereColumns = new int[where.size()];
+      String[] whereValues = new String[where.size()];
+      for (int i = 0; i < whereColumns.length; i++) {
+        String w = where.get(i);
+        int eq = w.indexOf('=');
+        whereColumns[i] = r.column(eq < 0 ? w : w.substring(0, eq));
+        whereValues[i] = eq < 0 ? "" : w.substring(eq + 1);
+      }
+
+      if (count != null || stats != null) {
+        int countColumn = count == null ? -1 : r.column(count);
+        int statsColumn = stats == null ? -1 : r.column(stats);
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        IncrementalStats is = new IncrementalStats();
+        while (r.next()) {
+          if (!r.matches(whereColumns, whereValues)) continue;
+          if (countColumn >= 0) counts.merge(String.valueOf(r.get(countColumn)), 1L, Long::sum);
+          if (statsColumn >= 0 && r.get(statsColumn) instanceof Number)
+            is.add(((Number) r.get(statsColumn)).doubleValue());
+        }
+        for (Map.Entry<String, Long> e : counts.entrySet())
+          System.out.println(e.getKey() + "," + e.getValue());
+        if (statsColumn >= 0) System.out.println(stats + ": " + is);
+        return;
+      }
+
+      int[] selected;
+      if (select == null) {
+        selected = new int[r.columns.length];
+        for (int i = 0; i < selected.length; i++) selected[i] = i;
+      } else {
+        String[] names = select.split(",");
+        selected = new int[names.length];
+        for (int i = 0; i < names.length; i++) selected[i] = r.column(names[i]);
+      }
+      Writer out =
+          new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+      StringBuilder line = new StringBuilder();
+      for (int i = 0; i < selected.length; i++) {
+        if (i > 0) line.append(',');
+        line.append(r.columns[selected[i]]);
+      }
+      line.append('\n');
+      out.append(line);
+      while (r.next()) {
+        if (!r.matches(whereColumns, whereValues)) continue;
+        line.setLength(0);
+        for (int i = 0; i < selected.length; i++) {
+          if (i > 0) line.append(',');
+          Object value = r.get(selected[i]);
+          if (value != null) line.append(value);
+        }
+        line.append('\n');
+        out.append(line);
+      }
+      out.flush();
+    }
+  }
+
+  // --------------------------------------------------------------------
+
+  /** Returns the index of a column given on the command line, exiting if it does not exist. */
+  private int column(String name) {
+    int i = getColumn(name);
+    if (i < 0) {
+      System.err.println("No column " + name + " in " + String.join(",", columns));
+      System.exit(1);
+    }
+    return i;
+  }
+
+  private boolean matches(int[] whereColumns, String[] whereValues) {
+    for (int i = 0; i < whereColumns.length; i++) {
+      Object value = get(whereColumns[i]);
+      if (!whereValues[i].equals(value == null ? "" : value.toString())) return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,436 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes records to files as they are produced, so that the memory used does not depend on the
+ * length of the trace. The records are grouped in tables, each written to its own file <code>
+ * &lt;folder&gt;/&lt;table&gt;</code> with the extension of the format (and <code>.gz</code> if
+ * compressed). The columns of a table are given with its first record, or are the keys of that
+ * record otherwise; the records of the table are written in the same column order, with null for
+ * the missing keys and ignoring the additional ones. Records of different kinds can thus share a
+ * table whose columns are the union of their keys. The files are buffered: they are written to disk
+ * when a buffer is full, when {@link #flush} is called and when the writer is closed, which also
+ * happens when the JVM exits, so that the end of the trace is not lost if the simulation stops
+ * before the owner closes it.
+ *
+ * <p>In the {@link Format#BINARY} format the records are stored in blocks of up to {@value
+ * #BLOCK_SIZE} records, column by column. Integers are variable-length, and node IDs ({@link
+ * BigInteger}) and strings are replaced by their index in a dictionary of the column after their
+ * first occurrence. The files are read by {@link TraceReader}, which can also convert them to CSV.
+ * The layout is:
+ *
+ * <pre>
+ * file   := "PTRC" version:byte columns:varint name:string* block*
+ * block  := records:varint column*
+ * column := type:byte length:varint value*
+ * value  := LONG: varint, 0 for null, otherwise zigzag(x) + 1
+ *           DOUBLE: 8 bytes, NaN for null
+ *           ID, STRING: varint, 0 for null, 1 followed by the literal, i + 2 for entry i
+ * </pre>
+ *
+ * The type of a column is chosen for each block from its values: NULL if they are all null, LONG
+ * and DOUBLE for numbers, ID for node IDs and STRING for any other value (as by {@link
+ * Object#toString()}), also used when the values of the block have different types. Literal IDs are
+ * written as their length and two's-complement bytes, strings as their length and UTF-8 bytes. A
+ * literal is added to the dictionary of the column if it has less than {@value #DICTIONARY_LIMIT}
+ * entries, so IDs and repeated strings take one to three bytes.
+ *
+ * <p>Records can be written by different threads.
+ */
+public class TraceWriter {
+
+  // ===================== fields ========================================
+  // =====================================================================
+
+  /** The formats of the files. */
+  public enum Format {
+    /** Comma-separated values with a header, in <code>.csv</code> files. */
+    CSV(".csv"),
+    /** The binary columnar format, in <code>.trace</code> files. */
+    BINARY(".trace");
+
+    private final String extension;
+
+    Format(String extension) {
+      this.extension = extension;
+    }
+
+    /** Returns the extension of the files, without compression. */
+    public String getExtension() {
+      return extension;
+    }
+  }
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /** Magic number of the binary files. */
+  static final byte[] MAGIC = {'P', 'T', 'R', 'C'};
+
+  /** Version of the binary format. */
+  static final int VERSION = 1;
+
+  /** Maximum number of records of a block. */
+  static final int BLOCK_SIZE = 4096;
+
+  /** Maximum number of entries of the dictionary of a column. */
+  static final int DICTIONARY_LIMIT = 1 << 18;
+
+  static final byte NULL = 0;
+
+  static final byte LONG = 1;
+
+  static final byte DOUBLE = 2;
+
+  static final byte ID = 3;
+
+  static final byte STRING = 4;
+
+  /** The folder of the files */
+  private final String folder;
+
+  private final Format format;
+
+  private final boolean compress;
+
+  /** The open tables, by name */
+  private final Map<String, Table> tables = new HashMap<String, Table>();
+
+  // ====================== initialization ==============================
+  // ====================================================================
+
+  /**
+   * Creates a writer of CSV files. No file is created until the first record is written.
+   *
+   * @param folder the folder of the files, created if it does not exist
+   * @param compress whether the files are compressed with gzip
+   */
+  public TraceWriter(String folder, boolean compress) {
+    this(folder, Format.CSV, compress);
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Creates a writer. No file is created until the first record is written.
+   *
+   * @param folder the folder of the files, created if it does not exist
+   * @param format the format of the files
+   * @param compress whether the files are compressed with gzip
+   */
+  public TraceWriter(String folder, Format format, boolean compress) {
+    this.folder = folder;
+    this.format = format;
+    this.compress = compress;
+    Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+  }
+
+  // ======================== methods ===================================
+  // ====================================================================
+
+  /**
+   * Writes a record, opening the file of the table if needed. An existing file is replaced.
+   *
+   * @param table the name of the table
+   * @param record the values of the record by column name
+   * @throws UncheckedIOException if the file cannot be written
+   */
+  public void write(String table, Map<String, ?> record) {
+    write(table, null, record);
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Writes a record, opening the file of the table with the given columns if needed. An existing
+   * file is replaced.
+   *
+   * @param table the name of the table
+   * @param columns the columns of the table if it is not open yet, or null for the keys of the
+   *     record
+   * @param record the values of the record by column name
+   * @throws UncheckedIOException if the file cannot be written
+   */
+  public synchronized void write(String table, String[] columns, Map<String, ?> record) {
+    Table t = tables.get(table);
+    try {
+      if (t == null) {
+        if (columns == null) columns = record.keySet().toArray(new String[0]);
+        t = format == Format.CSV ? new CsvTable(table, columns) : new BinaryTable(table, columns);
+        tables.put(table, t);
+      }
+      t.write(record);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Writes the buffered records to the files.
+   *
+   * @throws UncheckedIOException if a file cannot be written
+   */
+  public synchronized void flush() {
+    try {
+      for (Table t : tables.values()) t.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // --------------------------------------------------------------------
+
+  /**
+   * Closes the files. The writer can be used again: the records written later replace the closed
+   * files.
+   *
+   * @throws UncheckedIOException if a file cannot be written
+   */
+  public synchronized void close() {
+    IOException error = null;
+    for (Table t : tables.values()) {
+      try {
+        t.close();
+      } catch (IOException e) {
+        if (error == null) error = e;
+      }
+    }
+    tables.clear();
+    if (error != null) throw new UncheckedIOException(error);
+  }
+
+  // --------------------------------------------------------------------
+
+  /** Writes an unsigned variable-length integer, 7 bits per byte. */
+  static void writeVarLong(DataOutputStream out, long v) throws IOException {
+    while ((v & ~0x7FL) != 0) {
+      out.writeByte((int) (v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    out.writeByte((int) v);
+  }
+
+  // ======================== inner classes =============================
+  // ====================================================================
+
+  /** An open file with its columns. */
+  private abstract class Table {
+
+    final String[] columns;
+
+    final OutputStream os;
+
+    Table(String name, String[] columns) throws IOException {
+      this.columns = columns;
+      File directory = new File(folder);
+      if (!directory.exists()) directory.mkdirs();
+      String file = name + format.getExtension() + (compress ? ".gz" : "");
+      OutputStream os = new FileOutputStream(new File(directory, file));
+      if (compress) os = new GZIPOutputStream(os, BUFFER_SIZE);
+      this.os = os;
+    }
+
+    abstract void write(Map<String, ?> record) throws IOException;
+
+    abstract void flush() throws IOException;
+
+    abstract void close() throws IOException;
+  }
+
+  // --------------------------------------------------------------------
+
+  private class CsvTable extends Table {
+
+    final Writer out;
+
+    final StringBuilder line = new StringBuilder();
+
+    CsvTable(String name, String[] columns) throws IOException {
+      super(name, columns);
+      out = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), BUFFER_SIZE);
+      out.write(String.join(",", columns));
+      out.write('\n');
+    }
+
+    void write(Map<String, ?> record) throws IOException {
+      line.setLength(0);
+      for (int i = 0; i < columns.length; i++) {
+        if (i > 0) line.append(',');
+        Object value = record.get(columns[i]);
+        if (value != null) line.append(value);
+      }
+      line.append('\n');
+      out.append(line);
+    }
+
+    void flush() throws IOException {
+      out.flush();
+    }
+
+    void close() throws IOException {
+      out.close();
+    }
+  }
+
+  // --------------------------------------------------------------------
+
+  private class BinaryTable extends Table {
+
+    final DataOutputStream out;
+
+    /** Values of the current block, by column */
+    final Object[][] values;
+
+    /** Records in the current block */
+    int records = 0;
+
+    /** Dictionary of each column, from value to index */
+    final Map<Object, Integer>[] dictionaries;
+
+    /** Encoded values of a column of a block */
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    final DataOutputStream data = new DataOutputStream(buffer);
+
+    @SuppressWarnings("unchecked")
+    BinaryTable(String name, String[] columns) throws IOException {
+      super(name, columns);
+      out = new DataOutputStream(new BufferedOutputStream(os, BUFFER_SIZE));
+      values = new Object[columns.length][BLOCK_SIZE];
+      dictionaries = new Map[columns.length];
+      for (int i = 0; i < columns.length; i++) dictionaries[i] = new HashMap<Object, Integer>();
+      out.write(MAGIC);
+      out.writeByte(VERSION);
+      writeVarLong(out, columns.length);
+      for (String c : columns) writeString(out, c);
+    }
+
+    void write(Map<String, ?> record) throws IOException {
+      for (int i = 0; i < columns.length; i++) values[i][records] = record.get(columns[i]);
+      if (++records == BLOCK_SIZE) writeBlock();
+    }
+
+    void flush() throws IOException {
+      if (records > 0) writeBlock();
+      out.flush();
+    }
+
+    void close() throws IOException {
+      if (records > 0) writeBlock();
+      out.close();
+    }
+
+    private void writeBlock() throws IOException {
+      writeVarLong(out, records);
+      for (int i = 0; i < columns.length; i++) {
+        Object[] v = values[i];
+        byte type = typeOf(v);
+        buffer.reset();
+        for (int j = 0; j < records; j++) {
+          switch (type) {
+            case LONG:
+              if (v[j] == null) writeVarLong(data, 0);
+              else {
+                long x = ((Number) v[j]).longValue();
+                writeVarLong(data, ((x << 1) ^ (x >> 63)) + 1);
+              }
+              break;
+            case DOUBLE:
+              data.writeDouble(v[j] == null ? Double.NaN : ((Number) v[j]).doubleValue());
+              break;
+            case ID:
+            case STRING:
+              writeEntry(
+                  dictionaries[i], type == ID ? v[j] : v[j] == null ? null : v[j].toString());
+              break;
+            default:
+          }
+          v[j] = null;
+        }
+        out.writeByte(type);
+        writeVarLong(out, buffer.size());
+        buffer.writeTo(out);
+      }
+      records = 0;
+    }
+
+    /** Returns the type of the values of a column of the current block. */
+    private byte typeOf(Object[] v) {
+      byte type = NULL;
+      for (int j = 0; j < records; j++) {
+        if (v[j] == null) continue;
+        byte t;
+        if (v[j] instanceof Long
+            || v[j] instanceof Integer
+            || v[j] instanceof Short
+            || v[j] instanceof Byte) t = LONG;
+        else if (v[j] instanceof Double || v[j] instanceof Float) t = DOUBLE;
+        else if (v[j] instanceof BigInteger) t = ID;
+        else t = STRING;
+        if (type == NULL) type = t;
+        else if (type != t) return STRING;
+      }
+      return type;
+    }
+
+    private void writeEntry(Map<Object, Integer> dictionary, Object value) throws IOException {
+      if (value == null) {
+        writeVarLong(data, 0);
+        return;
+      }
+      Integer index = dictionary.get(value);
+      if (index != null) {
+        writeVarLong(data, index + 2);
+        return;
+      }
+      writeVarLong(data, 1);
+      if (value instanceof BigInteger) {
+        byte[] bytes = ((BigInteger) value).toByteArray();
+        writeVarLong(data, bytes.length);
+        data.write(bytes);
+      } else {
+        writeString(data, (String) value);
+      }
+      if (dictionary.size() < DICTIONARY_LIMIT) dictionary.put(value, dictionary.size());
+    }
+
+    private void writeString(DataOutputStream out, String s) throws IOException {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(out, bytes.length);
+      out.write(bytes);
+    }
+  }
+}